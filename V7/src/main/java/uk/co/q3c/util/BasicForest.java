@@ -1,45 +1,82 @@
 package uk.co.q3c.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 
 import edu.uci.ics.jung.graph.DelegateForest;
 import edu.uci.ics.jung.graph.Forest;
-import edu.uci.ics.jung.graph.Tree;
 
 /**
- * A very simple semantic wrapper for the <a href=http://jung.sourceforge.net/site/index.html> Jung</a> library, to use
- * the more familiar language of trees. Underneath is it a proper implementation of a graph - there are many methods not
- * exposed through this wrapper, but you can access those via {@link #getGraph()}
+ * A simple forest (a collection of trees), using the familiar language of trees. Each node is held in a 'slot', and
+ * the structure is held in primitive int arrays of slot numbers - one for parents, and one list of children per slot -
+ * so that {@link #getParent(Object)}, {@link #getChildren(Object)}, {@link #getNode(Object)} and {@link #getRoot()} do
+ * not depend on the size of the forest. Children and roots are held in insertion order.
  * <p>
- * The E (edge) parameter for the underlying graph is a simple Integer
+ * Finding the slot for a node uses a HashMap by default. Sub-classes whose nodes carry a unique, non-negative int id
+ * should override {@link #key(Object)} to return it, and the slot is then looked up directly from an int array, with no
+ * hashing or boxing.
+ * <p>
+ * This class used to wrap the <a href=http://jung.sourceforge.net/site/index.html> Jung</a> library, and
+ * {@link #getGraph()} is retained to provide a Jung copy of the structure for anyone who needs the full graph API
  * 
  * @param <V>
  *            the type of object to be contained (the 'node'). Must implement equals
  */
 public class BasicForest<V> {
 
-	private Forest<V, Integer> graph;
-	private int edgeCount = 0;
+	private static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int[] NO_CHILDREN = new int[0];
+
+	private Object[] nodes;
+	private int[] parents;
+	private int[][] children;
+	private int[] childCounts;
+	private int[] roots;
+	private int rootCount;
+	private int nodeCount;
+	// key + 1 -> slot + 1, so that zero means absent. Used only when key() is overridden
+	private int[] slotsByKey;
+	// used only when key() is not overridden
+	private Map<V, Integer> slotsByNode;
 
 	public BasicForest() {
-		graph = new DelegateForest<V, Integer>();
+		init();
+	}
+
+	/**
+	 * Returns a unique, non-negative int key for {@code node}, or -1 if the node does not have one. The default returns
+	 * -1, which causes a HashMap to be used to locate a node's slot. Override this if your nodes carry an id, and a
+	 * direct array lookup will be used instead. The key must not change while the node is in the forest.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	protected int key(V node) {
+		return NONE;
 	}
 
 	public void addNode(V node) {
-		graph.addVertex(node);
+		if (slotOf(node) == NONE) {
+			int slot = newSlot(node);
+			addRoot(slot);
+		}
 	}
 
 	public boolean containsNode(V node) {
-		return graph.containsVertex(node);
+		return slotOf(node) != NONE;
 	}
 
 	/**
 	 * Adds a {@code childNode} to {@code parentNode}. Note that if {@code parentNode} is not already in the tree, it
-	 * will be added - which may mean that you no longer have a single root
+	 * will be added - which may mean that you no longer have a single root. If {@code childNode} is already in the tree
+	 * with a different parent, it is moved (with its own children) to {@code parentNode}
 	 * 
 	 * @param parentNode
 	 * @param childNode
@@ -47,22 +84,42 @@ public class BasicForest<V> {
 	public void addChild(V parentNode, V childNode) {
 		if (parentNode == null) {
 			addNode(childNode);
+			return;
+		}
+		int parentSlot = slotOf(parentNode);
+		if (parentSlot == NONE) {
+			parentSlot = newSlot(parentNode);
+			addRoot(parentSlot);
+		}
+		int childSlot = slotOf(childNode);
+		if (childSlot == NONE) {
+			childSlot = newSlot(childNode);
 		} else {
-			graph.addEdge(newEdge(), parentNode, childNode);
+			int currentParent = parents[childSlot];
+			if (currentParent == parentSlot) {
+				return;
+			}
+			if (currentParent == NONE) {
+				removeRoot(childSlot);
+			} else {
+				removeChildSlot(currentParent, childSlot);
+			}
 		}
-	}
-
-	private Integer newEdge() {
-		edgeCount++;
-		return edgeCount;
+		parents[childSlot] = parentSlot;
+		addChildSlot(parentSlot, childSlot);
 	}
 
 	public boolean hasChild(V parentNode, V childNode) {
-		return graph.getParent(childNode).equals(parentNode);
+		V parent = getParent(childNode);
+		return (parent != null) && parent.equals(parentNode);
 	}
 
 	public V getParent(V childNode) {
-		return graph.getParent(childNode);
+		int slot = slotOf(childNode);
+		if (slot == NONE) {
+			return null;
+		}
+		return nodeAt(parents[slot]);
 	}
 
 	/**
@@ -107,19 +164,22 @@ public class BasicForest<V> {
 	 * @return
 	 */
 	public V getNode(V node) {
-		Collection<V> x = graph.getVertices();
-		List<V> list = new ArrayList<V>(x);
-		int n = list.indexOf(node);
-		if (n < 0) {
-			return null;
-		}
-		V found = list.get(n);
-		return found;
+		return nodeAt(slotOf(node));
 	}
 
+	/**
+	 * Returns the children of {@code parentNode} in insertion order. The list is a copy and can be modified (for
+	 * example, sorted) by the caller. Returns an empty list if {@code parentNode} is not in the forest
+	 * 
+	 * @param parentNode
+	 * @return
+	 */
 	public List<V> getChildren(V parentNode) {
-		return new ArrayList<V>(graph.getChildren(parentNode));
-
+		int slot = slotOf(parentNode);
+		if (slot == NONE) {
+			return new ArrayList<V>(0);
+		}
+		return nodesAt(children[slot], childCounts[slot]);
 	}
 
 	/**
@@ -130,35 +190,42 @@ public class BasicForest<V> {
 	 * @return
 	 */
 	public List<V> getSubtreeNodes(V parentNode) {
-		Collection<V> children = graph.getChildren(parentNode);
 		List<V> list = new ArrayList<V>();
-		list.add(parentNode);
-		if (children != null) {
-			for (V v : children) {
-				list.addAll(getSubtreeNodes(v));
-			}
+		int slot = slotOf(parentNode);
+		if (slot == NONE) {
+			list.add(parentNode);
+		} else {
+			collectSubtree(slot, list);
 		}
 		return list;
 
 	}
 
+	private void collectSubtree(int slot, List<V> list) {
+		list.add(nodeAt(slot));
+		int[] kids = children[slot];
+		for (int i = 0; i < childCounts[slot]; i++) {
+			collectSubtree(kids[i], list);
+		}
+	}
+
 	/**
-	 * Finds all the leaves for the specified {@code parentNode}, that is, all those with no children;
+	 * Finds all the leaves for the specified {@code slot}, that is, all those with no children;
 	 * 
-	 * @param parentNode
+	 * @param slot
 	 * @param leaves
 	 */
-	private void findLeaves(V parentNode, List<V> leaves) {
-		if (leaves == null)
-			return;
-		Collection<V> children = graph.getChildren(parentNode);
-		if (children == null)
+	private void findLeaves(int slot, List<V> leaves) {
+		if (slot == NONE) {
 			return;
-		if (children.size() == 0) {
-			leaves.add(parentNode);
+		}
+		int count = childCounts[slot];
+		if (count == 0) {
+			leaves.add(nodeAt(slot));
 		} else {
-			for (V v : children) {
-				findLeaves(v, leaves);
+			int[] kids = children[slot];
+			for (int i = 0; i < count; i++) {
+				findLeaves(kids[i], leaves);
 			}
 		}
 	}
@@ -172,43 +239,51 @@ public class BasicForest<V> {
 	 */
 	public List<V> findLeaves() {
 		List<V> leaves = new ArrayList<V>();
-		findLeaves(getRoot(), leaves);
+		if (rootCount > 0) {
+			findLeaves(roots[0], leaves);
+		}
 		return leaves;
 	}
 
 	public List<V> findLeaves(V parentNode) {
 		List<V> leaves = new ArrayList<V>();
-		findLeaves(parentNode, leaves);
+		findLeaves(slotOf(parentNode), leaves);
 		return leaves;
 	}
 
 	/**
-	 * Returns a list of all the entries in the tree
+	 * Returns a list of all the entries in the tree, in insertion order
 	 * 
 	 * @return
 	 */
 	public Collection<V> getEntries() {
-		return graph.getVertices();
+		return getAllNodes();
 	}
 
 	public void clear() {
-		graph = new DelegateForest<V, Integer>();
-		edgeCount = 0;
+		init();
+	}
+
+	private void init() {
+		nodes = new Object[INITIAL_CAPACITY];
+		parents = new int[INITIAL_CAPACITY];
+		children = new int[INITIAL_CAPACITY][];
+		childCounts = new int[INITIAL_CAPACITY];
+		roots = new int[INITIAL_CAPACITY];
+		slotsByKey = new int[INITIAL_CAPACITY];
+		slotsByNode = new HashMap<>();
+		rootCount = 0;
+		nodeCount = 0;
 	}
 
 	/**
 	 * Returns a list of all the roots - the entry which is at the start of each chain or branch. For the tree to be a
-	 * tree, there should only be one of these
+	 * tree, there should only be one of these. Roots are returned in insertion order
 	 * 
 	 * @return
 	 */
 	public List<V> getRoots() {
-		Collection<Tree<V, Integer>> t = graph.getTrees();
-		List<V> branchRoots = new ArrayList<V>();
-		for (Tree<V, Integer> branch : t) {
-			branchRoots.add(branch.getRoot());
-		}
-		return branchRoots;
+		return nodesAt(roots, rootCount);
 	}
 
 	@Override
@@ -231,7 +306,8 @@ public class BasicForest<V> {
 	}
 
 	public int getChildCount(V parentNode) {
-		return graph.getChildCount(parentNode);
+		int slot = slotOf(parentNode);
+		return (slot == NONE) ? 0 : childCounts[slot];
 	}
 
 	public boolean hasChildren(V parentNode) {
@@ -244,44 +320,171 @@ public class BasicForest<V> {
 	 * @return
 	 */
 	public V getRoot() {
-		if (getRoots().isEmpty()) {
+		if (rootCount == 0) {
 			return null;
 		} else {
-			return getRoots().get(0);
+			return nodeAt(roots[0]);
 		}
 	}
 
 	public int getNodeCount() {
-		return graph.getVertexCount();
+		return nodeCount;
 	}
 
+	/**
+	 * Returns a Jung copy of this forest. The copy is built on every call, and changes to it are not reflected in this
+	 * forest.
+	 * 
+	 * @return
+	 */
 	public Forest<V, Integer> getGraph() {
+		Forest<V, Integer> graph = new DelegateForest<V, Integer>();
+		int edge = 0;
+		for (int slot = 0; slot < nodeCount; slot++) {
+			graph.addVertex(nodeAt(slot));
+		}
+		for (int slot = 0; slot < nodeCount; slot++) {
+			if (parents[slot] != NONE) {
+				edge++;
+				graph.addEdge(edge, nodeAt(parents[slot]), nodeAt(slot));
+			}
+		}
 		return graph;
 	}
 
 	/**
-	 * Uses a list to return all vertices, but no ordering should be implied
+	 * Uses a list to return all vertices, in insertion order
 	 * 
 	 * @return
 	 */
+	@SuppressWarnings("unchecked")
 	public List<V> getAllNodes() {
-		return new ArrayList<V>(graph.getVertices());
+		return (List<V>) new ArrayList<Object>(Arrays.asList(nodes).subList(0, nodeCount));
 	}
 
 	public V getRootFor(V node) {
 		if (node == null) {
 			return null;
 		}
-		V nut = node;
-		while (true) {
-			V parent = graph.getParent(nut);
-			if (parent == null) {
-				break;
-			} else {
-				nut = parent;
+		int slot = slotOf(node);
+		if (slot == NONE) {
+			return node;
+		}
+		while (parents[slot] != NONE) {
+			slot = parents[slot];
+		}
+		return nodeAt(slot);
+	}
+
+	/**
+	 * Reduces the storage to the size actually needed by the current nodes. Useful once a forest has been fully built
+	 * and will only be read from then on. Adding further nodes after this call is allowed, but will cause the storage
+	 * to grow again.
+	 */
+	protected void trimToSize() {
+		int capacity = Math.max(nodeCount, 1);
+		nodes = Arrays.copyOf(nodes, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		children = Arrays.copyOf(children, capacity);
+		childCounts = Arrays.copyOf(childCounts, capacity);
+		roots = Arrays.copyOf(roots, Math.max(rootCount, 1));
+		for (int slot = 0; slot < nodeCount; slot++) {
+			int count = childCounts[slot];
+			children[slot] = (count == 0) ? NO_CHILDREN : Arrays.copyOf(children[slot], count);
+		}
+	}
+
+	private int slotOf(V node) {
+		if (node == null) {
+			return NONE;
+		}
+		int key = key(node);
+		if (key < 0) {
+			Integer slot = slotsByNode.get(node);
+			return (slot == null) ? NONE : slot;
+		}
+		return (key < slotsByKey.length) ? slotsByKey[key] - 1 : NONE;
+	}
+
+	private int newSlot(V node) {
+		int slot = nodeCount;
+		if (slot == nodes.length) {
+			int capacity = slot * 2;
+			nodes = Arrays.copyOf(nodes, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			children = Arrays.copyOf(children, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+		}
+		nodes[slot] = node;
+		parents[slot] = NONE;
+		children[slot] = NO_CHILDREN;
+		childCounts[slot] = 0;
+		nodeCount++;
+
+		int key = key(node);
+		if (key < 0) {
+			slotsByNode.put(node, slot);
+		} else {
+			if (key >= slotsByKey.length) {
+				slotsByKey = Arrays.copyOf(slotsByKey, Math.max(key + 1, slotsByKey.length * 2));
 			}
+			slotsByKey[key] = slot + 1;
 		}
-		return nut;
+		return slot;
+	}
+
+	private void addRoot(int slot) {
+		if (rootCount == roots.length) {
+			roots = Arrays.copyOf(roots, rootCount * 2);
+		}
+		roots[rootCount] = slot;
+		rootCount++;
+	}
+
+	private void removeRoot(int slot) {
+		rootCount = remove(roots, rootCount, slot);
+	}
+
+	private void addChildSlot(int parentSlot, int childSlot) {
+		int[] kids = children[parentSlot];
+		int count = childCounts[parentSlot];
+		if (count == kids.length) {
+			kids = Arrays.copyOf(kids, (count == 0) ? 4 : count * 2);
+			children[parentSlot] = kids;
+		}
+		kids[count] = childSlot;
+		childCounts[parentSlot] = count + 1;
+	}
+
+	private void removeChildSlot(int parentSlot, int childSlot) {
+		childCounts[parentSlot] = remove(children[parentSlot], childCounts[parentSlot], childSlot);
+	}
+
+	/**
+	 * Removes {@code value} from the first {@code count} entries of {@code array}, retaining order, and returns the new
+	 * count
+	 */
+	private static int remove(int[] array, int count, int value) {
+		for (int i = 0; i < count; i++) {
+			if (array[i] == value) {
+				System.arraycopy(array, i + 1, array, i, count - i - 1);
+				return count - 1;
+			}
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V nodeAt(int slot) {
+		return (slot == NONE) ? null : (V) nodes[slot];
+	}
+
+	private List<V> nodesAt(int[] slots, int count) {
+		List<V> list = new ArrayList<V>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(nodeAt(slots[i]));
+		}
+		return list;
 	}
 
 }
@@ -16,6 +16,8 @@ import javax.inject.Singleton;
 
 import org.apache.shiro.subject.Subject;
 
+import uk.co.q3c.v7.base.navigate.sitemap.BinarySitemapProvider;
+import uk.co.q3c.v7.base.navigate.sitemap.ReloadingSitemapProvider;
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapProvider;
 import uk.co.q3c.v7.base.navigate.sitemap.TextReaderSitemapProvider;
@@ -30,12 +32,24 @@ public class IniModule extends AbstractModule {
 	@Override
 	protected void configure() {
 		bind(V7Ini.class).toProvider(V7IniProvider.class).in(Singleton.class);
-		bind(SitemapProvider.class).to(TextReaderSitemapProvider.class);
-		bind(Sitemap.class).toProvider(SitemapProvider.class).in(Singleton.class);
+		bindSitemapProvider();
+		// the provider decides whether the sitemap can change, so it is not bound as a singleton here. Long lived
+		// objects inject Provider<Sitemap> and read the live map from it, rather than holding on to one version
+		bind(Sitemap.class).toProvider(SitemapProvider.class);
 		bindSubjectProvider();
 		bindVaadinSessionProvider();
 	}
 
+	/**
+	 * Override this to use a different implementation for a SitemapProvider - for example,
+	 * {@link ReloadingSitemapProvider} to reload the sitemap whenever its source file changes, or
+	 * {@link BinarySitemapProvider} to load a sitemap compiled by the compileSitemap Gradle task. The provider should
+	 * be bound as a singleton.
+	 */
+	protected void bindSitemapProvider() {
+		bind(SitemapProvider.class).to(TextReaderSitemapProvider.class).in(Singleton.class);
+	}
+
 	protected void bindSubjectProvider() {
 		bind(Subject.class).toProvider(SubjectProvider.class);
 	}
@@ -28,6 +28,8 @@ import org.slf4j.LoggerFactory;
 public class V7Ini extends Ini {
 	private static Logger log = LoggerFactory.getLogger(V7Ini.class);
 	private static final String defaultPath = "classpath:V7.ini";
+	public static final int DEFAULT_HISTORY_DEPTH = 10;
+	public static final int DEFAULT_VIEW_CACHE_SIZE = 8;
 
 	public static enum DbParam {
 		dbURL,
@@ -146,6 +148,83 @@ public class V7Ini extends Ini {
 		return getBooleanOption("readSiteMap");
 	}
 
+	/**
+	 * The number of navigation steps each UI keeps in its {@link uk.co.q3c.v7.base.navigate.NavigationHistory}, set
+	 * by historyDepth in the options section. Defaults to {@link #DEFAULT_HISTORY_DEPTH}, and 0 disables the history
+	 * 
+	 * @return
+	 */
+	public int optionHistoryDepth() {
+		return getIntOption("historyDepth", DEFAULT_HISTORY_DEPTH);
+	}
+
+	/**
+	 * The number of least recently used views each UI keeps in its {@link uk.co.q3c.v7.base.navigate.ViewCache} for
+	 * reuse, set by viewCacheSize in the options section. Defaults to {@link #DEFAULT_VIEW_CACHE_SIZE}, and 0 keeps
+	 * none
+	 * 
+	 * @return
+	 */
+	public int optionViewCacheSize() {
+		return getIntOption("viewCacheSize", DEFAULT_VIEW_CACHE_SIZE);
+	}
+
+	/**
+	 * The number of views each UI's {@link uk.co.q3c.v7.base.navigate.ViewPrefetcher} constructs in advance, set by
+	 * prefetchViews in the options section. Defaults to 0, which disables prefetching
+	 * 
+	 * @return
+	 */
+	public int optionPrefetchViews() {
+		return getIntOption("prefetchViews", 0);
+	}
+
+	/**
+	 * The window, in milliseconds, within which the fragment changes of a UI are coalesced by its
+	 * {@link uk.co.q3c.v7.base.navigate.FragmentCoalescer}, set by coalesceWindow in the options section. Defaults to
+	 * 0, which disables coalescing
+	 * 
+	 * @return
+	 */
+	public int optionCoalesceWindow() {
+		return getIntOption("coalesceWindow", 0);
+	}
+
+	/**
+	 * The directory the {@link uk.co.q3c.v7.base.shiro.DefaultLoginAuditLog} writes to, set by auditDirectory in the
+	 * options section. A leading system property, such as $user.home, is expanded. Defaults to v7/audit in the user's
+	 * home directory
+	 * 
+	 * @return
+	 */
+	public File optionAuditDirectory() {
+		Section section = getSection("options");
+		if ((section == null) || !section.containsKey("auditDirectory")) {
+			return ConfigUtil.fileFromPathWithVariable("$user.home", "v7", "audit");
+		}
+		String path = section.get("auditDirectory").trim();
+		if (path.startsWith("$")) {
+			int slash = path.indexOf('/');
+			String base = (slash < 0) ? path : path.substring(0, slash);
+			String rest = (slash < 0) ? "" : path.substring(slash + 1);
+			return ConfigUtil.fileFromPathWithVariable(base, "", rest);
+		}
+		return new File(path);
+	}
+
+	private int getIntOption(String optionName, int defaultValue) {
+		Section section = getSection("options");
+		if ((section == null) || !section.containsKey(optionName)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(section.get(optionName).trim());
+		} catch (NumberFormatException e) {
+			log.warn("The option {} in V7.ini is not a number, using the default value", optionName);
+			return defaultValue;
+		}
+	}
+
 	private boolean getBooleanOption(String optionName) {
 		Section section = getSection("options");
 		if (section == null) {
@@ -71,7 +71,7 @@ public abstract class BaseGuiceServletInjector extends GuiceServletContextListen
 	@Override
 	protected Injector getInjector() {
 
-		injector = Guice.createInjector(new IniModule(), new I18NModule());
+		injector = Guice.createInjector(iniModule(), new I18NModule());
 
 		injector = injector.createChildInjector(getModules());
 
@@ -84,6 +84,16 @@ public abstract class BaseGuiceServletInjector extends GuiceServletContextListen
 		return injector;
 	}
 
+	/**
+	 * Override this if you have sub-classed the {@link IniModule} - for example, to bind a different
+	 * {@link SitemapProvider}
+	 * 
+	 * @return
+	 */
+	protected Module iniModule() {
+		return new IniModule();
+	}
+
 	private List<Module> getModules() {
 		// ini load is handled by the provider
 		V7Ini ini = injector.getInstance(V7Ini.class);
@@ -181,6 +191,12 @@ public abstract class BaseGuiceServletInjector extends GuiceServletContextListen
 		super.contextInitialized(servletContextEvent);
 	}
 
+	/**
+	 * Releases everything registered with the {@link ShutdownRegistry}, so that no threads or other resources are
+	 * left behind when the application is stopped or redeployed
+	 * 
+	 * @see com.google.inject.servlet.GuiceServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
 	@Override
 	public void contextDestroyed(ServletContextEvent servletContextEvent) {
 		// may need later for Quartz
@@ -191,6 +207,10 @@ public abstract class BaseGuiceServletInjector extends GuiceServletContextListen
 		// e.printStackTrace();
 		// }
 		// injector.getInstance(PersistService.class).stop();
+		if (injector != null) {
+			// stops the background threads and releases the resources started by V7 components
+			injector.getInstance(ShutdownRegistry.class).shutdown();
+		}
 		super.contextDestroyed(servletContextEvent);
 		ctx.remove();
 	}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.guice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import javax.inject.Singleton;
+import javax.servlet.ServletContextEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the resources - background threads, watch services, registered MBeans and so on - which V7 components acquire
+ * while the application is running, so that they are all released in one place, by
+ * {@link BaseGuiceServletInjector#contextDestroyed(ServletContextEvent)}, when the application is stopped or
+ * redeployed. A component registers a resource only once it has actually acquired it, so nothing is created during
+ * shutdown just to be released again.
+ * <p>
+ * Resources are released in the reverse of the order in which they were registered. A resource registered after
+ * {@link #shutdown()} is released straight away.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class ShutdownRegistry {
+	private static Logger log = LoggerFactory.getLogger(ShutdownRegistry.class);
+
+	private final Deque<Closeable> resources = new ArrayDeque<>();
+	private boolean shutdown;
+
+	/**
+	 * Registers {@code resource} to be closed by {@link #shutdown()}
+	 * 
+	 * @param resource
+	 */
+	public void register(Closeable resource) {
+		synchronized (this) {
+			if (!shutdown) {
+				resources.push(resource);
+				return;
+			}
+		}
+		log.debug("registered after shutdown, releasing straight away");
+		close(resource);
+	}
+
+	/**
+	 * Removes {@code resource}, for a resource which has already been released by its owner
+	 * 
+	 * @param resource
+	 */
+	public synchronized void unregister(Closeable resource) {
+		resources.remove(resource);
+	}
+
+	/**
+	 * Closes every registered resource, most recently registered first. A resource which fails to close is logged and
+	 * does not prevent the others being closed
+	 */
+	public void shutdown() {
+		List<Closeable> closing;
+		synchronized (this) {
+			shutdown = true;
+			closing = new ArrayList<>(resources);
+			resources.clear();
+		}
+		log.debug("releasing {} resources", closing.size());
+		for (Closeable resource : closing) {
+			close(resource);
+		}
+	}
+
+	private void close(Closeable resource) {
+		try {
+			resource.close();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Unable to release " + resource, e);
+		}
+	}
+
+	/**
+	 * The number of resources waiting to be released
+	 * 
+	 * @return
+	 */
+	public synchronized int size() {
+		return resources.size();
+	}
+
+}
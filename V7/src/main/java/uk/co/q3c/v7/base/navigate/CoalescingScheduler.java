@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+/**
+ * The scheduler shared by the {@link FragmentCoalescer} of every UI, with a single daemon thread. The only work it does
+ * is to hand a deferred navigation to the UI it is for, so one thread is enough however many UIs there are. It is shut
+ * down, abandoning any deferred navigations, when the application is stopped (see {@link ShutdownRegistry}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class CoalescingScheduler extends ScheduledThreadPoolExecutor {
+
+	@Inject
+	protected CoalescingScheduler(ShutdownRegistry shutdownRegistry) {
+		super(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "V7 fragment coalescer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// a deferred navigation which has been superseded is not worth keeping
+		setRemoveOnCancelPolicy(true);
+		shutdownRegistry.register(new Closeable() {
+
+			@Override
+			public void close() {
+				shutdownNow();
+			}
+		});
+	}
+
+}
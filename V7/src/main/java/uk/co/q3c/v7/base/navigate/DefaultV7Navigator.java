@@ -1,8 +1,10 @@
 package uk.co.q3c.v7.base.navigate;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -13,14 +15,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
+import uk.co.q3c.v7.base.navigate.metrics.NavigationMetrics;
+import uk.co.q3c.v7.base.navigate.metrics.NavigationPhase;
+import uk.co.q3c.v7.base.navigate.metrics.NavigationTimer;
+import uk.co.q3c.v7.base.navigate.sitemap.ReloadingSitemapProvider;
+import uk.co.q3c.v7.base.navigate.sitemap.RouteTable;
 import uk.co.q3c.v7.base.navigate.sitemap.SiteMapException;
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
+import uk.co.q3c.v7.base.shiro.AuthorizationCache;
 import uk.co.q3c.v7.base.shiro.LoginStatusHandler;
 import uk.co.q3c.v7.base.shiro.LoginStatusListener;
-import uk.co.q3c.v7.base.shiro.URIPermissionFactory;
-import uk.co.q3c.v7.base.shiro.URIViewPermission;
 import uk.co.q3c.v7.base.shiro.UnauthorizedExceptionHandler;
 import uk.co.q3c.v7.base.ui.ScopedUI;
 import uk.co.q3c.v7.base.view.ErrorView;
@@ -28,7 +34,9 @@ import uk.co.q3c.v7.base.view.V7View;
 import uk.co.q3c.v7.base.view.V7ViewChangeEvent;
 import uk.co.q3c.v7.base.view.V7ViewChangeListener;
 
+import com.google.inject.Injector;
 import com.google.inject.Provider;
+import com.google.inject.util.Providers;
 import com.vaadin.navigator.ViewChangeListener;
 import com.vaadin.navigator.ViewChangeListener.ViewChangeEvent;
 import com.vaadin.server.Page.UriFragmentChangedEvent;
@@ -49,30 +57,54 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 	private final Map<String, Provider<V7View>> viewProMap;
 	private String previousFragment;
 	private String currentFragment;
-	private final Sitemap sitemap;
+	private final Provider<Sitemap> sitemapPro;
 	private final Provider<Subject> subjectPro;
-	private final URIPermissionFactory uriPermissionFactory;
+	private final AuthorizationCache authorizationCache;
 	private final SitemapURIConverter sitemapURIConverter;
+	private final Injector injector;
+	private final ViewCache viewCache;
+	private final ViewPrefetcher prefetcher;
+	private final NavigationMetrics metrics;
+	private final NavigationHistory history;
+	private final FragmentCoalescer coalescer;
 
 	@Inject
-	protected DefaultV7Navigator(Provider<ErrorView> errorViewPro, URIFragmentHandler uriHandler, Sitemap sitemap,
+	protected DefaultV7Navigator(Provider<ErrorView> errorViewPro, URIFragmentHandler uriHandler,
+			Provider<Sitemap> sitemapPro,
 			Map<String, Provider<V7View>> viewProMap, Provider<Subject> subjectPro,
-			URIPermissionFactory uriPermissionFactory, SitemapURIConverter sitemapURIConverter,
-			LoginStatusHandler loginHandler) {
+			AuthorizationCache authorizationCache, SitemapURIConverter sitemapURIConverter,
+			LoginStatusHandler loginHandler, Injector injector, ViewCache viewCache, ViewPrefetcher prefetcher,
+			NavigationMetrics metrics, NavigationHistory history, FragmentCoalescer coalescer) {
 		super();
 		this.errorViewPro = errorViewPro;
 		this.viewProMap = viewProMap;
 		this.uriHandler = uriHandler;
-		this.sitemap = sitemap;
+		this.sitemapPro = sitemapPro;
 		this.subjectPro = subjectPro;
-		this.uriPermissionFactory = uriPermissionFactory;
+		this.authorizationCache = authorizationCache;
 		this.sitemapURIConverter = sitemapURIConverter;
+		this.injector = injector;
+		this.viewCache = viewCache;
+		this.prefetcher = prefetcher;
+		this.metrics = metrics;
+		this.history = history;
+		this.coalescer = coalescer;
 		loginHandler.addListener(this);
 	}
 
 	/**
 	 * Takes a URI fragment, checks for any redirects defined by the {@link Sitemap}, then calls
-	 * {@link #navigateTo(V7View, String, String)} to change the view
+	 * {@link #navigateTo(V7View, String, NavigationState)} to change the view. The fragment is decoded once, into a
+	 * {@link NavigationState}, which is then used for each step of the navigation (it is only decoded again if it is
+	 * redirected). The View is taken from the {@link ViewCache} if it has been retained from an earlier navigation.
+	 * The time taken by each phase of the navigation is recorded in {@link NavigationMetrics}. If the user moves back
+	 * or forward to the fragment next to the current one in the {@link NavigationHistory}, the state held there is used
+	 * instead, although the user's permission to see the page is still checked, and the View is still taken from the
+	 * {@link ViewCache}. If the {@link FragmentCoalescer} is enabled, a navigation which is overtaken by another while
+	 * its View is being constructed is abandoned, and the View is not shown.
+	 * <p>
+	 * The {@link Sitemap} is read once, at the start, and every step of the navigation uses that same version of it, so
+	 * that a reload (see {@link ReloadingSitemapProvider}) part way through does not mix nodes from different versions.
 	 * 
 	 * @see uk.co.q3c.v7.base.navigate.V7Navigator#navigateTo(java.lang.String)
 	 */
@@ -85,55 +117,142 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 			log.debug("fragment unchanged, no navigation required");
 			return;
 		}
-		sitemapCheck();
+		Sitemap sitemap = sitemap();
 		if (sitemap.hasErrors()) {
 			throw new SiteMapException("Unable to navigate, site map has errors\n" + sitemap.getReport());
 		}
 
-		// fragment needs to be revised if redirected
-		String revisedFragment = null;
-		if (fragment == null) {
-			revisedFragment = checkRedirects("");
+		long navigation = coalescer.begin();
+		NavigationTimer timer = metrics.start();
+		// a move back or forward to a recent fragment has already been resolved, unless the map has been reloaded since
+		history.checkSitemap(sitemap);
+		NavigationHistory.Entry entry = history.find(fragment);
+		NavigationState state;
+		if (entry != null) {
+			log.debug("fragment found in history, no need to resolve it again");
+			state = entry.getState();
 		} else {
-			revisedFragment = checkRedirects(fragment);
+			try {
+				// state needs to be revised if redirected
+				state = checkRedirects(sitemap, navigationState(sitemap, (fragment == null) ? "" : fragment));
+			} catch (InvalidURIException e) {
+				metrics.invalidURI();
+				throw e;
+			}
 		}
+		timer.lap(NavigationPhase.Redirect);
+
+		log.debug("fragment after redirect check is {}", state);
+		String viewName = state.getVirtualPage();
+		V7View view = view(state);
+		timer.lap(NavigationPhase.View_Construction);
+		// the View may have changed the fragment while it was being constructed
+		if (coalescer.superseded(navigation)) {
+			log.debug("navigation to {} overtaken by a later one, abandoned", state);
+			return;
+		}
+
+		navigateTo(view, viewName, state, sitemap, timer);
 
-		log.debug("fragment after redirect check is {}", revisedFragment);
-		String viewName = uriHandler.virtualPage();
+	}
+
+	/**
+	 * Returns the View for {@code state}, from the {@link ViewCache} if one has been retained, otherwise from the
+	 * {@link ViewPrefetcher} if one has been prefetched, otherwise a new instance
+	 * 
+	 * @param state
+	 * @return
+	 */
+	private V7View view(NavigationState state) {
+		String viewName = state.getVirtualPage();
 		log.debug("page to look up View is {}", viewName);
-		Provider<V7View> provider = viewProMap.get(viewName);
-		V7View view = null;
+		Provider<? extends V7View> provider = viewProvider(state);
 		if (provider == null) {
-			String msg = "View not found for page '" + revisedFragment + "'";
+			String msg = "View not found for page '" + state.getFragment() + "'";
 			log.debug(msg);
+			metrics.invalidURI();
 			throw new InvalidURIException(msg);
-		} else {
-			view = provider.get();
 		}
+		// a retained view takes precedence over a prefetched one
+		V7View prefetched = viewCache.contains(viewName) ? null : prefetcher.take(viewName);
+		return viewCache.get(viewName, (prefetched == null) ? provider : Providers.of(prefetched));
+	}
 
-		navigateTo(view, viewName, revisedFragment);
+	/**
+	 * Decodes {@code fragment}, without changing the state of the shared {@link URIFragmentHandler}, and resolves it
+	 * against {@code sitemap}. If the map has been frozen, its {@link RouteTable} does both in a single scan, and also
+	 * converts the parameters to the types declared for them in the map.
+	 * 
+	 * @param sitemap
+	 * @param fragment
+	 * @return
+	 * @throws InvalidURIException
+	 *             if a parameter cannot be converted to its declared type
+	 */
+	private NavigationState navigationState(Sitemap sitemap, String fragment) {
+		RouteTable routes = sitemap.getRouteTable();
+		if (routes != null) {
+			NavigationState state = routes.match(fragment);
+			if (state != null) {
+				return state;
+			}
+		}
+		NavigationState state = uriHandler.navigationState(fragment);
+		SitemapNode node = sitemap.nodeFor(state.getVirtualPage());
+		if (node == null) {
+			return state;
+		}
+		LinkedList<SitemapNode> nodeChain = new LinkedList<>();
+		while (node != null) {
+			nodeChain.addFirst(node);
+			node = sitemap.getParent(node);
+		}
+		return state.withNodeChain(nodeChain);
+	}
 
+	/**
+	 * Returns the provider for the View of {@code state}, from the View bindings. A page which has no binding, because
+	 * it was added to the {@link Sitemap} by a reload (see {@link ReloadingSitemapProvider}), is given the view class
+	 * of its node.
+	 * 
+	 * @param state
+	 * @return
+	 */
+	private Provider<? extends V7View> viewProvider(NavigationState state) {
+		Provider<V7View> provider = viewProMap.get(state.getVirtualPage());
+		if (provider != null) {
+			return provider;
+		}
+		SitemapNode node = state.getNode();
+		if ((node != null) && (node.getViewClass() != null)) {
+			return injector.getProvider(node.getViewClass());
+		}
+		return null;
 	}
 
 	/**
-	 * Checks {@code fragment} to see whether it has been redirected. If it has the full fragment is returned, but
-	 * modified for the redirected page. If not, the {@code fragment} is returned unchanged.
+	 * Checks {@code state} to see whether its page has been redirected in {@code sitemap}. If it has, the state for the
+	 * full fragment is returned, but modified for the redirected page. If not, {@code state} is returned unchanged. The
+	 * page is replaced as a literal prefix of the fragment, so characters which have a meaning in a regular expression
+	 * are not a problem.
 	 * 
-	 * @param fragment
+	 * @param sitemap
+	 * @param state
 	 * @return
 	 */
-	private String checkRedirects(String fragment) {
-		sitemapCheck();
-		uriHandler.setFragment(fragment);
-		String page = uriHandler.virtualPage();
+	private NavigationState checkRedirects(Sitemap sitemap, NavigationState state) {
+		String page = state.getVirtualPage();
 		String redirection = sitemap.getRedirectFor(page);
 		// if no redirect found, page is returned
-		if (redirection == page) {
-			return fragment;
+		if (redirection.equals(page)) {
+			return state;
 		} else {
-			String newFragment = fragment.replaceFirst(page, redirection);
-			uriHandler.setFragment(newFragment);
-			return newFragment;
+			// the virtual page is always the start of the fragment, after any bang
+			String fragment = state.getFragment();
+			int start = fragment.startsWith("!") ? 1 : 0;
+			String newFragment = fragment.substring(0, start) + redirection
+					+ fragment.substring(start + page.length());
+			return navigationState(sitemap, newFragment);
 		}
 	}
 
@@ -152,24 +271,51 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 	 *            parameters, which include the part which forms the pseudo URI. For example, private/transfers/id=23
 	 */
 	protected void navigateTo(V7View view, String viewName, String fragment) {
-		boolean publicPage = sitemapURIConverter.pageIsPublic(fragment);
+		Sitemap sitemap = sitemap();
+		navigateTo(view, viewName, navigationState(sitemap, fragment), sitemap, metrics.start());
+	}
 
-		// if page is public don't check permissions as they will fail!
-		if (publicPage) {
-			changeView(view, viewName, fragment);
-			return;
-		}
+	/**
+	 * As {@link #navigateTo(V7View, String, String)}, but for a fragment which has already been decoded
+	 * 
+	 * @param view
+	 * @param viewName
+	 * @param state
+	 */
+	protected void navigateTo(V7View view, String viewName, NavigationState state) {
+		navigateTo(view, viewName, state, sitemap(), metrics.start());
+	}
 
-		// check permissions, raise exception if not allowed
-		URIViewPermission permission = uriPermissionFactory.createViewPermission(fragment);
-		if (subjectPro.get().isPermitted(permission)) {
-			changeView(view, viewName, fragment);
+	private void navigateTo(V7View view, String viewName, NavigationState state, Sitemap sitemap,
+			NavigationTimer timer) {
+		boolean permitted = isPermitted(sitemap, subjectPro.get(), state);
+		timer.lap(NavigationPhase.Permission);
+		if (permitted) {
+			changeView(view, viewName, state, sitemap, timer);
 		} else {
-			throw new UnauthorizedException(fragment);
+			metrics.unauthorized();
+			throw new UnauthorizedException(state.getFragment());
 		}
 
 	}
 
+	/**
+	 * Returns true if the page of {@code state} is public in {@code sitemap}, or {@code subject} has permission to view
+	 * it. The decision is usually already held by the {@link AuthorizationCache}
+	 * 
+	 * @param sitemap
+	 * @param subject
+	 * @param state
+	 * @return
+	 */
+	private boolean isPermitted(Sitemap sitemap, Subject subject, NavigationState state) {
+		// if page is public don't check permissions as they will fail!
+		if (sitemapURIConverter.pageIsPublic(sitemap, state)) {
+			return true;
+		}
+		return authorizationCache.isPermitted(subject, state);
+	}
+
 	/**
 	 * Internal method activating a view, setting its parameters and calling listeners.
 	 * 
@@ -177,13 +323,21 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 	 *            view to activate
 	 * @param viewName
 	 *            (optional) name of the view or null not to change the navigation state
-	 * @param fragment
-	 *            parameters passed in the navigation state to the view. In this context, the parameters are all the
-	 *            parameters, which include the part which forms the pseudo URI. For example, private/transfers/id=23
+	 * @param state
+	 *            the decoded fragment, passed to the view in the {@link V7ViewChangeEvent}
+	 * @param sitemap
+	 *            the version of the {@link Sitemap} the navigation started with
+	 * @param timer
+	 *            times the phases of the navigation, which are recorded in {@link NavigationMetrics} once the view has
+	 *            changed
 	 */
-	private void changeView(V7View view, String viewName, String fragment) {
-		V7ViewChangeEvent event = new V7ViewChangeEvent(this, currentView, view, viewName, fragment);
-		if (!fireBeforeViewChange(event)) {
+	private void changeView(V7View view, String viewName, NavigationState state, Sitemap sitemap,
+			NavigationTimer timer) {
+		V7ViewChangeEvent event = new V7ViewChangeEvent(this, currentView, view, viewName, state);
+		boolean allowed = fireBeforeViewChange(event);
+		timer.lap(NavigationPhase.Listeners);
+		if (!allowed) {
+			metrics.blocked();
 			return;
 		}
 		getUI().changeView(currentView, view);
@@ -191,9 +345,80 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 
 		// we don't want to record being at the login page
 		// if (!(view instanceof LoginView)) {
-		setCurrentView(view, viewName, fragment);
+		setCurrentView(view, viewName, state.getFragment());
 		// }
+		history.visit(state, viewName);
+		timer.lap(NavigationPhase.Enter);
+		coalescer.navigated();
 		fireAfterViewChange(event);
+		timer.lap(NavigationPhase.Listeners);
+		metrics.record(view.getClass(), timer);
+		prefetch(sitemap, state);
+	}
+
+	/**
+	 * If the {@link ViewPrefetcher} is enabled, passes it the selection of the pages to prefetch, which it runs in the
+	 * background so that it does not delay the navigation (see {@link #selectPrefetch}). The UI, Subject and retained
+	 * views are captured here, as they can only be looked up while handling the request.
+	 * 
+	 * @param sitemap
+	 * @param state
+	 */
+	private void prefetch(final Sitemap sitemap, NavigationState state) {
+		final SitemapNode node = state.getNode();
+		if (!prefetcher.isEnabled() || (node == null)) {
+			return;
+		}
+		final UI ui = getUI();
+		final Subject subject = subjectPro.get();
+		final Set<String> retained = viewCache.names();
+		prefetcher.select(new Runnable() {
+
+			@Override
+			public void run() {
+				selectPrefetch(ui, sitemap, node, subject, retained);
+			}
+		});
+	}
+
+	/**
+	 * Passes the {@link ViewPrefetcher} the Views for the children and then the siblings of {@code node}, as the pages
+	 * most likely to be navigated to next, up to the capacity of the prefetcher. Pages which are redirected, already
+	 * have a View retained or prefetched, or which {@code subject} is not permitted to see, are left out.
+	 * 
+	 * @param ui
+	 * @param sitemap
+	 * @param node
+	 * @param subject
+	 * @param retained
+	 *            the pages which had a View retained in the {@link ViewCache} when the selection was made
+	 */
+	private void selectPrefetch(UI ui, Sitemap sitemap, SitemapNode node, Subject subject, Set<String> retained) {
+		List<SitemapNode> candidates = new ArrayList<>(sitemap.getChildren(node));
+		SitemapNode parent = sitemap.getParent(node);
+		if (parent != null) {
+			candidates.addAll(sitemap.getChildren(parent));
+		}
+		int count = 0;
+		for (SitemapNode candidate : candidates) {
+			if (count >= prefetcher.getCapacity()) {
+				return;
+			}
+			if (candidate.equals(node)) {
+				continue;
+			}
+			String page = sitemap.uri(candidate);
+			if (!page.equals(sitemap.getRedirectFor(page)) || retained.contains(page)
+					|| prefetcher.isPrefetched(page)) {
+				continue;
+			}
+			NavigationState candidateState = navigationState(sitemap, page);
+			Provider<? extends V7View> provider = viewProvider(candidateState);
+			if ((provider != null) && isPermitted(sitemap, subject, candidateState)) {
+				prefetcher.prefetch(ui, page, provider);
+				count++;
+			}
+		}
 	}
 
 	/**
@@ -258,9 +483,17 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 		listeners.remove(listener);
 	}
 
+	/**
+	 * Navigates to the new fragment, unless the {@link FragmentCoalescer} defers it
+	 * 
+	 * @see com.vaadin.server.Page.UriFragmentChangedListener#uriFragmentChanged(com.vaadin.server.Page.UriFragmentChangedEvent)
+	 */
 	@Override
 	public void uriFragmentChanged(UriFragmentChangedEvent event) {
-		navigateTo(event.getPage().getUriFragment());
+		String fragment = event.getPage().getUriFragment();
+		if (coalescer.offer(getUI(), fragment, this)) {
+			navigateTo(fragment);
+		}
 	}
 
 	@Override
@@ -334,7 +567,7 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 
 	@Override
 	public void navigateTo(StandardPageKey pageKey) {
-		sitemapCheck();
+		Sitemap sitemap = sitemap();
 		String page = sitemap.standardPageURI(pageKey);
 		if (page == null) {
 			throw new SiteMapException(pageKey + " cannot have a null path\n" + sitemap.getReport());
@@ -342,10 +575,17 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 		navigateTo(page);
 	}
 
-	private void sitemapCheck() {
+	/**
+	 * The live {@link Sitemap}, which is read from its provider each time, as it may have been reloaded
+	 * 
+	 * @return
+	 */
+	private Sitemap sitemap() {
+		Sitemap sitemap = sitemapPro.get();
 		if (sitemap == null) {
 			throw new SiteMapException("Sitemap has failed to load");
 		}
+		return sitemap;
 	}
 
 	@Override
@@ -364,18 +604,19 @@ public class DefaultV7Navigator implements V7Navigator, LoginStatusListener {
 		previousView = null;
 		previousViewName = null;
 		previousFragment = null;
+		history.clear();
 	}
 
 	@Override
 	public void navigateTo(SitemapNode node) {
-		sitemapCheck();
-		String url = sitemap.uri(node);
+		String url = sitemap().uri(node);
 		navigateTo(url);
 	}
 
 	@Override
 	public void error() {
-		changeView(errorViewPro.get(), "ErrorView", "error");
+		Sitemap sitemap = sitemap();
+		changeView(errorViewPro.get(), "ErrorView", navigationState(sitemap, "error"), sitemap, metrics.start());
 	}
 
 }
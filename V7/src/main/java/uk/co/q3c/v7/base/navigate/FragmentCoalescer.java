@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
+
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+/**
+ * Coalesces the URI fragment changes of a UI which arrive in quick succession - for example when the user repeatedly
+ * presses back or forward - so that only the last of them is navigated to, and no View is built just to be thrown away.
+ * <p>
+ * A fragment change which arrives at least {@link #getWindow()} milliseconds after the last navigation is navigated
+ * to straight away. One which arrives sooner is deferred until the window has passed, and replaced by any later one
+ * which arrives before then. When the window has passed, the deferred fragment is navigated to, holding the lock of
+ * the UI's session (see {@link UI#accessSynchronously(Runnable)}). A deferred fragment is abandoned, without its View
+ * being constructed, if any other navigation completes first, or the UI is detached.
+ * <p>
+ * A navigation holds the session lock throughout, so it can only be overtaken by a fragment change or navigation
+ * started from within it - for example by a View constructor which changes the fragment. The navigator checks for that
+ * once the View has been constructed (see {@link #begin()} and {@link #superseded(long)}), and abandons the overtaken
+ * navigation without showing its View. A View constructor which has already started is not interrupted.
+ * <p>
+ * Coalescing is disabled unless a window is set, by coalesceWindow in V7.ini (see {@link V7Ini#optionCoalesceWindow()})
+ * or {@link #setWindow(int)}. As a deferred navigation is made outside of a request, it only reaches the browser once
+ * the UI is next updated, so coalescing is best used with server push or polling enabled.
+ * <p>
+ * To help tune the window, the coalescer counts the fragment changes received, those deferred, and those coalesced
+ * (replaced by a later change, or abandoned, before they were navigated to, or overtaken while being navigated to).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@UIScoped
+public class FragmentCoalescer {
+	private static Logger log = LoggerFactory.getLogger(FragmentCoalescer.class);
+
+	private final ScheduledExecutorService scheduler;
+	private int window;
+	private long lastNavigation;
+	private String pending;
+	private ScheduledFuture<?> deferral;
+	private long received;
+	private long deferred;
+	private long coalesced;
+	// advanced by every fragment change and navigation, so that a navigation can tell whether it has been overtaken
+	private long sequence;
+
+	@Inject
+	protected FragmentCoalescer(V7Ini ini, CoalescingScheduler scheduler) {
+		this(scheduler, ini.optionCoalesceWindow());
+	}
+
+	protected FragmentCoalescer(ScheduledExecutorService scheduler, int window) {
+		super();
+		this.scheduler = scheduler;
+		this.window = window;
+	}
+
+	/**
+	 * Offers a fragment change. Returns true if {@code fragment} should be navigated to straight away, or false if it
+	 * has been deferred, to be navigated to by {@code navigator} once the window has passed
+	 * 
+	 * @param ui
+	 *            the UI the fragment change is for
+	 * @param fragment
+	 * @param navigator
+	 * @return
+	 */
+	public synchronized boolean offer(final UI ui, String fragment, final V7Navigator navigator) {
+		if (!isEnabled()) {
+			return true;
+		}
+		received++;
+		sequence++;
+		if (pending != null) {
+			log.debug("fragment '{}' replaced by '{}' before it was navigated to", pending, fragment);
+			coalesced++;
+			pending = fragment;
+			return false;
+		}
+		long wait = lastNavigation + TimeUnit.MILLISECONDS.toNanos(window) - System.nanoTime();
+		if (wait <= 0) {
+			return true;
+		}
+		try {
+			deferral = scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						ui.accessSynchronously(new Runnable() {
+
+							@Override
+							public void run() {
+								String fragment = take();
+								if (fragment != null) {
+									navigator.navigateTo(fragment);
+								}
+							}
+						});
+					} catch (UIDetachedException e) {
+						log.debug("UI detached before a deferred fragment could be navigated to");
+						abandon();
+					} catch (RuntimeException e) {
+						log.warn("Unable to navigate to a deferred fragment", e);
+					}
+				}
+			}, wait, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			log.debug("Unable to defer fragment '{}', it will be navigated to straight away", fragment);
+			return true;
+		}
+		pending = fragment;
+		deferred++;
+		return false;
+	}
+
+	/**
+	 * Called after every completed navigation, to start a new window. A fragment still deferred at this point has been
+	 * overtaken by the navigation, and is abandoned
+	 */
+	public synchronized void navigated() {
+		lastNavigation = System.nanoTime();
+		abandon();
+	}
+
+	/**
+	 * Called when a navigation starts. Returns the ticket to pass to {@link #superseded(long)}
+	 * 
+	 * @return
+	 */
+	public synchronized long begin() {
+		return ++sequence;
+	}
+
+	/**
+	 * Returns true if coalescing is enabled, and another fragment change or navigation has started since the navigation
+	 * given {@code ticket} by {@link #begin()}. The navigation should then be abandoned, and is counted as coalesced
+	 * 
+	 * @param ticket
+	 * @return
+	 */
+	public synchronized boolean superseded(long ticket) {
+		if (!isEnabled() || (ticket == sequence)) {
+			return false;
+		}
+		coalesced++;
+		return true;
+	}
+
+	private synchronized String take() {
+		String fragment = pending;
+		pending = null;
+		deferral = null;
+		return fragment;
+	}
+
+	private synchronized void abandon() {
+		if (pending != null) {
+			log.debug("deferred fragment '{}' abandoned", pending);
+			coalesced++;
+			pending = null;
+		}
+		if (deferral != null) {
+			deferral.cancel(false);
+			deferral = null;
+		}
+	}
+
+	/**
+	 * The fragment waiting to be navigated to, or null if there is none
+	 * 
+	 * @return
+	 */
+	public synchronized String getPending() {
+		return pending;
+	}
+
+	public synchronized boolean isEnabled() {
+		return window > 0;
+	}
+
+	public synchronized int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the window in milliseconds, 0 to disable coalescing
+	 * 
+	 * @param window
+	 */
+	public synchronized void setWindow(int window) {
+		this.window = window;
+	}
+
+	public synchronized long getReceived() {
+		return received;
+	}
+
+	public synchronized long getDeferred() {
+		return deferred;
+	}
+
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import javax.inject.Inject;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+
+/**
+ * The most recent navigations of a UI, held in a ring buffer of a fixed depth (see {@link V7Ini#optionHistoryDepth()}),
+ * so that when the user moves back or forward with the browser, the navigator can reuse the {@link NavigationState}
+ * already resolved for the fragment instead of resolving it again. Views are not held; the navigator always takes
+ * them from the {@link ViewCache}, so that their {@link uk.co.q3c.v7.base.view.ViewRetention} is respected.
+ * <p>
+ * Like the browser, the history has a current position. A navigation to the entry just before or just after the
+ * current position moves to it, and any other navigation discards the entries after the current position, and is
+ * added after it. Once the history is full, the oldest entry is discarded to make room. Only the entries within the
+ * depth are held, so the memory used by a UI for its history is bounded, and it is all released when the UI scope is
+ * released.
+ * <p>
+ * The states hold nodes of the {@link Sitemap} they were resolved against, so the entries are discarded when the
+ * navigator finds that the map has been replaced (see {@link #checkSitemap(Sitemap)}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@UIScoped
+public class NavigationHistory {
+
+	/**
+	 * A step in the history
+	 */
+	public static class Entry {
+		private final NavigationState state;
+		private final String viewName;
+
+		protected Entry(NavigationState state, String viewName) {
+			super();
+			this.state = state;
+			this.viewName = viewName;
+		}
+
+		public NavigationState getState() {
+			return state;
+		}
+
+		public String getFragment() {
+			return state.getFragment();
+		}
+
+		public String getViewName() {
+			return viewName;
+		}
+	}
+
+	private final Entry[] entries;
+	// index in entries of the oldest entry
+	private int first;
+	private int size;
+	// position of the current entry, counted from the oldest
+	private int cursor = -1;
+	// the map the entries were resolved against
+	private Sitemap sitemap;
+
+	@Inject
+	protected NavigationHistory(V7Ini ini) {
+		this(ini.optionHistoryDepth());
+	}
+
+	protected NavigationHistory(int depth) {
+		super();
+		entries = new Entry[Math.max(depth, 0)];
+	}
+
+	/**
+	 * Returns the entry for {@code fragment} if it is the entry just before or just after the current position (a move
+	 * back or forward), otherwise null. An entry further away is not returned, as a navigation to it is not a move
+	 * back or forward, and will be added to the history as a new entry
+	 * 
+	 * @param fragment
+	 * @return
+	 */
+	public Entry find(String fragment) {
+		if (fragment == null) {
+			return null;
+		}
+		if (matches(cursor - 1, fragment)) {
+			return entry(cursor - 1);
+		}
+		if (matches(cursor + 1, fragment)) {
+			return entry(cursor + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Records a navigation to {@code state}. If it is to the entry just before or after the current position, that
+	 * becomes the current position, otherwise the entries after the current position are discarded and a new entry
+	 * added.
+	 * 
+	 * @param state
+	 * @param viewName
+	 */
+	public void visit(NavigationState state, String viewName) {
+		if (entries.length == 0) {
+			return;
+		}
+		Entry entry = new Entry(state, viewName);
+		String fragment = state.getFragment();
+		if (matches(cursor - 1, fragment)) {
+			cursor--;
+			entries[index(cursor)] = entry;
+			return;
+		}
+		if (matches(cursor + 1, fragment)) {
+			cursor++;
+			entries[index(cursor)] = entry;
+			return;
+		}
+		for (int i = cursor + 1; i < size; i++) {
+			entries[index(i)] = null;
+		}
+		size = cursor + 1;
+		if (size == entries.length) {
+			entries[first] = null;
+			first = (first + 1) % entries.length;
+			size--;
+		}
+		entries[index(size)] = entry;
+		cursor = size;
+		size++;
+	}
+
+	/**
+	 * Discards all the entries if {@code current} is not the {@link Sitemap} they were resolved against, because the
+	 * map has been reloaded, and records {@code current} as the map for the entries which follow
+	 * 
+	 * @param current
+	 */
+	public void checkSitemap(Sitemap current) {
+		if (current != sitemap) {
+			clear();
+			sitemap = current;
+		}
+	}
+
+	/**
+	 * The entry at the current position, or null if the history is empty
+	 * 
+	 * @return
+	 */
+	public Entry current() {
+		return (cursor < 0) ? null : entry(cursor);
+	}
+
+	/**
+	 * The number of entries currently held
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * The maximum number of entries held
+	 * 
+	 * @return
+	 */
+	public int getDepth() {
+		return entries.length;
+	}
+
+	/**
+	 * Discards all the entries
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = null;
+		}
+		first = 0;
+		size = 0;
+		cursor = -1;
+	}
+
+	private boolean matches(int position, String fragment) {
+		return (position >= 0) && (position < size) && entry(position).getFragment().equals(fragment);
+	}
+
+	private Entry entry(int position) {
+		return entries[index(position)];
+	}
+
+	private int index(int position) {
+		return (first + position) % entries.length;
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
+
+/**
+ * An immutable, decoded URI fragment. A navigation parses its fragment once, with
+ * {@link URIFragmentHandler#navigationState(String)}, and the same NavigationState is then used for the redirect
+ * check, the permission check, the View lookup and the {@link uk.co.q3c.v7.base.view.V7ViewChangeEvent}, instead of
+ * each of them setting the fragment on the shared {@link URIFragmentHandler} again.
+ * <p>
+ * A state returned by a {@link URIFragmentHandler} knows nothing of the sitemap. {@link #withNodeChain(List)} returns
+ * a copy which also holds the chain of {@link SitemapNode} for its virtual page. A state matched by a
+ * {@link uk.co.q3c.v7.base.navigate.sitemap.RouteTable} also holds the parameter values converted to the types
+ * declared for them in the sitemap (see {@link #value(String, Class)}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class NavigationState {
+
+	private final String fragment;
+	private final String virtualPage;
+	private final List<String> pathSegments;
+	private final Map<String, String> parameters;
+	private final List<SitemapNode> nodeChain;
+	private final Map<String, Object> values;
+
+	/**
+	 * 
+	 * @param fragment
+	 *            the fragment as it was navigated to
+	 * @param virtualPage
+	 * @param pathSegments
+	 *            the segments of the virtual page, which must not be modified after this call
+	 * @param parameters
+	 *            the paired parameters, which must not be modified after this call
+	 */
+	public NavigationState(String fragment, String virtualPage, List<String> pathSegments,
+			Map<String, String> parameters) {
+		this(fragment, virtualPage, Collections.unmodifiableList(pathSegments), Collections
+				.unmodifiableMap(parameters), Collections.<SitemapNode> emptyList(), Collections
+				.<String, Object> unmodifiableMap(parameters));
+	}
+
+	private NavigationState(String fragment, String virtualPage, List<String> pathSegments,
+			Map<String, String> parameters, List<SitemapNode> nodeChain, Map<String, Object> values) {
+		super();
+		this.fragment = fragment;
+		this.virtualPage = virtualPage;
+		this.pathSegments = pathSegments;
+		this.parameters = parameters;
+		this.nodeChain = nodeChain;
+		this.values = values;
+	}
+
+	/**
+	 * Returns a copy of this state with {@code nodeChain} as the nodes for its virtual page, from the root down
+	 * 
+	 * @param nodeChain
+	 *            the chain, which must not be modified after this call
+	 * @return
+	 */
+	public NavigationState withNodeChain(List<SitemapNode> nodeChain) {
+		return new NavigationState(fragment, virtualPage, pathSegments, parameters,
+				Collections.unmodifiableList(nodeChain), values);
+	}
+
+	/**
+	 * Returns a copy of this state with {@code values} as its typed parameter values
+	 * 
+	 * @param values
+	 *            the values, which must not be modified after this call
+	 * @return
+	 */
+	public NavigationState withValues(Map<String, Object> values) {
+		return new NavigationState(fragment, virtualPage, pathSegments, parameters, nodeChain,
+				Collections.unmodifiableMap(values));
+	}
+
+	public String getFragment() {
+		return fragment;
+	}
+
+	/**
+	 * The virtual page, see {@link URIFragmentHandler#virtualPage()}
+	 * 
+	 * @return
+	 */
+	public String getVirtualPage() {
+		return virtualPage;
+	}
+
+	/**
+	 * The segments of the virtual page. Empty if the virtual page is empty
+	 * 
+	 * @return
+	 */
+	public List<String> getPathSegments() {
+		return pathSegments;
+	}
+
+	/**
+	 * The paired parameters, in key order
+	 * 
+	 * @return
+	 */
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public String parameterValue(String paramName) {
+		return parameters.get(paramName);
+	}
+
+	/**
+	 * The paired parameters in the same form as {@link URIFragmentHandler#parameterList()}, that is as "key=value", in
+	 * key order
+	 * 
+	 * @return
+	 */
+	public List<String> parameterList() {
+		List<String> list = new ArrayList<>(parameters.size());
+		for (Map.Entry<String, String> entry : parameters.entrySet()) {
+			list.add(entry.getKey() + "=" + entry.getValue());
+		}
+		return list;
+	}
+
+	/**
+	 * The parameter values, keyed on name. A parameter declared in the sitemap has already been converted to its
+	 * declared type, and any other parameter is a String
+	 * 
+	 * @return
+	 */
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the value of parameter {@code paramName}, or null if it is not present
+	 * 
+	 * @param paramName
+	 * @param type
+	 * @return
+	 * @throws ClassCastException
+	 *             if the value is not of {@code type}
+	 */
+	public <T> T value(String paramName, Class<T> type) {
+		return type.cast(values.get(paramName));
+	}
+
+	/**
+	 * The nodes for the virtual page, from the root down. Empty if the state has not been resolved against a sitemap,
+	 * or the sitemap has no node for the virtual page
+	 * 
+	 * @return
+	 */
+	public List<SitemapNode> getNodeChain() {
+		return nodeChain;
+	}
+
+	/**
+	 * The node for the virtual page, or null if there is none (see {@link #getNodeChain()})
+	 * 
+	 * @return
+	 */
+	public SitemapNode getNode() {
+		return nodeChain.isEmpty() ? null : nodeChain.get(nodeChain.size() - 1);
+	}
+
+	@Override
+	public String toString() {
+		return fragment;
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+/**
+ * A {@link URIFragmentHandler} with exactly the same interpretation of a fragment as {@link StrictURIFragmentHandler},
+ * but which decodes it in a single scan using index arithmetic, rather than with Splitter, Joiner, a TreeMap and
+ * {@link String#split(String)}. The parameters are held in a pair of arrays, kept in key order so that they can be
+ * encoded without sorting, and the bounds of the path segments in an int array, all of which are reused from one
+ * fragment to the next. The only objects created by {@link #setFragment(String)} are the virtual page and the
+ * parameter keys and values.
+ * <p>
+ * To use it, override {@link uk.co.q3c.v7.base.ui.V7UIModule#bindURIHandler()}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class ScanningURIFragmentHandler implements URIFragmentHandler, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Scan scan = new Scan();
+	// the fragment without bang or trailing slash, as it was set
+	private String fragment;
+	// the encoded fragment, valid only while nothing else changes
+	private String encoded;
+	private String virtualPage = "";
+	// start and end of each segment of the virtual page, a count of -1 means they have not been found yet
+	private int[] segmentBounds = new int[16];
+	private int segmentCount = -1;
+	private boolean useBang;
+	// fragment is out of date
+	private boolean dirty;
+
+	@Inject
+	protected ScanningURIFragmentHandler() {
+		super();
+	}
+
+	@Override
+	public String virtualPage() {
+		return virtualPage;
+	}
+
+	@Override
+	public URIFragmentHandler setFragment(String fragment) {
+		scan.scan(fragment);
+		this.fragment = scan.path;
+		virtualPage = scan.virtualPage();
+		segmentCount = -1;
+		encoded = null;
+		return this;
+	}
+
+	/**
+	 * Decodes {@code fragment} without changing the state of this handler. A null fragment is treated as empty, which
+	 * is 'home'
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.URIFragmentHandler#navigationState(java.lang.String)
+	 */
+	@Override
+	public NavigationState navigationState(String fragment) {
+		Scan local = new Scan();
+		local.scan((fragment == null) ? "" : fragment);
+		String page = local.virtualPage();
+		List<String> segments = new ArrayList<>();
+		if (!page.isEmpty()) {
+			int start = 0;
+			int end;
+			while ((end = page.indexOf('/', start)) >= 0) {
+				segments.add(page.substring(start, end));
+				start = end + 1;
+			}
+			segments.add(page.substring(start));
+		}
+		// the parameters are already in key order
+		Map<String, String> parameters = new LinkedHashMap<>();
+		for (int i = 0; i < local.parameterCount; i++) {
+			parameters.put(local.keys[i], local.values[i]);
+		}
+		return new NavigationState(fragment, page, segments, parameters);
+	}
+
+	@Override
+	public String fragment() {
+		if (!dirty) {
+			return fragment;
+		}
+		if (encoded == null) {
+			encoded = encode();
+		}
+		return encoded;
+	}
+
+	private String encode() {
+		int length = virtualPage.length() + 1;
+		for (int i = 0; i < scan.parameterCount; i++) {
+			length += scan.keys[i].length() + scan.values[i].length() + 2;
+		}
+		StringBuilder buf = new StringBuilder(length);
+		if (useBang) {
+			buf.append('!');
+		}
+		buf.append(virtualPage);
+
+		// append the parameters
+		for (int i = 0; i < scan.parameterCount; i++) {
+			buf.append('/');
+			buf.append(scan.keys[i]);
+			buf.append('=');
+			buf.append(scan.values[i]);
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public List<String> parameterList() {
+		List<String> list = new ArrayList<String>(scan.parameterCount);
+		for (int i = 0; i < scan.parameterCount; i++) {
+			list.add(scan.keys[i] + "=" + scan.values[i]);
+		}
+		return list;
+	}
+
+	@Override
+	public URIFragmentHandler setParameterValue(String paramName, String value) {
+		scan.put(paramName, value);
+		changed();
+		return this;
+	}
+
+	@Override
+	public URIFragmentHandler removeParameter(String paramName) {
+		scan.remove(paramName);
+		changed();
+		return this;
+	}
+
+	@Override
+	public void setVirtualPage(String pageName) {
+		virtualPage = pageName;
+		segmentCount = -1;
+		changed();
+	}
+
+	@Override
+	public String parameterValue(String paramName) {
+		int index = scan.indexOf(paramName);
+		return (index < 0) ? null : scan.values[index];
+	}
+
+	@Override
+	public boolean isUseBang() {
+		return useBang;
+	}
+
+	@Override
+	public void setUseBang(boolean useBang) {
+		if (this.useBang != useBang) {
+			this.useBang = useBang;
+			changed();
+		}
+	}
+
+	private void changed() {
+		dirty = true;
+		encoded = null;
+	}
+
+	/**
+	 * Returns the segments of the virtual page, in the same form as {@link String#split(String)} would, that is without
+	 * any trailing empty segments, and with a single empty segment for an empty virtual page
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.URIFragmentHandler#getPathSegments()
+	 */
+	@Override
+	public String[] getPathSegments() {
+		if (virtualPage.isEmpty()) {
+			return new String[] { "" };
+		}
+		if (segmentCount < 0) {
+			findSegments();
+		}
+		int count = segmentCount;
+		while ((count > 0) && (segmentBounds[count * 2 - 2] == segmentBounds[count * 2 - 1])) {
+			count--;
+		}
+		String[] segments = new String[count];
+		for (int i = 0; i < count; i++) {
+			segments[i] = virtualPage.substring(segmentBounds[i * 2], segmentBounds[i * 2 + 1]);
+		}
+		return segments;
+	}
+
+	private void findSegments() {
+		segmentCount = 0;
+		int start = 0;
+		int end;
+		do {
+			end = virtualPage.indexOf('/', start);
+			if (end < 0) {
+				end = virtualPage.length();
+			}
+			if (segmentBounds.length < (segmentCount + 1) * 2) {
+				segmentBounds = Arrays.copyOf(segmentBounds, segmentBounds.length * 2);
+			}
+			segmentBounds[segmentCount * 2] = start;
+			segmentBounds[segmentCount * 2 + 1] = end;
+			segmentCount++;
+			start = end + 1;
+		} while (end < virtualPage.length());
+	}
+
+	/**
+	 * The result of scanning a fragment. The parameter arrays are reused by each scan, and grown only when a fragment
+	 * has more parameters than any before it.
+	 */
+	private static class Scan implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String path;
+		// end of the virtual page within path
+		private int pageEnd;
+		private String[] keys = new String[8];
+		private String[] values = new String[8];
+		private int parameterCount;
+
+		/**
+		 * Strips any bang and trailing slash from {@code fragment}. Everything up to the first segment which contains
+		 * an '=' is the virtual page, and every segment after it which has a non-empty key and value is a parameter.
+		 * Anything else is ignored.
+		 */
+		void scan(String fragment) {
+			int start = fragment.startsWith("!") ? 1 : 0;
+			int end = fragment.endsWith("/") ? fragment.length() - 1 : fragment.length();
+			path = fragment.substring(start, end);
+			parameterCount = 0;
+			pageEnd = path.length();
+
+			int firstEquals = path.indexOf('=');
+			// no parameters, everything is the virtual page path
+			if (firstEquals < 0) {
+				return;
+			}
+			int segmentStart = path.lastIndexOf('/', firstEquals) + 1;
+			pageEnd = (segmentStart == 0) ? 0 : segmentStart - 1;
+			while (segmentStart <= path.length()) {
+				int segmentEnd = path.indexOf('/', segmentStart);
+				if (segmentEnd < 0) {
+					segmentEnd = path.length();
+				}
+				parameter(segmentStart, segmentEnd);
+				segmentStart = segmentEnd + 1;
+			}
+		}
+
+		private void parameter(int start, int end) {
+			int equals = path.indexOf('=', start);
+			if ((equals < 0) || (equals >= end)) {
+				return;
+			}
+			// as with splitting on '=', the value stops at any second '='
+			int valueEnd = path.indexOf('=', equals + 1);
+			if ((valueEnd < 0) || (valueEnd > end)) {
+				valueEnd = end;
+			}
+			if ((equals == start) || (valueEnd == equals + 1)) {
+				return;
+			}
+			put(path.substring(start, equals), path.substring(equals + 1, valueEnd));
+		}
+
+		String virtualPage() {
+			return path.substring(0, pageEnd);
+		}
+
+		int indexOf(String key) {
+			return Arrays.binarySearch(keys, 0, parameterCount, key);
+		}
+
+		void put(String key, String value) {
+			int index = indexOf(key);
+			if (index >= 0) {
+				values[index] = value;
+				return;
+			}
+			index = -(index + 1);
+			if (parameterCount == keys.length) {
+				keys = Arrays.copyOf(keys, keys.length * 2);
+				values = Arrays.copyOf(values, values.length * 2);
+			}
+			System.arraycopy(keys, index, keys, index + 1, parameterCount - index);
+			System.arraycopy(values, index, values, index + 1, parameterCount - index);
+			keys[index] = key;
+			values[index] = value;
+			parameterCount++;
+		}
+
+		void remove(String key) {
+			int index = indexOf(key);
+			if (index < 0) {
+				return;
+			}
+			parameterCount--;
+			System.arraycopy(keys, index + 1, keys, index, parameterCount - index);
+			System.arraycopy(values, index + 1, values, index, parameterCount - index);
+			keys[parameterCount] = null;
+			values[parameterCount] = null;
+		}
+	}
+
+}
@@ -45,7 +45,6 @@ public class StrictURIFragmentHandler implements URIFragmentHandler, Serializabl
 	private String fragment;
 	private String virtualPage;
 	private final Map<String, String> parameters = new TreeMap<String, String>();
-	private final List<String> pathSegments = new ArrayList<>();
 	private boolean useBang;
 	// fragment is out of date
 	private boolean dirty;
@@ -56,45 +55,57 @@ public class StrictURIFragmentHandler implements URIFragmentHandler, Serializabl
 	}
 
 	private void decode() {
+		NavigationState state = navigationState(fragment);
 		fragment = stripBangAndTrailingSlash(fragment);
+		virtualPage = state.getVirtualPage();
 		parameters.clear();
-		pathSegments.clear();
+		parameters.putAll(state.getParameters());
+	}
+
+	/**
+	 * Decodes {@code fragment} without changing the state of this handler. A null fragment is treated as empty, which
+	 * is 'home'
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.URIFragmentHandler#navigationState(java.lang.String)
+	 */
+	@Override
+	public NavigationState navigationState(String fragment) {
+		String path = (fragment == null) ? "" : stripBangAndTrailingSlash(fragment);
+		Map<String, String> params = new TreeMap<>();
+		List<String> segments = new ArrayList<>();
 
 		// empty fragment is 'home'
-		if (Strings.isNullOrEmpty(fragment)) {
-			virtualPage = "";
-			return;
+		if (path.isEmpty()) {
+			return new NavigationState(fragment, "", segments, params);
 		}
 
 		// no parameters, everything is the virtual page path
-		if (!fragment.contains("=")) {
-			virtualPage = fragment;
-			return;
+		if (!path.contains("=")) {
+			for (String s : Splitter.on('/').split(path)) {
+				segments.add(s);
+			}
+			return new NavigationState(fragment, path, segments, params);
 		}
 
-		Iterable<String> segments = Splitter.on('/').split(fragment);
 		boolean paramsStarted = false;
-		Iterator<String> iter = segments.iterator();
-		while (iter.hasNext()) {
-			String s = iter.next();
+		for (String s : Splitter.on('/').split(path)) {
 			if (paramsStarted) {
-				addParameter(s);
+				addParameter(params, s);
 			} else {
 				if (s.contains("=")) {
 					paramsStarted = true;
-					addParameter(s);
+					addParameter(params, s);
 				} else {
-					pathSegments.add(s);
+					segments.add(s);
 				}
 			}
 		}
 
 		// join the virtual page path up again
-		virtualPage = Joiner.on('/').join(pathSegments.toArray());
-
+		return new NavigationState(fragment, Joiner.on('/').join(segments), segments, params);
 	}
 
-	private void addParameter(String s) {
+	private void addParameter(Map<String, String> params, String s) {
 		if (s.contains("=")) {
 			Iterable<String> segments = Splitter.on('=').split(s);
 			Iterator<String> iter = segments.iterator();
@@ -106,7 +117,7 @@ public class StrictURIFragmentHandler implements URIFragmentHandler, Serializabl
 			if (Strings.isNullOrEmpty(value)) {
 				return;
 			}
-			parameters.put(key, value);
+			params.put(key, value);
 		}
 	}
 
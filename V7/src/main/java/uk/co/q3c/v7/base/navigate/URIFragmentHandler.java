@@ -22,6 +22,16 @@ public interface URIFragmentHandler {
 
 	public URIFragmentHandler setFragment(String fragment);
 
+	/**
+	 * Decodes {@code fragment} into an immutable {@link NavigationState}, without changing the state of this handler.
+	 * This is the way to decode a fragment when the handler is shared, as it is by the navigator and the components
+	 * which respond to navigation
+	 * 
+	 * @param fragment
+	 * @return
+	 */
+	NavigationState navigationState(String fragment);
+
 	public String fragment();
 
 	public List<String> parameterList();
@@ -12,17 +12,22 @@
  */
 package uk.co.q3c.v7.base.navigate;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
- * Utility class used in decoding the structure of the [map] section of the Sitemap
+ * Utility class used in decoding the structure of the [map] section of the Sitemap. The current uri is held in a
+ * single buffer, together with the length of the uri at each level, so that moving to a different level truncates the
+ * buffer instead of rebuilding the uri from its segments
  * 
  * @author David Sowerby 3 Jul 2013
  * 
  */
 public class URITracker {
 
-	private final Stack<String> stack = new Stack<>();
+	private final StringBuilder buf = new StringBuilder();
+	// lengths[i] is the length of the uri up to and including level i+1
+	private int[] lengths = new int[8];
+	private int depth = 0;
 
 	/**
 	 * From the previous uri, attaches the {@code segment} at the {@code indent} level. If there is no previous uri,
@@ -44,41 +49,30 @@ public class URITracker {
 		if (indent < 1) {
 			indent = 1;
 		}
-		int currentIndent = stack.size();
-		if (indent > currentIndent) {
-			// append to current uri
-			stack.push(segment);
-			return uri();
+		// walk back to one less than required indent and attach segment there
+		// (a deeper indent is always attached directly to the current uri)
+		if (indent <= depth) {
+			depth = indent - 1;
+			buf.setLength((depth == 0) ? 0 : lengths[depth - 1]);
 		}
-		if (indent == currentIndent) {
-			// append to last but one segment
-			// or replace existing root if indent==1
-			stack.pop();
-			stack.push(segment);
-			return uri();
+		if (depth > 0) {
+			buf.append('/');
 		}
-		// walk back to one less than required indent and attach segment there
-		while (stack.size() > (indent - 1)) {
-			stack.pop();
+		buf.append(segment);
+		if (depth == lengths.length) {
+			lengths = Arrays.copyOf(lengths, depth * 2);
 		}
-		stack.push(segment);
+		lengths[depth] = buf.length();
+		depth++;
 		return uri();
 	}
 
 	/**
-	 * builds URI from stack
+	 * returns the current uri
 	 * 
 	 * @return
 	 */
 	public String uri() {
-		StringBuilder buf = new StringBuilder();
-		for (int i = 0; i < stack.size(); i++) {
-			if (i != 0) {
-				buf.append("/");
-			}
-			buf.append(stack.get(i));
-
-		}
 		return buf.toString();
 	}
 
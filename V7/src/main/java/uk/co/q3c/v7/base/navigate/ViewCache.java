@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
+import uk.co.q3c.v7.base.view.V7View;
+import uk.co.q3c.v7.base.view.ViewRetention;
+import uk.co.q3c.v7.base.view.ViewRetention.Policy;
+
+import com.google.inject.Provider;
+
+/**
+ * Holds the View instances of a UI which are to be reused by the navigator, according to the {@link ViewRetention} of
+ * their class. Views are held by the page they were created for. {@link Policy#Keep_Last} views are held in a least
+ * recently used cache of up to {@link #getCapacity()} views (set by viewCacheSize in V7.ini, see
+ * {@link V7Ini#optionViewCacheSize()}), and {@link Policy#Keep_Forever} views are held regardless of the capacity. The
+ * cache is UIScoped, so everything it holds is released when the UI is detached and its scope is released.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@UIScoped
+public class ViewCache {
+	private static Logger log = LoggerFactory.getLogger(ViewCache.class);
+
+	private final Map<String, V7View> forever = new HashMap<>();
+	private final Map<String, V7View> recent;
+	private int capacity;
+
+	@Inject
+	protected ViewCache(V7Ini ini) {
+		this(ini.optionViewCacheSize());
+	}
+
+	protected ViewCache(int capacity) {
+		super();
+		this.capacity = Math.max(capacity, 0);
+		// access order, so that the eldest entry is the least recently used
+		recent = new LinkedHashMap<String, V7View>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V7View> eldest) {
+				if (size() > ViewCache.this.capacity) {
+					log.debug("view for '{}' released from the cache", eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the View retained for {@code viewName}, or if there is none, a new instance from {@code provider}, which
+	 * is retained if the {@link ViewRetention} of its class requires it
+	 * 
+	 * @param viewName
+	 * @param provider
+	 * @return
+	 */
+	public V7View get(String viewName, Provider<? extends V7View> provider) {
+		V7View view = forever.get(viewName);
+		if (view == null) {
+			view = recent.get(viewName);
+		}
+		if (view != null) {
+			log.debug("reusing the view for '{}'", viewName);
+			return view;
+		}
+		view = provider.get();
+		switch (policyFor(view.getClass())) {
+		case Keep_Forever:
+			forever.put(viewName, view);
+			break;
+		case Keep_Last:
+			recent.put(viewName, view);
+			break;
+		default:
+		}
+		return view;
+	}
+
+	/**
+	 * Returns the retention policy for {@code viewClass}, which is {@link Policy#Always_New} if the class is not
+	 * annotated with {@link ViewRetention}
+	 * 
+	 * @param viewClass
+	 * @return
+	 */
+	public Policy policyFor(Class<? extends V7View> viewClass) {
+		ViewRetention retention = viewClass.getAnnotation(ViewRetention.class);
+		return (retention == null) ? Policy.Always_New : retention.value();
+	}
+
+	/**
+	 * Returns true if a View is retained for {@code viewName}
+	 * 
+	 * @param viewName
+	 * @return
+	 */
+	public boolean contains(String viewName) {
+		return forever.containsKey(viewName) || recent.containsKey(viewName);
+	}
+
+	/**
+	 * Returns a copy of the names of the pages which currently have a View retained
+	 * 
+	 * @return
+	 */
+	public Set<String> names() {
+		Set<String> names = new HashSet<>(forever.keySet());
+		names.addAll(recent.keySet());
+		return names;
+	}
+
+	/**
+	 * The number of views currently retained
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return forever.size() + recent.size();
+	}
+
+	/**
+	 * Releases all the retained views
+	 */
+	public void clear() {
+		forever.clear();
+		recent.clear();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of {@link Policy#Keep_Last} views retained. If there are more than that already, the
+	 * least recently used are released
+	 * 
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+		Iterator<String> iter = recent.keySet().iterator();
+		while (recent.size() > capacity) {
+			iter.next();
+			iter.remove();
+		}
+	}
+}
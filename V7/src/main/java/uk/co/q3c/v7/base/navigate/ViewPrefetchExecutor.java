@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+/**
+ * The bounded executor shared by the {@link ViewPrefetcher} of every UI. It has a small number of low priority daemon
+ * threads and a bounded queue, and rejects (with {@link java.util.concurrent.RejectedExecutionException}) rather than
+ * queue more work than that, as prefetching is only worth doing if it happens before the user navigates. The threads
+ * are stopped, and any queued prefetches abandoned, when the application is stopped (see {@link ShutdownRegistry}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class ViewPrefetchExecutor implements Executor {
+
+	public static final int THREADS = 2;
+	public static final int QUEUE_SIZE = 32;
+
+	private final ThreadPoolExecutor executor;
+
+	@Inject
+	protected ViewPrefetchExecutor(ShutdownRegistry shutdownRegistry) {
+		super();
+		final AtomicInteger count = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "V7 view prefetch " + count.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+				QUEUE_SIZE), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		shutdownRegistry.register(new Closeable() {
+
+			@Override
+			public void close() {
+				executor.shutdownNow();
+			}
+		});
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		executor.execute(command);
+	}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
+import uk.co.q3c.v7.base.view.V7View;
+
+import com.google.inject.Provider;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+/**
+ * Constructs, in the background, the Views a user is likely to navigate to next, and parks them until they are
+ * navigated to, so that the navigation only needs to call {@code enter()} on the View.
+ * {@link DefaultV7Navigator} chooses the pages (the children and siblings of the current page which the user is
+ * permitted to see) after each view change, in the background (see {@link #select(Runnable)}).
+ * <p>
+ * Prefetching is disabled by default; enable it by setting prefetchViews in V7.ini (see
+ * {@link V7Ini#optionPrefetchViews()}), which is also the capacity, or with {@link #setEnabled(boolean)}. Views are
+ * constructed on the shared {@link ViewPrefetchExecutor}, holding the lock of the UI's session (see
+ * {@link UI#accessSynchronously(Runnable)}), as Vaadin components and UIScoped dependencies require. At most
+ * {@link #getCapacity()} views are parked, the least recently parked being discarded first.
+ * <p>
+ * To help tune it, the prefetcher counts:
+ * <ol>
+ * <li>hits - navigations which used a parked view
+ * <li>misses - navigations, while enabled, which found no parked view
+ * <li>waste - parked views which were discarded without being used
+ * <li>scheduled and rejected - views submitted to the executor, and those it had no room for
+ * </ol>
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@UIScoped
+public class ViewPrefetcher {
+	private static Logger log = LoggerFactory.getLogger(ViewPrefetcher.class);
+
+	public static final int DEFAULT_CAPACITY = 4;
+
+	private final Executor executor;
+	private final Map<String, V7View> parked;
+	private final Set<String> pending = new HashSet<>();
+	private boolean enabled;
+	private int capacity = DEFAULT_CAPACITY;
+	private long hits;
+	private long misses;
+	private long wasted;
+	private long scheduled;
+	private long rejected;
+
+	@Inject
+	protected ViewPrefetcher(ViewPrefetchExecutor executor, V7Ini ini) {
+		this(executor);
+		int views = ini.optionPrefetchViews();
+		if (views > 0) {
+			capacity = views;
+			enabled = true;
+		}
+	}
+
+	protected ViewPrefetcher(Executor executor) {
+		super();
+		this.executor = executor;
+		parked = new LinkedHashMap<String, V7View>() {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V7View> eldest) {
+				if (size() > capacity) {
+					wasted++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Runs {@code selection} on the executor, so that choosing the views to prefetch does not delay the navigation
+	 * which prompted it. The selection passes the views it chooses to {@link #prefetch(UI, String, Provider)}. It does
+	 * not hold the lock of the UI's session, so it must not use the UI's components or UIScoped objects.
+	 * 
+	 * @param selection
+	 */
+	public void select(final Runnable selection) {
+		if (!isEnabled()) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						selection.run();
+					} catch (RuntimeException e) {
+						log.warn("Unable to select the views to prefetch", e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.debug("No room to select the views to prefetch");
+		}
+	}
+
+	/**
+	 * Schedules the construction of a View for {@code viewName} from {@code provider}, unless there is one already
+	 * parked or being constructed
+	 * 
+	 * @param ui
+	 *            the UI the View is for
+	 * @param viewName
+	 * @param provider
+	 */
+	public void prefetch(final UI ui, final String viewName, final Provider<? extends V7View> provider) {
+		synchronized (this) {
+			if (!enabled || parked.containsKey(viewName) || !pending.add(viewName)) {
+				return;
+			}
+		}
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						ui.accessSynchronously(new Runnable() {
+
+							@Override
+							public void run() {
+								park(viewName, provider.get());
+							}
+						});
+					} catch (UIDetachedException e) {
+						log.debug("UI detached before the view for '{}' could be prefetched", viewName);
+					} catch (RuntimeException e) {
+						log.warn("Unable to prefetch the view for '{}'", viewName, e);
+					} finally {
+						synchronized (ViewPrefetcher.this) {
+							pending.remove(viewName);
+						}
+					}
+				}
+			});
+			synchronized (this) {
+				scheduled++;
+			}
+		} catch (RejectedExecutionException e) {
+			log.debug("No room to prefetch the view for '{}'", viewName);
+			synchronized (this) {
+				pending.remove(viewName);
+				rejected++;
+			}
+		}
+	}
+
+	private synchronized void park(String viewName, V7View view) {
+		if (!enabled) {
+			wasted++;
+			return;
+		}
+		log.debug("view for '{}' prefetched", viewName);
+		parked.put(viewName, view);
+	}
+
+	/**
+	 * Removes and returns the View parked for {@code viewName}, or returns null if there is none
+	 * 
+	 * @param viewName
+	 * @return
+	 */
+	public synchronized V7View take(String viewName) {
+		if (!enabled) {
+			return null;
+		}
+		V7View view = parked.remove(viewName);
+		if (view == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return view;
+	}
+
+	/**
+	 * Returns true if a View for {@code viewName} is parked, or is being constructed
+	 * 
+	 * @param viewName
+	 * @return
+	 */
+	public synchronized boolean isPrefetched(String viewName) {
+		return parked.containsKey(viewName) || pending.contains(viewName);
+	}
+
+	/**
+	 * Discards all parked views, which are counted as waste
+	 */
+	public synchronized void clear() {
+		wasted += parked.size();
+		parked.clear();
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables prefetching. Any parked views are discarded when it is disabled
+	 * 
+	 * @param enabled
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled) {
+			clear();
+		}
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of parked views. If there are more than that already, the oldest are discarded
+	 * 
+	 * @param capacity
+	 */
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = capacity;
+		Iterator<String> iter = parked.keySet().iterator();
+		while (parked.size() > capacity) {
+			iter.next();
+			iter.remove();
+			wasted++;
+		}
+	}
+
+	public synchronized int size() {
+		return parked.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getWasted() {
+		return wasted;
+	}
+
+	public synchronized long getScheduled() {
+		return scheduled;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+}
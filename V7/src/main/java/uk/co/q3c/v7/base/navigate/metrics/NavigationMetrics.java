@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+/**
+ * Collects the timings of navigations, as recorded by {@link uk.co.q3c.v7.base.navigate.DefaultV7Navigator}, into a
+ * {@link PhaseHistogram} for each View class and {@link NavigationPhase}, and counts the outcomes of navigations. It is
+ * shared by all UIs.
+ * <p>
+ * Everything is exposed as MBeans on the platform MBean server, so that it can be watched with JConsole or any other
+ * JMX client:
+ * <ol>
+ * <li>{@value #DOMAIN}:type=Navigation for the outcome counters (see {@link NavigationMetricsMBean})
+ * <li>{@value #DOMAIN}:type=NavigationPhase,view=<i>view class</i>,phase=<i>phase</i> for each histogram, registered
+ * when the first navigation to the view class completes
+ * </ol>
+ * If the MBeans cannot be registered (for example because another application in the same JVM has already registered
+ * them), the metrics are still collected, but are not visible through JMX. The MBeans are unregistered when the
+ * application is stopped (see {@link ShutdownRegistry}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class NavigationMetrics implements NavigationMetricsMBean {
+	private static Logger log = LoggerFactory.getLogger(NavigationMetrics.class);
+
+	public static final String DOMAIN = "uk.co.q3c.v7";
+
+	private final MBeanServer server;
+	private final ConcurrentMap<String, PhaseHistogram[]> histograms = new ConcurrentHashMap<>();
+	private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong invalidURI = new AtomicLong();
+	private final AtomicLong unauthorized = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+
+	@Inject
+	protected NavigationMetrics(ShutdownRegistry shutdownRegistry) {
+		this(ManagementFactory.getPlatformMBeanServer(), shutdownRegistry);
+	}
+
+	/**
+	 * As {@link #NavigationMetrics(MBeanServer)}, but the MBeans are also unregistered by {@code shutdownRegistry} when
+	 * the application is stopped, so that the server does not keep this instance (and with it the application's class
+	 * loader) after the application has gone, and a redeployed application can register its own
+	 * 
+	 * @param server
+	 * @param shutdownRegistry
+	 */
+	public NavigationMetrics(MBeanServer server, ShutdownRegistry shutdownRegistry) {
+		this(server);
+		if (server != null) {
+			shutdownRegistry.register(new Closeable() {
+
+				@Override
+				public void close() {
+					unregister();
+				}
+			});
+		}
+	}
+
+	/**
+	 * 
+	 * @param server
+	 *            the server to register the MBeans with, or null to collect the metrics without exposing them
+	 */
+	public NavigationMetrics(MBeanServer server) {
+		super();
+		this.server = server;
+		register(this, DOMAIN + ":type=Navigation");
+	}
+
+	/**
+	 * Returns a timer for a new navigation
+	 * 
+	 * @return
+	 */
+	public NavigationTimer start() {
+		return new NavigationTimer();
+	}
+
+	/**
+	 * Records the phases timed by {@code timer} for a navigation to a View of {@code viewClass} which has completed
+	 * 
+	 * @param viewClass
+	 * @param timer
+	 */
+	public void record(Class<?> viewClass, NavigationTimer timer) {
+		completed.incrementAndGet();
+		PhaseHistogram[] phases = histogramsFor(viewClass.getName());
+		for (NavigationPhase phase : NavigationPhase.values()) {
+			phases[phase.ordinal()].record(timer.nanos(phase));
+		}
+	}
+
+	private PhaseHistogram[] histogramsFor(String viewClass) {
+		PhaseHistogram[] phases = histograms.get(viewClass);
+		if (phases != null) {
+			return phases;
+		}
+		phases = new PhaseHistogram[NavigationPhase.values().length];
+		for (NavigationPhase phase : NavigationPhase.values()) {
+			phases[phase.ordinal()] = new PhaseHistogram(viewClass, phase);
+		}
+		PhaseHistogram[] existing = histograms.putIfAbsent(viewClass, phases);
+		if (existing != null) {
+			return existing;
+		}
+		for (PhaseHistogram histogram : phases) {
+			register(histogram, DOMAIN + ":type=NavigationPhase,view=" + viewClass + ",phase=" + histogram.getPhase());
+		}
+		return phases;
+	}
+
+	/**
+	 * Returns the histogram for {@code phase} of navigations to {@code viewClass}, or null if no navigation to
+	 * {@code viewClass} has been recorded
+	 * 
+	 * @param viewClass
+	 * @param phase
+	 * @return
+	 */
+	public PhaseHistogram histogram(Class<?> viewClass, NavigationPhase phase) {
+		PhaseHistogram[] phases = histograms.get(viewClass.getName());
+		return (phases == null) ? null : phases[phase.ordinal()];
+	}
+
+	public void invalidURI() {
+		invalidURI.incrementAndGet();
+	}
+
+	public void unauthorized() {
+		unauthorized.incrementAndGet();
+	}
+
+	public void blocked() {
+		blocked.incrementAndGet();
+	}
+
+	@Override
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	@Override
+	public long getInvalidURI() {
+		return invalidURI.get();
+	}
+
+	@Override
+	public long getUnauthorized() {
+		return unauthorized.get();
+	}
+
+	@Override
+	public long getBlocked() {
+		return blocked.get();
+	}
+
+	@Override
+	public void reset() {
+		completed.set(0);
+		invalidURI.set(0);
+		unauthorized.set(0);
+		blocked.set(0);
+		for (PhaseHistogram[] phases : histograms.values()) {
+			for (PhaseHistogram histogram : phases) {
+				histogram.reset();
+			}
+		}
+	}
+
+	private void register(Object mbean, String name) {
+		if (server == null) {
+			return;
+		}
+		try {
+			ObjectName objectName = new ObjectName(name);
+			server.registerMBean(mbean, objectName);
+			registered.add(objectName);
+		} catch (MalformedObjectNameException e) {
+			log.warn("Unable to create an MBean name from {}", name, e);
+		} catch (JMException e) {
+			log.warn("Unable to register MBean {}, it will not be visible through JMX: {}", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters all the MBeans registered by this instance, for example when the application is stopped
+	 */
+	public void unregister() {
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				log.debug("Unable to unregister MBean {}", name, e);
+			}
+		}
+		registered.clear();
+	}
+}
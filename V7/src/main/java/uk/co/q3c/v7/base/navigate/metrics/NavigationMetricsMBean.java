@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+/**
+ * The JMX view of the navigation outcomes counted by {@link NavigationMetrics}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public interface NavigationMetricsMBean {
+
+	/**
+	 * Navigations which changed the View
+	 */
+	long getCompleted();
+
+	/**
+	 * Navigations which failed with an {@link uk.co.q3c.v7.base.navigate.InvalidURIException}
+	 */
+	long getInvalidURI();
+
+	/**
+	 * Navigations which failed with an {@link org.apache.shiro.authz.UnauthorizedException}
+	 */
+	long getUnauthorized();
+
+	/**
+	 * Navigations blocked by a {@link uk.co.q3c.v7.base.view.V7ViewChangeListener}
+	 */
+	long getBlocked();
+
+	/**
+	 * Resets the counters and all the histograms
+	 */
+	void reset();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+/**
+ * The phases of a navigation which are timed by {@link NavigationTimer}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public enum NavigationPhase {
+	/**
+	 * Decoding the fragment and resolving any redirect
+	 */
+	Redirect,
+	/**
+	 * Finding the View provider, and obtaining the View from it (or from a cache)
+	 */
+	View_Construction,
+	/**
+	 * Deciding whether the page is public, and if not, the Shiro permission check
+	 */
+	Permission,
+	/**
+	 * Changing the View displayed by the UI and calling {@link uk.co.q3c.v7.base.view.V7View#enter}
+	 */
+	Enter,
+	/**
+	 * Calling the {@link uk.co.q3c.v7.base.view.V7ViewChangeListener}s, before and after the change
+	 */
+	Listeners,
+	/**
+	 * The whole navigation
+	 */
+	Total
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+/**
+ * Times the phases of a single navigation. Each call to {@link #lap(NavigationPhase)} adds the time since the previous
+ * lap (or since the timer was created) to a phase, so a phase which happens in more than one part, such as
+ * {@link NavigationPhase#Listeners}, accumulates. Not thread safe; a timer belongs to one navigation.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class NavigationTimer {
+
+	private final long start;
+	private final long[] nanos = new long[NavigationPhase.values().length];
+	private long last;
+
+	public NavigationTimer() {
+		super();
+		start = System.nanoTime();
+		last = start;
+	}
+
+	/**
+	 * Adds the time since the last lap to {@code phase}
+	 * 
+	 * @param phase
+	 */
+	public void lap(NavigationPhase phase) {
+		long now = System.nanoTime();
+		nanos[phase.ordinal()] += now - last;
+		last = now;
+	}
+
+	/**
+	 * The time recorded for {@code phase}, in nanoseconds. For {@link NavigationPhase#Total} this is the time since the
+	 * timer was created, up to the last lap
+	 * 
+	 * @param phase
+	 * @return
+	 */
+	public long nanos(NavigationPhase phase) {
+		if (phase == NavigationPhase.Total) {
+			return last - start;
+		}
+		return nanos[phase.ordinal()];
+	}
+}
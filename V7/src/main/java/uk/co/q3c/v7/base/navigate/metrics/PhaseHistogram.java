@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of the times taken by one {@link NavigationPhase} for one View class. Times are counted in buckets which
+ * double in width, bucket n holding times from 2^n up to 2^(n+1) microseconds, so the histogram is a fixed, small size
+ * whatever the range of times, and recording a time is lock free.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class PhaseHistogram implements PhaseHistogramMBean {
+
+	// 2^40 microseconds is about 12 days, anything longer goes in the last bucket
+	private static final int BUCKETS = 40;
+
+	private final String viewClass;
+	private final NavigationPhase phase;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public PhaseHistogram(String viewClass, NavigationPhase phase) {
+		super();
+		this.viewClass = viewClass;
+		this.phase = phase;
+	}
+
+	public void record(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = (micros < 1) ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+		buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max = maxMicros.get();
+		while ((micros > max) && !maxMicros.compareAndSet(max, micros)) {
+			max = maxMicros.get();
+		}
+	}
+
+	@Override
+	public String getViewClass() {
+		return viewClass;
+	}
+
+	@Override
+	public String getPhase() {
+		return phase.name();
+	}
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+	@Override
+	public long getMeanMicros() {
+		long n = count.get();
+		return (n == 0) ? 0 : totalMicros.get() / n;
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	@Override
+	public long getP50Micros() {
+		return percentile(0.5);
+	}
+
+	@Override
+	public long getP95Micros() {
+		return percentile(0.95);
+	}
+
+	@Override
+	public long getP99Micros() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the {@code fraction} percentile, or the maximum if that is lower
+	 * 
+	 * @param fraction
+	 * @return
+	 */
+	public long percentile(double fraction) {
+		long n = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(n * fraction);
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			cumulative += counts[i];
+			if (cumulative >= target) {
+				return Math.min(1L << (i + 1), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+}
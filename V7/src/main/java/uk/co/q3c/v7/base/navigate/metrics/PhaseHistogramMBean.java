@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+/**
+ * The JMX view of a {@link PhaseHistogram}. All times are in microseconds, and the percentiles are the upper bound of
+ * the histogram bucket the percentile falls in
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public interface PhaseHistogramMBean {
+
+	String getViewClass();
+
+	String getPhase();
+
+	long getCount();
+
+	long getMeanMicros();
+
+	long getMaxMicros();
+
+	long getP50Micros();
+
+	long getP95Micros();
+
+	long getP99Micros();
+
+	void reset();
+}
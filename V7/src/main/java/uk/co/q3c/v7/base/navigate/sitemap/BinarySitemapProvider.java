@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.util.zip.CRC32;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.shiro.io.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.navigate.StandardPageKey;
+import uk.co.q3c.v7.base.view.V7View;
+import uk.co.q3c.v7.i18n.CurrentLocale;
+import uk.co.q3c.v7.i18n.I18NKey;
+import uk.co.q3c.v7.i18n.Translate;
+
+/**
+ * A {@link SitemapProvider} which loads the artifact compiled from a sitemap source by {@link SitemapCompiler}, in a
+ * single sequential read, instead of parsing and validating the source. The artifact is expected alongside its source
+ * (see {@link SitemapCompiler#artifactPath(String)}).
+ * <p>
+ * The source is still needed, because the artifact is used only if it was compiled from a source with the same
+ * checksum. If the artifact is missing, stale, damaged, in a different format, or refers to a view class or label key
+ * which no longer exists, the source is parsed by a {@link TextReaderSitemapProvider} instead. To use this provider,
+ * override {@link uk.co.q3c.v7.base.config.IniModule#bindSitemapProvider()}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class BinarySitemapProvider implements SitemapProvider {
+	private static Logger log = LoggerFactory.getLogger(BinarySitemapProvider.class);
+
+	private final Provider<TextReaderSitemapProvider> parserPro;
+	private final CurrentLocale currentLocale;
+	private final Translate translate;
+	private Sitemap sitemap;
+	private TextReaderSitemapProvider parser;
+	private boolean fromArtifact;
+
+	@Inject
+	protected BinarySitemapProvider(Provider<TextReaderSitemapProvider> parserPro, CurrentLocale currentLocale,
+			Translate translate) {
+		super();
+		this.parserPro = parserPro;
+		this.currentLocale = currentLocale;
+		this.translate = translate;
+	}
+
+	@Override
+	public Sitemap get() {
+		if (sitemap == null) {
+			parse("classpath:sitemap.properties");
+		}
+		return sitemap;
+	}
+
+	@Override
+	public Sitemap getSitemap() {
+		return sitemap;
+	}
+
+	@Override
+	public void parse(File file) {
+		File artifact = new File(SitemapCompiler.artifactPath(file.getPath()));
+		if (artifact.exists()) {
+			try (InputStream source = new FileInputStream(file);
+					InputStream in = new FileInputStream(artifact)) {
+				if (load(SitemapCompiler.checksum(source), in)) {
+					log.info("Sitemap loaded from {}", artifact.getAbsolutePath());
+					return;
+				}
+			} catch (IOException e) {
+				log.warn("Unable to load sitemap from {}", artifact.getAbsolutePath(), e);
+			}
+		} else {
+			log.info("There is no compiled sitemap at {}", artifact.getAbsolutePath());
+		}
+		fromArtifact = false;
+		parser = parserPro.get();
+		parser.parse(file);
+		sitemap = parser.getSitemap();
+	}
+
+	@Override
+	public void parse(String resourcePath) {
+		String artifactPath = SitemapCompiler.artifactPath(resourcePath);
+		if (ResourceUtils.resourceExists(artifactPath)) {
+			try (InputStream source = ResourceUtils.getInputStreamForPath(resourcePath);
+					InputStream in = ResourceUtils.getInputStreamForPath(artifactPath)) {
+				if (load(SitemapCompiler.checksum(source), in)) {
+					log.info("Sitemap loaded from {}", artifactPath);
+					return;
+				}
+			} catch (IOException e) {
+				log.warn("Unable to load sitemap from {}", artifactPath, e);
+			}
+		} else {
+			log.info("There is no compiled sitemap at {}", artifactPath);
+		}
+		fromArtifact = false;
+		parser = parserPro.get();
+		parser.parse(resourcePath);
+		sitemap = parser.getSitemap();
+	}
+
+	/**
+	 * Loads the artifact from {@code in}, if it is valid for a source with {@code sourceChecksum}. Anything wrong with
+	 * the artifact after its header - a damaged body, or a class or key which no longer exists - causes the load to
+	 * fail, so that the source is parsed instead.
+	 * 
+	 * @param sourceChecksum
+	 * @param in
+	 * @return true if the sitemap was loaded
+	 * @throws IOException
+	 */
+	private boolean load(long sourceChecksum, InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		if ((data.readInt() != SitemapCompiler.MAGIC) || (data.readInt() != SitemapCompiler.VERSION)) {
+			log.info("Compiled sitemap is not in the current format, the source will be parsed");
+			return false;
+		}
+		if (data.readLong() != sourceChecksum) {
+			log.info("Compiled sitemap is older than its source, the source will be parsed");
+			return false;
+		}
+		long bodyChecksum = data.readLong();
+		byte[] body = IOUtils.toByteArray(data);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		if (crc.getValue() != bodyChecksum) {
+			log.warn("Compiled sitemap is damaged, the source will be parsed");
+			return false;
+		}
+		Sitemap map;
+		try {
+			map = read(new DataInputStream(new ByteArrayInputStream(body)));
+		} catch (ClassNotFoundException | RuntimeException e) {
+			log.warn("Compiled sitemap cannot be read, or refers to a class or key which is not valid, the source will be "
+					+ "parsed", e);
+			return false;
+		}
+		sitemap = map;
+		parser = null;
+		fromArtifact = true;
+		return true;
+	}
+
+	/**
+	 * Reads the body of the artifact. Invalid indexes and lengths fail with a {@link RuntimeException}, which
+	 * {@link #load(long, InputStream)} treats in the same way as a class or key which no longer exists
+	 * 
+	 * @param data
+	 * @return
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private Sitemap read(DataInputStream data) throws IOException, ClassNotFoundException {
+		String[] strings = new String[data.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = readString(data);
+		}
+		Sitemap map = new Sitemap();
+		map.setPublicRoot(string(strings, data.readInt()));
+		map.setPrivateRoot(string(strings, data.readInt()));
+
+		int[] nodeData = readInts(data);
+		SitemapNode[] nodes = new SitemapNode[nodeData.length / SitemapCompiler.NODE_INTS];
+		Collator collator = Collator.getInstance(currentLocale.getLocale());
+		for (int i = 0; i < nodes.length; i++) {
+			int d = i * SitemapCompiler.NODE_INTS;
+			SitemapNode node = new SitemapNode();
+			node.setId(nodeData[d]);
+			node.setUriSegment(strings[nodeData[d + 2]]);
+			String viewClassName = string(strings, nodeData[d + 3]);
+			if (viewClassName != null) {
+				node.setViewClass(Class.forName(viewClassName).asSubclass(V7View.class));
+			}
+			String labelKeysClassName = string(strings, nodeData[d + 4]);
+			if (labelKeysClassName != null) {
+				node.setLabelKey(labelKey(labelKeysClassName, strings[nodeData[d + 5]]), translate, collator);
+			}
+			node.setParameters(RouteParameter.parse(string(strings, nodeData[d + 6])));
+			int parent = nodeData[d + 1];
+			if (parent < 0) {
+				map.addNode(node);
+			} else {
+				map.addChild(nodes[parent], node);
+			}
+			nodes[i] = node;
+		}
+
+		int[] redirectData = readInts(data);
+		for (int i = 0; i < redirectData.length; i += 2) {
+			map.getRedirects().put(strings[redirectData[i]], strings[redirectData[i + 1]]);
+		}
+		int[] pageData = readInts(data);
+		for (int i = 0; i < pageData.length; i += 2) {
+			map.getStandardPages().put(StandardPageKey.valueOf(strings[pageData[i]]), strings[pageData[i + 1]]);
+		}
+		map.setReport(readString(data));
+		map.freeze();
+		return map;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private I18NKey<?> labelKey(String className, String keyName) throws ClassNotFoundException {
+		Class<? extends Enum> enumClass = Class.forName(className).asSubclass(Enum.class);
+		return (I18NKey<?>) Enum.valueOf(enumClass, keyName);
+	}
+
+	private String string(String[] strings, int index) {
+		return (index < 0) ? null : strings[index];
+	}
+
+	private int[] readInts(DataInputStream data) throws IOException {
+		int[] ints = new int[data.readInt()];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = data.readInt();
+		}
+		return ints;
+	}
+
+	private String readString(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The report of the last parse, or of the compilation if the sitemap was loaded from its artifact
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.sitemap.SitemapProvider#getReport()
+	 */
+	@Override
+	public StringBuilder getReport() {
+		if (parser != null) {
+			return parser.getReport();
+		}
+		return (sitemap == null) ? null : new StringBuilder(sitemap.getReport());
+	}
+
+	/**
+	 * True if the current sitemap was loaded from its compiled artifact, false if its source was parsed
+	 * 
+	 * @return
+	 */
+	public boolean isFromArtifact() {
+		return fromArtifact;
+	}
+}
@@ -20,7 +20,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Reads a line from the [map] section during the processing of sitemap.properties, and returns a {@link MapLineRecord}
  * of the constituent parts. Records syntax errors and other failures for the {@link SitemapProvider} to provide a
- * report
+ * report. The line is read as it is in the source, so any whitespace (not just spaces) may separate the parts of it
  * 
  * @author David Sowerby 5 Jul 2013
  * 
@@ -30,6 +30,7 @@ public class MapLineReader {
 	private static Logger log = LoggerFactory.getLogger(MapLineReader.class);
 	public static final String NO_HYPHEN = "Line must start with hyphen(s) to indicate indent level, line ";
 	public static final String VIEW_FIRST = "View name must precede label key name at line ";
+	public static final String PARAMETERS = "Parameters must be declared as {name:type,...} after the segment, line ";
 	private int index = 0;
 	private String line;
 	private MapLineRecord lineRecord;
@@ -39,7 +40,6 @@ public class MapLineReader {
 		index = 0;
 		this.line = line;
 		lineRecord = new MapLineRecord();
-		StringBuilder buf = new StringBuilder();
 
 		int keyIndex = line.indexOf('~');
 		int viewIndex = line.indexOf(':');
@@ -54,7 +54,7 @@ public class MapLineReader {
 
 		int indent = 0;
 		// hyphen indent
-		while (line.charAt(index) == '-') {
+		while ((index < line.length()) && (line.charAt(index) == '-')) {
 			index++;
 			indent++;
 		}
@@ -69,12 +69,28 @@ public class MapLineReader {
 
 		spaces();
 		// processing segment
-		while ((index < line.length() && (line.charAt(index) != ' ') && (line.charAt(index) != ':') && (line
-				.charAt(index) != '~'))) {
-			buf.append(line.charAt(index));
+		int start = index;
+		while ((index < line.length() && !Character.isWhitespace(line.charAt(index)) && (line.charAt(index) != ':')
+				&& (line.charAt(index) != '~') && (line.charAt(index) != '{'))) {
 			index++;
 		}
-		lineRecord.setSegment(buf.toString());
+		lineRecord.setSegment(line.substring(start, index));
+
+		// parameters declared for the page
+		if ((index < line.length()) && (line.charAt(index) == '{')) {
+			int end = line.indexOf('}', index);
+			if (end < 0) {
+				syntaxErrors.add(PARAMETERS + lineIndex);
+				return lineRecord;
+			}
+			try {
+				lineRecord.setParameters(RouteParameter.parse(line.substring(index + 1, end)));
+			} catch (IllegalArgumentException e) {
+				syntaxErrors.add(PARAMETERS + lineIndex + ", " + e.getMessage());
+				return lineRecord;
+			}
+			index = end + 1;
+		}
 
 		// has to be done here, because we don't know what the segment is until now
 		if (indent - currentIndent > 1) {
@@ -89,12 +105,12 @@ public class MapLineReader {
 			if (c == ':') {
 				index++;
 				spaces();
-				buf = new StringBuilder();
-				while ((index < line.length()) && (line.charAt(index) != ' ') && (line.charAt(index) != '~')) {
-					buf.append(line.charAt(index));
+				start = index;
+				while ((index < line.length()) && !Character.isWhitespace(line.charAt(index))
+						&& (line.charAt(index) != '~')) {
 					index++;
 				}
-				lineRecord.setViewName(buf.toString());
+				lineRecord.setViewName(line.substring(start, index));
 				spaces();
 
 				// may be no label key
@@ -120,19 +136,18 @@ public class MapLineReader {
 	}
 
 	private void spaces() {
-		// spaces
-		while ((index < line.length()) && (line.charAt(index) == ' ')) {
+		// spaces, tabs or any other whitespace
+		while ((index < line.length()) && Character.isWhitespace(line.charAt(index))) {
 			index++;
 		}
 	};
 
 	private void label() {
-		StringBuilder buf = new StringBuilder();
-		while ((index < line.length()) && (line.charAt(index) != ' ')) {
-			buf.append(line.charAt(index));
+		int start = index;
+		while ((index < line.length()) && !Character.isWhitespace(line.charAt(index))) {
 			index++;
 		}
-		lineRecord.setKeyName(buf.toString());
+		lineRecord.setKeyName(line.substring(start, index));
 	}
 
 }
@@ -12,12 +12,16 @@
  */
 package uk.co.q3c.v7.base.navigate.sitemap;
 
+import java.util.Collections;
+import java.util.List;
+
 public class MapLineRecord {
 
 	private int indentLevel;
 	private String segment;
 	private String viewName;
 	private String keyName;
+	private List<RouteParameter> parameters = Collections.emptyList();
 
 	public int getIndentLevel() {
 		return indentLevel;
@@ -51,4 +55,12 @@ public class MapLineRecord {
 		this.keyName = keyName;
 	}
 
+	public List<RouteParameter> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(List<RouteParameter> parameters) {
+		this.parameters = parameters;
+	}
+
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+/**
+ * A {@link SitemapProvider} which watches the file it was loaded from, and re-parses it in the background whenever it
+ * changes. Each load is done by a new {@link TextReaderSitemapProvider}, and the result replaces the live
+ * {@link Sitemap} only if it has no errors - otherwise the errors are logged and the current map stays in use.
+ * <p>
+ * The live map is held in an {@link AtomicReference}, and every map it holds has been frozen (see
+ * {@link Sitemap#freeze()}), so a swap is a single reference change. {@link #get()} always returns the live map, so
+ * {@link Sitemap} should not be bound as a singleton when this provider is used, and long lived objects should inject
+ * a Provider of {@link Sitemap} and read the map from it when they need it, rather than holding on to the map itself.
+ * The views of pages added by a reload are constructed from the view class in the map, but a page which was in the
+ * map at startup keeps the view it was bound to, so changing the view of an existing page needs a restart.
+ * <p>
+ * A reload which fails, for whatever reason, is logged and leaves the current map in use. The watcher is stopped by
+ * {@link #stop()}, which is called through the {@link ShutdownRegistry} when the servlet context is destroyed.
+ * <p>
+ * Only a source given as a {@link File} can be watched. To use this provider, override
+ * {@link uk.co.q3c.v7.base.config.IniModule#bindSitemapProvider()}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class ReloadingSitemapProvider implements SitemapProvider {
+	private static Logger log = LoggerFactory.getLogger(ReloadingSitemapProvider.class);
+
+	private static final long SETTLE_MILLIS = 500;
+
+	private final Provider<TextReaderSitemapProvider> parserPro;
+	private final AtomicReference<Sitemap> live = new AtomicReference<>();
+	private volatile TextReaderSitemapProvider lastParser;
+	private final ShutdownRegistry shutdownRegistry;
+	private WatchService watchService;
+	private Closeable stopper;
+
+	@Inject
+	protected ReloadingSitemapProvider(Provider<TextReaderSitemapProvider> parserPro,
+			ShutdownRegistry shutdownRegistry) {
+		super();
+		this.parserPro = parserPro;
+		this.shutdownRegistry = shutdownRegistry;
+	}
+
+	/**
+	 * Returns the live {@link Sitemap}, loading it from "sitemap.properties" on the classpath if nothing has been
+	 * loaded yet. If that resource is a file, it is watched for changes.
+	 * 
+	 * @see javax.inject.Provider#get()
+	 */
+	@Override
+	public Sitemap get() {
+		if (live.get() == null) {
+			synchronized (this) {
+				if (live.get() == null) {
+					File file = classpathFile("sitemap.properties");
+					if (file != null) {
+						parse(file);
+					} else {
+						parse("classpath:sitemap.properties");
+					}
+				}
+			}
+		}
+		return live.get();
+	}
+
+	@Override
+	public Sitemap getSitemap() {
+		return live.get();
+	}
+
+	/**
+	 * Loads the sitemap from {@code file}, makes it the live map (even if it has errors, so that they are reported in
+	 * the same way as they would be without reloading) and starts watching {@code file} for changes
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.sitemap.SitemapProvider#parse(java.io.File)
+	 */
+	@Override
+	public synchronized void parse(File file) {
+		TextReaderSitemapProvider parser = parserPro.get();
+		parser.parse(file);
+		lastParser = parser;
+		live.set(parser.getSitemap());
+		watch(file);
+	}
+
+	/**
+	 * Loads the sitemap from {@code resourcePath}. A resource path cannot be watched, so the map will not be reloaded
+	 * 
+	 * @see uk.co.q3c.v7.base.navigate.sitemap.SitemapProvider#parse(java.lang.String)
+	 */
+	@Override
+	public synchronized void parse(String resourcePath) {
+		TextReaderSitemapProvider parser = parserPro.get();
+		parser.parse(resourcePath);
+		lastParser = parser;
+		live.set(parser.getSitemap());
+		log.info("Sitemap source {} is not a file, changes to it will not be loaded", resourcePath);
+	}
+
+	/**
+	 * Re-parses {@code file} and, if the result has no errors, makes it the live map. A failure to parse, such as a
+	 * file which is only partly written, is logged and leaves the current map in use.
+	 * 
+	 * @param file
+	 * @return true if the live map was replaced
+	 */
+	public boolean reload(File file) {
+		TextReaderSitemapProvider parser = parserPro.get();
+		Sitemap sitemap;
+		try {
+			parser.parse(file);
+			sitemap = parser.getSitemap();
+		} catch (RuntimeException e) {
+			log.warn("Unable to reload sitemap from " + file + ", the current sitemap is still in use", e);
+			return false;
+		}
+		if (sitemap == null) {
+			log.warn("Unable to reload sitemap from {}, the current sitemap is still in use", file);
+			return false;
+		}
+		if (sitemap.hasErrors()) {
+			log.warn("Reloaded sitemap from {} has errors, the current sitemap is still in use\n{}", file,
+					sitemap.getReport());
+			return false;
+		}
+		lastParser = parser;
+		live.set(sitemap);
+		log.info("Sitemap reloaded from {}", file);
+		return true;
+	}
+
+	@Override
+	public StringBuilder getReport() {
+		TextReaderSitemapProvider parser = lastParser;
+		return (parser == null) ? null : parser.getReport();
+	}
+
+	/**
+	 * Stops watching the source file. Any reload already in progress is allowed to complete
+	 */
+	public synchronized void stop() {
+		if (stopper != null) {
+			shutdownRegistry.unregister(stopper);
+			stopper = null;
+		}
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn("Unable to close the sitemap watch service", e);
+			}
+			watchService = null;
+		}
+	}
+
+	private void watch(final File file) {
+		stop();
+		final Path dir = file.getAbsoluteFile().getParentFile().toPath();
+		final Path fileName = file.toPath().getFileName();
+		final WatchService service;
+		try {
+			service = FileSystems.getDefault().newWatchService();
+			// editors often save by writing a new file and renaming it, so creation counts as a change
+			dir.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+		} catch (IOException e) {
+			log.error("Unable to watch {} for changes, the sitemap will not be reloaded", file, e);
+			return;
+		}
+		watchService = service;
+		stopper = new Closeable() {
+
+			@Override
+			public void close() {
+				stop();
+			}
+		};
+		shutdownRegistry.register(stopper);
+		Thread watcher = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				watchLoop(service, fileName, file);
+			}
+		}, "sitemap-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+		log.info("Watching {} for changes", file.getAbsolutePath());
+	}
+
+	private void watchLoop(WatchService service, Path fileName, File file) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = changed(key, fileName);
+				if (!key.reset()) {
+					log.warn("Directory for {} is no longer accessible, the sitemap will not be reloaded", file);
+					return;
+				}
+				if (changed) {
+					// one save can produce several events, and the file may still be being written, so wait until
+					// it has been quiet for a while before reloading
+					while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+						changed(key, fileName);
+						key.reset();
+					}
+					try {
+						reload(file);
+					} catch (RuntimeException e) {
+						// the watcher must survive anything a reload throws, or later changes would be ignored
+						log.error("Unexpected failure reloading sitemap from " + file, e);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			log.debug("Stopped watching {}", file);
+		}
+	}
+
+	private boolean changed(WatchKey key, Path fileName) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (fileName.equals(event.context())) {
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private File classpathFile(String resource) {
+		URL url = getClass().getClassLoader().getResource(resource);
+		if ((url == null) || (!"file".equals(url.getProtocol()))) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parameter declared for a page in the sitemap, with the type its value is converted to when a fragment is matched
+ * by the {@link RouteTable}. Parameters are declared in braces after the URI segment of a page, as a comma separated
+ * list of <i>name</i>:<i>type</i>, where the type is one of the keywords of {@link Type} and may be omitted for a
+ * string. For example:
+ * 
+ * <pre>
+ * --orders{id:int,status} : subview.Orders
+ * </pre>
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class RouteParameter {
+
+	public static enum Type {
+		Text("string"),
+		Int("int"),
+		Long_Int("long"),
+		Bool("boolean");
+
+		private final String keyword;
+
+		private Type(String keyword) {
+			this.keyword = keyword;
+		}
+
+		public String getKeyword() {
+			return keyword;
+		}
+
+		/**
+		 * Converts {@code value} to this type
+		 * 
+		 * @param value
+		 * @return
+		 * @throws IllegalArgumentException
+		 *             if {@code value} is not valid for this type
+		 */
+		public Object convert(String value) {
+			switch (this) {
+			case Int:
+				return Integer.valueOf(value);
+			case Long_Int:
+				return Long.valueOf(value);
+			case Bool:
+				if (value.equals("true") || value.equals("false")) {
+					return Boolean.valueOf(value);
+				}
+				throw new IllegalArgumentException(value + " is not a boolean");
+			default:
+				return value;
+			}
+		}
+
+		public static Type forKeyword(String keyword) {
+			for (Type type : values()) {
+				if (type.keyword.equals(keyword)) {
+					return type;
+				}
+			}
+			throw new IllegalArgumentException("'" + keyword + "' is not a parameter type");
+		}
+	}
+
+	private final String name;
+	private final Type type;
+
+	public RouteParameter(String name, Type type) {
+		super();
+		this.name = name;
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Parses a declaration, without its braces, such as "id:int,status"
+	 * 
+	 * @param declaration
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a parameter has no name, or a type which is not recognised
+	 */
+	public static List<RouteParameter> parse(String declaration) {
+		if ((declaration == null) || declaration.trim().isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<RouteParameter> parameters = new ArrayList<>();
+		for (String item : declaration.split(",")) {
+			String[] parts = item.split(":", 2);
+			String name = parts[0].trim();
+			if (name.isEmpty()) {
+				throw new IllegalArgumentException("A parameter must have a name in '" + declaration + "'");
+			}
+			Type type = (parts.length == 1) ? Type.Text : Type.forKeyword(parts[1].trim());
+			parameters.add(new RouteParameter(name, type));
+		}
+		return parameters;
+	}
+
+	/**
+	 * The reverse of {@link #parse(String)}, or null if there are no parameters
+	 * 
+	 * @param parameters
+	 * @return
+	 */
+	public static String declaration(List<RouteParameter> parameters) {
+		if (parameters.isEmpty()) {
+			return null;
+		}
+		StringBuilder buf = new StringBuilder();
+		for (RouteParameter parameter : parameters) {
+			if (buf.length() > 0) {
+				buf.append(',');
+			}
+			buf.append(parameter);
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public String toString() {
+		return name + ":" + type.getKeyword();
+	}
+}
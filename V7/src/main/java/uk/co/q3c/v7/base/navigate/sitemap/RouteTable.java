@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.co.q3c.v7.base.navigate.InvalidURIException;
+import uk.co.q3c.v7.base.navigate.NavigationState;
+
+/**
+ * The pages of a {@link Sitemap}, compiled into a tree of routes, one for each URI segment, so that a fragment can be
+ * matched to its page, node chain and typed parameters in a single scan. Each route holds everything which can be
+ * worked out in advance for its page: the node chain, the full URI and the {@link RouteParameter}s declared for the
+ * page, keyed on name. The table is built by {@link Sitemap#freeze()}, and like the frozen map it is immutable and
+ * shared by all UIs.
+ * <p>
+ * The fragment is interpreted exactly as by {@link uk.co.q3c.v7.base.navigate.StrictURIFragmentHandler}. The value of
+ * a declared parameter is converted to its declared type, and a value which cannot be converted causes an
+ * {@link InvalidURIException}. Parameters which are not declared are passed through as strings.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class RouteTable {
+
+	private static class Route {
+		private final Map<String, Route> next = new HashMap<>();
+		private String uri;
+		private List<SitemapNode> nodeChain;
+		private Map<String, RouteParameter> parameters;
+	}
+
+	private final Route root = new Route();
+	private int size;
+
+	public RouteTable(Sitemap sitemap) {
+		super();
+		for (SitemapNode node : sitemap.getRoots()) {
+			add(sitemap, root, node, new ArrayList<SitemapNode>());
+		}
+	}
+
+	private void add(Sitemap sitemap, Route parent, SitemapNode node, List<SitemapNode> parentChain) {
+		// consistent with the sitemap, the first node with a segment is the one used
+		if (parent.next.containsKey(node.getUriSegment())) {
+			return;
+		}
+		List<SitemapNode> nodeChain = new ArrayList<>(parentChain);
+		nodeChain.add(node);
+		Route route = new Route();
+		route.uri = sitemap.uri(node);
+		route.nodeChain = Collections.unmodifiableList(nodeChain);
+		route.parameters = new HashMap<>();
+		for (RouteParameter parameter : node.getParameters()) {
+			route.parameters.put(parameter.getName(), parameter);
+		}
+		parent.next.put(node.getUriSegment(), route);
+		size++;
+		for (SitemapNode child : sitemap.getChildren(node)) {
+			add(sitemap, route, child, nodeChain);
+		}
+	}
+
+	/**
+	 * Returns the state for {@code fragment}, resolved to its node chain and with its parameters converted to their
+	 * declared types, or null if the virtual page of the fragment is not in the table
+	 * 
+	 * @param fragment
+	 * @return
+	 * @throws InvalidURIException
+	 *             if the value of a declared parameter cannot be converted to its type
+	 */
+	public NavigationState match(String fragment) {
+		String path = (fragment == null) ? "" : fragment;
+		int start = path.startsWith("!") ? 1 : 0;
+		int end = path.endsWith("/") ? path.length() - 1 : path.length();
+		path = path.substring(start, Math.max(start, end));
+
+		// walk the routes until the first segment with an '=', which starts the parameters
+		Route route = root;
+		List<String> segments = new ArrayList<>();
+		int segmentStart = 0;
+		int pageEnd = 0;
+		while (segmentStart <= path.length()) {
+			int segmentEnd = path.indexOf('/', segmentStart);
+			if (segmentEnd < 0) {
+				segmentEnd = path.length();
+			}
+			String segment = path.substring(segmentStart, segmentEnd);
+			if (segment.indexOf('=') >= 0) {
+				break;
+			}
+			route = route.next.get(segment);
+			if (route == null) {
+				return null;
+			}
+			// an empty fragment is the page with an empty segment, but has no segments
+			if (!path.isEmpty()) {
+				segments.add(segment);
+			}
+			pageEnd = segmentEnd;
+			segmentStart = segmentEnd + 1;
+		}
+		if (route == root) {
+			return null;
+		}
+
+		Map<String, String> parameters = new TreeMap<>();
+		Map<String, Object> values = new TreeMap<>();
+		while (segmentStart <= path.length()) {
+			int segmentEnd = path.indexOf('/', segmentStart);
+			if (segmentEnd < 0) {
+				segmentEnd = path.length();
+			}
+			parameter(route, path.substring(segmentStart, segmentEnd), parameters, values);
+			segmentStart = segmentEnd + 1;
+		}
+		return new NavigationState(fragment, route.uri, segments, parameters).withNodeChain(route.nodeChain)
+				.withValues(values);
+	}
+
+	private void parameter(Route route, String segment, Map<String, String> parameters, Map<String, Object> values) {
+		String[] pair = segment.split("=", -1);
+		if ((pair.length < 2) || pair[0].isEmpty() || pair[1].isEmpty()) {
+			return;
+		}
+		String key = pair[0];
+		String value = pair[1];
+		parameters.put(key, value);
+		RouteParameter declared = route.parameters.get(key);
+		if (declared == null) {
+			values.put(key, value);
+			return;
+		}
+		try {
+			values.put(key, declared.getType().convert(value));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidURIException("Parameter '" + key + "' of page '" + route.uri + "' must be of type "
+					+ declared.getType().getKeyword() + ", but is '" + value + "'");
+		}
+	}
+
+	/**
+	 * The number of pages in the table
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+}
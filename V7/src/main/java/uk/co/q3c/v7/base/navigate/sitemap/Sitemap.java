@@ -13,10 +13,17 @@
 package uk.co.q3c.v7.base.navigate.sitemap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Singleton;
 
@@ -25,6 +32,7 @@ import org.apache.commons.lang3.StringUtils;
 import uk.co.q3c.util.BasicForest;
 import uk.co.q3c.v7.base.navigate.StandardPageKey;
 import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
+import uk.co.q3c.v7.i18n.Translate;
 
 /**
  * Encapsulates the site layout. Individual "virtual pages" are represented by {@link SitemapNode} instances. This map
@@ -42,6 +50,19 @@ import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
  * <p>
  * <p>
  * Uses LinkedHashMap to hold the site map itself, to retain insertion order<br>
+ * <p>
+ * To avoid walking the structure on every lookup, two indexes are maintained. Each node (and the set of roots) has a
+ * map of URI segment to child node, so that resolving a URI is proportional to the depth of the path rather than the
+ * size of the site. There is also a map of full URI to node, which is built when first needed after a structural
+ * change. In the same way, each node holds its full URI, depth, ancestor ids and whether it is a public page, all of
+ * which are updated in a single pass when first needed after a structural change. Changing the URI segment of a node
+ * which is already in the map is not tracked - call {@link #reindex()} if you need to do that. Redirects may be
+ * chained, and each redirect source is mapped directly to the end of its chain when the map is frozen. The pages, and
+ * the parameters declared for them, are also compiled into a {@link RouteTable} when the map is frozen.
+ * <p>
+ * Once built, the map is shared by every UI. {@link #freeze()} compiles the indexes, compacts the structure and makes
+ * the map (and its nodes) immutable, so that it can then be read concurrently without any locking. Any attempt to
+ * change a frozen map throws a {@link SiteMapException}
  * 
  * @author David Sowerby 19 May 2013
  * 
@@ -53,19 +74,136 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	private String privateRoot = "private";
 	private int nextNodeId = 0;
 	private int errors = 0;
-	private final Map<StandardPageKey, String> standardPages = new HashMap<>();
+	private Map<StandardPageKey, String> standardPages = new HashMap<>();
 	private String report;
 	// Uses LinkedHashMap to retain insertion order
-	private final Map<String, String> redirects = new LinkedHashMap<>();
+	private Map<String, String> redirects = new LinkedHashMap<>();
+	// redirect source -> the page at the end of its chain, built by freeze()
+	private volatile Map<String, String> redirectTable;
+	// the pages compiled for matching fragments, built by freeze()
+	private volatile RouteTable routeTable;
 	private SitemapNode privateRootNode;
 	private SitemapNode publicRootNode;
+	// segment -> node, for the roots and for the children of each node
+	private final Map<String, SitemapNode> rootSegments = new HashMap<>();
+	private final Map<SitemapNode, Map<String, SitemapNode>> childSegments = new HashMap<>();
+	// full uri -> node, null when it needs to be rebuilt
+	private volatile Map<String, SitemapNode> uriIndex;
+	private volatile boolean frozen;
+	// false when the positions held by the nodes need to be updated
+	private volatile boolean positionsValid;
+	// labels, collation keys and sorted orderings, built when a locale is first used
+	private final ConcurrentMap<Locale, SitemapLabels> labelsByLocale = new ConcurrentHashMap<>();
 
+	/**
+	 * Returns the full URI of {@code node}. For a node in the map this is taken from the position held by the node,
+	 * which is updated after a structural change
+	 * 
+	 * @param node
+	 * @return
+	 */
 	public String uri(SitemapNode node) {
+		if (positioned(node)) {
+			return node.getUri();
+		}
 		StringBuilder buf = new StringBuilder(node.getUriSegment());
 		prependParent(node, buf);
 		return buf.toString();
 	}
 
+	/**
+	 * Returns the depth of {@code node}, where a root has a depth of 0
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public int depth(SitemapNode node) {
+		if (positioned(node)) {
+			return node.getDepth();
+		}
+		return ancestorIds(node).length;
+	}
+
+	/**
+	 * Returns the ids of the ancestors of {@code node}, starting with its root and ending with its parent. The array is
+	 * empty for a root
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public int[] ancestorIds(SitemapNode node) {
+		if (positioned(node)) {
+			return node.getAncestorIds().clone();
+		}
+		List<SitemapNode> ancestors = new ArrayList<>();
+		SitemapNode parentNode = getParent(node);
+		while (parentNode != null) {
+			ancestors.add(0, parentNode);
+			parentNode = getParent(parentNode);
+		}
+		int[] ids = new int[ancestors.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = ancestors.get(i).getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns true if {@code node} is in the public branch of the map (it is, or is a descendant of, the
+	 * {@link #getPublicRootNode()})
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public boolean isPublicPage(SitemapNode node) {
+		if (positioned(node)) {
+			return node.isPublicPage();
+		}
+		SitemapNode rootNode = getRootFor(node);
+		return (rootNode != null) && (rootNode.equals(getPublicRootNode()));
+	}
+
+	/**
+	 * Returns true if {@code node} is in the map and its position is up to date, updating the positions of all nodes
+	 * first if the structure has changed
+	 */
+	private boolean positioned(SitemapNode node) {
+		if (!containsNode(node)) {
+			return false;
+		}
+		if (!positionsValid) {
+			updatePositions();
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the URI, depth, ancestors and public flag of every node, in a single pass from the roots
+	 */
+	private synchronized void updatePositions() {
+		if (positionsValid) {
+			return;
+		}
+		SitemapNode publicRootNode = getPublicRootNode();
+		for (SitemapNode root : getRoots()) {
+			updatePosition(root, root.getUriSegment(), new int[0], root.equals(publicRootNode));
+		}
+		positionsValid = true;
+	}
+
+	private void updatePosition(SitemapNode node, String uri, int[] ancestorIds, boolean publicPage) {
+		node.setPosition(uri, ancestorIds.length, ancestorIds, publicPage);
+		List<SitemapNode> children = getChildren(node);
+		if (children.isEmpty()) {
+			return;
+		}
+		int[] childAncestorIds = Arrays.copyOf(ancestorIds, ancestorIds.length + 1);
+		childAncestorIds[ancestorIds.length] = node.getId();
+		for (SitemapNode child : children) {
+			updatePosition(child, uri + "/" + child.getUriSegment(), childAncestorIds, publicPage);
+		}
+	}
+
 	private void prependParent(SitemapNode node, StringBuilder buf) {
 		SitemapNode parentNode = getParent(node);
 		if (parentNode != null) {
@@ -85,6 +223,7 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	 * @return
 	 */
 	public SitemapNode append(String uri) {
+		checkNotFrozen();
 
 		if (uri.equals("")) {
 			SitemapNode node = new SitemapNode();
@@ -94,45 +233,129 @@ public class Sitemap extends BasicForest<SitemapNode> {
 		}
 		SitemapNode node = null;
 		String[] segments = StringUtils.split(uri, "/");
-		List<SitemapNode> nodes = getRoots();
 		SitemapNode parentNode = null;
 		for (int i = 0; i < segments.length; i++) {
-			node = findNodeBySegment(nodes, segments[i], true);
-			addChild(parentNode, node);
-			nodes = getChildren(node);
+			node = findNodeBySegment(parentNode, segments[i]);
+			if (node == null) {
+				node = new SitemapNode();
+				node.setUriSegment(segments[i]);
+				addChild(parentNode, node);
+			}
 			parentNode = node;
 		}
 
 		return node;
 	}
 
-	private SitemapNode findNodeBySegment(List<SitemapNode> nodes, String segment, boolean createIfAbsent) {
-		SitemapNode foundNode = null;
-		for (SitemapNode node : nodes) {
-			if (node.getUriSegment().equals(segment)) {
-				foundNode = node;
-				break;
-			}
+	/**
+	 * Returns the child of {@code parentNode} with the URI {@code segment}, or the root with that segment if
+	 * {@code parentNode} is null. Returns null if there is no such node.
+	 * 
+	 * @param parentNode
+	 * @param segment
+	 * @return
+	 */
+	private SitemapNode findNodeBySegment(SitemapNode parentNode, String segment) {
+		Map<String, SitemapNode> segments = segmentsFor(parentNode, false);
+		return (segments == null) ? null : segments.get(segment);
+	}
+
+	private Map<String, SitemapNode> segmentsFor(SitemapNode parentNode, boolean createIfAbsent) {
+		if (parentNode == null) {
+			return rootSegments;
 		}
+		Map<String, SitemapNode> segments = childSegments.get(parentNode);
+		if ((segments == null) && (createIfAbsent)) {
+			segments = new HashMap<>();
+			childSegments.put(parentNode, segments);
+		}
+		return segments;
+	}
 
-		if ((foundNode == null) && (createIfAbsent)) {
-			foundNode = new SitemapNode();
-			foundNode.setUriSegment(segment);
+	/**
+	 * Records {@code node} against its segment for {@code parentNode}. If there is already a node with the same
+	 * segment, the first one is retained, consistent with a search of the children in insertion order.
+	 */
+	private void indexSegment(SitemapNode parentNode, SitemapNode node) {
+		Map<String, SitemapNode> segments = segmentsFor(parentNode, true);
+		if (!segments.containsKey(node.getUriSegment())) {
+			segments.put(node.getUriSegment(), node);
+		}
+	}
+
+	private void unindexSegment(SitemapNode parentNode, SitemapNode node) {
+		Map<String, SitemapNode> segments = segmentsFor(parentNode, false);
+		if ((segments != null) && (node.equals(segments.get(node.getUriSegment())))) {
+			segments.remove(node.getUriSegment());
+		}
+	}
 
+	/**
+	 * Rebuilds the URI indexes from the node structure. This is only needed if the URI segment of a node has been
+	 * changed after it was added to the map
+	 */
+	public void reindex() {
+		checkNotFrozen();
+		rootSegments.clear();
+		childSegments.clear();
+		for (SitemapNode root : getRoots()) {
+			reindex(null, root);
 		}
-		return foundNode;
+		structureChanged();
+		privateRootNode = null;
+		publicRootNode = null;
+	}
+
+	private void reindex(SitemapNode parentNode, SitemapNode node) {
+		indexSegment(parentNode, node);
+		for (SitemapNode child : getChildren(node)) {
+			reindex(node, child);
+		}
+	}
+
+	private Map<String, SitemapNode> uriIndex() {
+		Map<String, SitemapNode> index = uriIndex;
+		if (index == null) {
+			// built locally and then published, so that concurrent readers only ever see a complete index
+			index = new LinkedHashMap<>();
+			for (SitemapNode node : getAllNodes()) {
+				String uri = uri(node);
+				if (!index.containsKey(uri)) {
+					index.put(uri, node);
+				}
+			}
+			uriIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Nodes are keyed on their id, so that the underlying forest can locate them without hashing
+	 * 
+	 * @see uk.co.q3c.util.BasicForest#key(java.lang.Object)
+	 */
+	@Override
+	protected int key(SitemapNode node) {
+		return node.getId();
 	}
 
 	@Override
 	public void addNode(SitemapNode node) {
+		checkNotFrozen();
 		if (node.getId() == 0) {
 			node.setId(nextNodeId());
 		}
+		boolean added = !containsNode(node);
 		super.addNode(node);
+		if (added) {
+			indexSegment(null, node);
+			structureChanged();
+		}
 	}
 
 	@Override
 	public void addChild(SitemapNode parentNode, SitemapNode childNode) {
+		checkNotFrozen();
 		// super allows null parent
 		if (parentNode != null) {
 			if (parentNode.getId() == 0) {
@@ -142,7 +365,108 @@ public class Sitemap extends BasicForest<SitemapNode> {
 		if (childNode.getId() == 0) {
 			childNode.setId(nextNodeId());
 		}
+		boolean present = containsNode(childNode);
+		SitemapNode previousParent = getParent(childNode);
+		boolean parentAdded = (parentNode != null) && (!containsNode(parentNode));
 		super.addChild(parentNode, childNode);
+		if (parentAdded) {
+			indexSegment(null, parentNode);
+		}
+		if (present) {
+			if ((previousParent != null) && (previousParent.equals(parentNode))) {
+				return;
+			}
+			unindexSegment(previousParent, childNode);
+		}
+		indexSegment(parentNode, childNode);
+		structureChanged();
+	}
+
+	private void structureChanged() {
+		uriIndex = null;
+		positionsValid = false;
+		labelsByLocale.clear();
+	}
+
+	/**
+	 * Returns the labels of the nodes in {@code locale}, and the nodes sorted by those labels. These are built the
+	 * first time a locale is used, using {@code translate}, and are then shared until the structure of the map changes
+	 * (or {@link #reindex()} is called).
+	 * 
+	 * @param locale
+	 * @param translate
+	 * @return
+	 */
+	public SitemapLabels labels(Locale locale, Translate translate) {
+		SitemapLabels labels = labelsByLocale.get(locale);
+		if (labels == null) {
+			labels = new SitemapLabels(this, locale, translate);
+			SitemapLabels existing = labelsByLocale.putIfAbsent(locale, labels);
+			if (existing != null) {
+				labels = existing;
+			}
+		}
+		return labels;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+		super.clear();
+		rootSegments.clear();
+		childSegments.clear();
+		structureChanged();
+		privateRootNode = null;
+		publicRootNode = null;
+	}
+
+	/**
+	 * Compiles the map into its final, read only form. The URI indexes, redirect table, route table and root nodes are
+	 * built, segments are interned and the underlying structure is trimmed to size. After this call the map and all of
+	 * its nodes are immutable, and any attempt to modify them throws a {@link SiteMapException}. Calling this method
+	 * more than once has no effect.
+	 */
+	public synchronized void freeze() {
+		if (frozen) {
+			return;
+		}
+		List<SitemapNode> nodes = getAllNodes();
+		for (SitemapNode node : nodes) {
+			node.setUriSegment(node.getUriSegment().intern());
+		}
+		reindex();
+		updatePositions();
+		uriIndex();
+		getPrivateRootNode();
+		getPublicRootNode();
+		trimToSize();
+		standardPages = Collections.unmodifiableMap(standardPages);
+		redirects = Collections.unmodifiableMap(redirects);
+		redirectTable = resolveRedirects(new HashSet<String>());
+		routeTable = new RouteTable(this);
+		for (SitemapNode node : nodes) {
+			node.freeze();
+		}
+		frozen = true;
+	}
+
+	/**
+	 * The route table compiled when the map was frozen, or null if it has not been frozen
+	 * 
+	 * @return
+	 */
+	public RouteTable getRouteTable() {
+		return routeTable;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new SiteMapException("The Sitemap has been frozen and cannot be changed");
+		}
 	}
 
 	public String standardPageURI(StandardPageKey pageKey) {
@@ -167,6 +491,7 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	}
 
 	public void setReport(String report) {
+		checkNotFrozen();
 		this.report = report;
 	}
 
@@ -176,19 +501,61 @@ public class Sitemap extends BasicForest<SitemapNode> {
 
 	/**
 	 * If the {@code page} has been redirected, return the page it has been redirected to, otherwise, just return
-	 * {@code page}
+	 * {@code page}. Where redirects are chained, the page at the end of the chain is returned. A page which is part of
+	 * a redirect loop is not redirected.
 	 * 
 	 * @param page
 	 * @return
 	 */
 	public String getRedirectFor(String page) {
-		String p = redirects.get(page);
+		Map<String, String> table = redirectTable;
+		if (table == null) {
+			// not frozen yet, so redirects may still change
+			table = resolveRedirects(new HashSet<String>());
+		}
+		String p = table.get(page);
 		if (p == null) {
 			return page;
 		}
 		return p;
 	}
 
+	/**
+	 * Follows each redirect to the end of its chain, and returns a map of redirect source to the page at the end of
+	 * its chain. Sources which are part of, or lead into, a loop are added to {@code loops} and left out of the map.
+	 * 
+	 * @param loops
+	 * @return
+	 */
+	Map<String, String> resolveRedirects(Set<String> loops) {
+		Map<String, String> resolved = new HashMap<>();
+		for (String source : redirects.keySet()) {
+			List<String> chain = new ArrayList<>();
+			String page = source;
+			String target = null;
+			while (target == null) {
+				if (resolved.containsKey(page)) {
+					target = resolved.get(page);
+				} else if (loops.contains(page) || chain.contains(page)) {
+					break;
+				} else if (!redirects.containsKey(page)) {
+					target = page;
+				} else {
+					chain.add(page);
+					page = redirects.get(page);
+				}
+			}
+			for (String p : chain) {
+				if (target == null) {
+					loops.add(p);
+				} else {
+					resolved.put(p, target);
+				}
+			}
+		}
+		return resolved;
+	}
+
 	public Map<String, String> getRedirects() {
 		return redirects;
 	}
@@ -208,15 +575,13 @@ public class Sitemap extends BasicForest<SitemapNode> {
 		List<SitemapNode> nodeChain = new ArrayList<>();
 		int i = 0;
 		String currentSegment = null;
-		List<SitemapNode> nodes = getRoots();
 		boolean segmentNotFound = false;
 		SitemapNode node = null;
 		while ((i < segments.size()) && (!segmentNotFound)) {
 			currentSegment = segments.get(i);
-			node = findNodeBySegment(nodes, currentSegment, false);
+			node = findNodeBySegment(node, currentSegment);
 			if (node != null) {
 				nodeChain.add(node);
-				nodes = getChildren(node);
 				i++;
 			} else {
 				segmentNotFound = true;
@@ -230,32 +595,37 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	}
 
 	/**
-	 * Returns a list of all the URIs contained in the sitemap. This is a fairly expensive call, as each URI has to be
-	 * built from the node structure.
+	 * Returns a list of all the URIs contained in the sitemap, in node insertion order. The URIs are taken from the
+	 * URI index, which is only rebuilt after a structural change.
 	 * 
 	 * @return
 	 */
 	public List<String> uris() {
-		List<String> list = new ArrayList<>();
-		for (SitemapNode node : getAllNodes()) {
-			list.add(uri(node));
-		}
-		return list;
+		return new ArrayList<>(uriIndex().keySet());
 	}
 
 	/**
-	 * Returns true if the sitemap contains {@code uri}. This is a fairly expensive call, as each URI has to be built
-	 * from the node structure, before this method can be evaluated
+	 * Returns true if the sitemap contains {@code uri}
 	 * 
 	 * @param uri
 	 * @return
 	 */
 	public boolean hasUri(String uri) {
-		List<String> list = uris();
-		return list.contains(uri);
+		return uriIndex().containsKey(uri);
+	}
+
+	/**
+	 * Returns the node for the full {@code uri} (a virtual page, without parameters), or null if there is no such node
+	 * 
+	 * @param uri
+	 * @return
+	 */
+	public SitemapNode nodeFor(String uri) {
+		return uriIndex().get(uri);
 	}
 
 	public void setErrors(int errorSum) {
+		checkNotFrozen();
 		errors = errorSum;
 
 	}
@@ -265,7 +635,10 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	}
 
 	public void setPublicRoot(String publicRoot) {
+		checkNotFrozen();
 		this.publicRoot = publicRoot;
+		this.publicRootNode = null;
+		positionsValid = false;
 	}
 
 	public String getPrivateRoot() {
@@ -273,19 +646,21 @@ public class Sitemap extends BasicForest<SitemapNode> {
 	}
 
 	public void setPrivateRoot(String privateRoot) {
+		checkNotFrozen();
 		this.privateRoot = privateRoot;
+		this.privateRootNode = null;
 	}
 
 	public SitemapNode getPrivateRootNode() {
 		if (this.privateRootNode == null) {
-			privateRootNode = findNodeBySegment(getRoots(), privateRoot, false);
+			privateRootNode = findNodeBySegment(null, privateRoot);
 		}
 		return privateRootNode;
 	}
 
 	public SitemapNode getPublicRootNode() {
 		if (this.publicRootNode == null) {
-			publicRootNode = findNodeBySegment(getRoots(), publicRoot, false);
+			publicRootNode = findNodeBySegment(null, publicRoot);
 		}
 		return publicRootNode;
 	}
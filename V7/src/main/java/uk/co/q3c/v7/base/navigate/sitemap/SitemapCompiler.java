@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.navigate.StandardPageKey;
+import uk.co.q3c.v7.i18n.I18NKey;
+import uk.co.q3c.v7.i18n.I18NModule;
+
+import com.google.inject.Guice;
+
+/**
+ * Compiles a sitemap source (see {@link TextReaderSitemapProvider}) into a binary artifact which can be loaded by
+ * {@link BinarySitemapProvider} without parsing or validating it again. Only a source which parses without errors
+ * can be compiled. The artifact holds:
+ * <ol>
+ * <li>a header of {@link #MAGIC}, {@link #VERSION}, the checksum of the source it was compiled from and the checksum
+ * of the rest of the artifact (its body)
+ * <li>a string table, referred to by index in the rest of the artifact
+ * <li>the public and private roots
+ * <li>the nodes in depth first order, each with its id, the index of its parent, its segment, the names of its view
+ * class and label key, and the declaration of its parameters
+ * <li>the redirects and standard page mappings
+ * <li>the report produced when the source was parsed
+ * </ol>
+ * The source checksum allows {@link BinarySitemapProvider} to detect an artifact which is older than its source, the
+ * version an artifact written in a different format, and the body checksum an artifact which has been damaged since
+ * it was written; in each case the source is parsed instead.
+ * <p>
+ * {@link #main(String[])} is used by the compileSitemap Gradle task
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class SitemapCompiler {
+	private static Logger log = LoggerFactory.getLogger(SitemapCompiler.class);
+
+	public static final int MAGIC = 0x56375342;
+	public static final int VERSION = 3;
+	public static final String ARTIFACT_SUFFIX = ".bin";
+	// the number of ints written for each node
+	static final int NODE_INTS = 7;
+
+	private final Provider<TextReaderSitemapProvider> parserPro;
+
+	@Inject
+	protected SitemapCompiler(Provider<TextReaderSitemapProvider> parserPro) {
+		super();
+		this.parserPro = parserPro;
+	}
+
+	/**
+	 * Compiles {@code source} into {@code artifact}
+	 * 
+	 * @param source
+	 * @param artifact
+	 * @throws IOException
+	 * @throws SiteMapException
+	 *             if the source cannot be parsed, or has errors
+	 */
+	public void compile(File source, File artifact) throws IOException {
+		TextReaderSitemapProvider parser = parserPro.get();
+		parser.parse(source);
+		Sitemap sitemap = parser.getSitemap();
+		if ((sitemap == null) || (!sitemap.isFrozen())) {
+			throw new SiteMapException("Unable to parse sitemap source " + source.getAbsolutePath());
+		}
+		if (sitemap.hasErrors()) {
+			throw new SiteMapException("Sitemap source " + source.getAbsolutePath()
+					+ " has errors and cannot be compiled\n" + sitemap.getReport());
+		}
+		long checksum;
+		try (InputStream in = new FileInputStream(source)) {
+			checksum = checksum(in);
+		}
+		write(sitemap, checksum, artifact);
+		log.info("Sitemap {} compiled to {}", source.getAbsolutePath(), artifact.getAbsolutePath());
+	}
+
+	/**
+	 * Writes {@code sitemap} to {@code artifact}, recording {@code sourceChecksum} as the checksum of the source it was
+	 * built from
+	 * 
+	 * @param sitemap
+	 * @param sourceChecksum
+	 * @param artifact
+	 * @throws IOException
+	 */
+	public void write(Sitemap sitemap, long sourceChecksum, File artifact) throws IOException {
+		StringTable strings = new StringTable();
+		List<SitemapNode> nodes = new ArrayList<>();
+		for (SitemapNode root : sitemap.getRoots()) {
+			addBranch(sitemap, root, nodes);
+		}
+		Map<SitemapNode, Integer> positions = new HashMap<>();
+		int[] nodeData = new int[nodes.size() * NODE_INTS];
+		int i = 0;
+		for (SitemapNode node : nodes) {
+			positions.put(node, i / NODE_INTS);
+			SitemapNode parent = sitemap.getParent(node);
+			I18NKey<?> labelKey = node.getLabelKey();
+			nodeData[i++] = node.getId();
+			nodeData[i++] = (parent == null) ? -1 : positions.get(parent);
+			nodeData[i++] = strings.index(node.getUriSegment());
+			nodeData[i++] = strings.index((node.getViewClass() == null) ? null : node.getViewClass().getName());
+			nodeData[i++] = strings.index((labelKey == null) ? null : ((Enum<?>) labelKey).getDeclaringClass()
+					.getName());
+			nodeData[i++] = strings.index((labelKey == null) ? null : ((Enum<?>) labelKey).name());
+			nodeData[i++] = strings.index(RouteParameter.declaration(node.getParameters()));
+		}
+		int[] redirectData = new int[sitemap.getRedirects().size() * 2];
+		i = 0;
+		for (Map.Entry<String, String> entry : sitemap.getRedirects().entrySet()) {
+			redirectData[i++] = strings.index(entry.getKey());
+			redirectData[i++] = strings.index(entry.getValue());
+		}
+		int[] pageData = new int[sitemap.getStandardPages().size() * 2];
+		i = 0;
+		for (Map.Entry<StandardPageKey, String> entry : sitemap.getStandardPages().entrySet()) {
+			pageData[i++] = strings.index(entry.getKey().name());
+			pageData[i++] = strings.index(entry.getValue());
+		}
+		int publicRoot = strings.index(sitemap.getPublicRoot());
+		int privateRoot = strings.index(sitemap.getPrivateRoot());
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream bodyOut = new DataOutputStream(body);
+		bodyOut.writeInt(strings.size());
+		for (String s : strings.values()) {
+			writeString(bodyOut, s);
+		}
+		bodyOut.writeInt(publicRoot);
+		bodyOut.writeInt(privateRoot);
+		writeInts(bodyOut, nodeData);
+		writeInts(bodyOut, redirectData);
+		writeInts(bodyOut, pageData);
+		writeString(bodyOut, (sitemap.getReport() == null) ? "" : sitemap.getReport());
+		bodyOut.flush();
+		byte[] bodyBytes = body.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bodyBytes);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(artifact)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sourceChecksum);
+			out.writeLong(crc.getValue());
+			out.write(bodyBytes);
+		}
+	}
+
+	private void addBranch(Sitemap sitemap, SitemapNode node, List<SitemapNode> nodes) {
+		nodes.add(node);
+		for (SitemapNode child : sitemap.getChildren(node)) {
+			addBranch(sitemap, child, nodes);
+		}
+	}
+
+	private void writeInts(DataOutputStream out, int[] data) throws IOException {
+		out.writeInt(data.length);
+		for (int d : data) {
+			out.writeInt(d);
+		}
+	}
+
+	// writeUTF is limited to 64k, which a report could exceed
+	private void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Returns the checksum of everything read from {@code in}
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static long checksum(InputStream in) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[8192];
+		InputStream bin = new BufferedInputStream(in);
+		int count;
+		while ((count = bin.read(buf)) != -1) {
+			crc.update(buf, 0, count);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the artifact location for a source path - the artifact sits alongside its source
+	 * 
+	 * @param sourcePath
+	 * @return
+	 */
+	public static String artifactPath(String sourcePath) {
+		return sourcePath + ARTIFACT_SUFFIX;
+	}
+
+	private static class StringTable {
+		private final Map<String, Integer> indexes = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+
+		int index(String s) {
+			if (s == null) {
+				return -1;
+			}
+			Integer index = indexes.get(s);
+			if (index == null) {
+				index = values.size();
+				values.add(s);
+				indexes.put(s, index);
+			}
+			return index;
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		List<String> values() {
+			return values;
+		}
+	}
+
+	/**
+	 * Compiles a sitemap. The first argument is the path of the source, and the optional second argument the path of
+	 * the artifact, which defaults to the source path with {@link #ARTIFACT_SUFFIX} appended. The view classes and
+	 * label keys referred to by the source must be on the classpath.
+	 * 
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			throw new IllegalArgumentException("Usage: SitemapCompiler <source> [artifact]");
+		}
+		File source = new File(args[0]);
+		File artifact = new File((args.length > 1) ? args[1] : artifactPath(args[0]));
+		SitemapCompiler compiler = Guice.createInjector(new I18NModule()).getInstance(SitemapCompiler.class);
+		compiler.compile(source, artifact);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import uk.co.q3c.v7.i18n.I18NKey;
+import uk.co.q3c.v7.i18n.Translate;
+
+/**
+ * The labels and collation keys of all the nodes in a {@link Sitemap} for a single {@link Locale}, together with the
+ * roots and the children of each node, sorted by collation key. An instance is built the first time a locale is asked
+ * for, by {@link Sitemap#labels(Locale, Translate)}, and is then re-used by every user with that locale until the
+ * structure of the {@link Sitemap} changes. Instances are immutable.
+ * <p>
+ * A node without a label key is labelled with its URI segment
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class SitemapLabels {
+
+	private final Locale locale;
+	private final Map<SitemapNode, String> labels = new HashMap<>();
+	private final Map<SitemapNode, CollationKey> collationKeys = new HashMap<>();
+	private final Map<SitemapNode, List<SitemapNode>> sortedChildren = new HashMap<>();
+	private final List<SitemapNode> sortedRoots;
+
+	SitemapLabels(Sitemap sitemap, Locale locale, Translate translate) {
+		super();
+		this.locale = locale;
+		Collator collator = Collator.getInstance(locale);
+		List<SitemapNode> nodes = sitemap.getAllNodes();
+		for (SitemapNode node : nodes) {
+			I18NKey<?> labelKey = node.getLabelKey();
+			String label = (labelKey == null) ? node.getUriSegment() : translate.from(labelKey, locale);
+			labels.put(node, label);
+			collationKeys.put(node, collator.getCollationKey(label));
+		}
+		sortedRoots = sorted(sitemap.getRoots());
+		for (SitemapNode node : nodes) {
+			List<SitemapNode> children = sitemap.getChildren(node);
+			if (!children.isEmpty()) {
+				sortedChildren.put(node, sorted(children));
+			}
+		}
+	}
+
+	private List<SitemapNode> sorted(List<SitemapNode> nodes) {
+		Collections.sort(nodes, new Comparator<SitemapNode>() {
+
+			@Override
+			public int compare(SitemapNode o1, SitemapNode o2) {
+				int result = collationKeys.get(o1).compareTo(collationKeys.get(o2));
+				// equal labels are kept in insertion order
+				return (result != 0) ? result : o1.getId() - o2.getId();
+			}
+		});
+		return Collections.unmodifiableList(new ArrayList<>(nodes));
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * Returns the label of {@code node} in this locale, or null if the node is not in the {@link Sitemap}
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public String label(SitemapNode node) {
+		return labels.get(node);
+	}
+
+	/**
+	 * Returns the collation key for the label of {@code node}, or null if the node is not in the {@link Sitemap}
+	 * 
+	 * @param node
+	 * @return
+	 */
+	public CollationKey collationKey(SitemapNode node) {
+		return collationKeys.get(node);
+	}
+
+	/**
+	 * Returns the roots of the {@link Sitemap}, sorted by label
+	 * 
+	 * @return
+	 */
+	public List<SitemapNode> sortedRoots() {
+		return sortedRoots;
+	}
+
+	/**
+	 * Returns the children of {@code parentNode}, sorted by label. The list is empty if there are no children
+	 * 
+	 * @param parentNode
+	 * @return
+	 */
+	public List<SitemapNode> sortedChildren(SitemapNode parentNode) {
+		List<SitemapNode> children = sortedChildren.get(parentNode);
+		if (children == null) {
+			return Collections.emptyList();
+		}
+		return children;
+	}
+}
@@ -14,6 +14,8 @@ package uk.co.q3c.v7.base.navigate.sitemap;
 
 import java.text.CollationKey;
 import java.text.Collator;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 import uk.co.q3c.v7.base.view.V7View;
@@ -42,6 +44,12 @@ import uk.co.q3c.v7.i18n.Translate;
  * sorting (http://docs.oracle.com/javase/tutorial/i18n/text/perform.html)
  * <p>
  * Sorting by insertion order or collation key order is provided by
+ * <p>
+ * A node may also declare the parameters of its page, and their types (see {@link RouteParameter}), which are used by
+ * the {@link RouteTable} to convert parameter values when a fragment is matched
+ * <p>
+ * Once the {@link Sitemap} containing a node has been frozen (see {@link Sitemap#freeze()}), the node is shared by all
+ * users and becomes immutable - any attempt to change it throws a {@link SiteMapException}
  * 
  * @author David Sowerby 6 May 2013
  * 
@@ -55,6 +63,13 @@ public class SitemapNode {
 	private String label;
 	private CollationKey collationKey;
 	private Translate translate;
+	private volatile boolean frozen;
+	// position in the map, maintained by Sitemap
+	private String uri;
+	private int depth;
+	private int[] ancestorIds;
+	private boolean publicPage;
+	private List<RouteParameter> parameters = Collections.emptyList();
 
 	public SitemapNode(String uriSegment, Class<? extends V7View> viewClass, I18NKey<?> labelKey, Locale locale,
 			Collator collator, Translate translate) {
@@ -74,6 +89,7 @@ public class SitemapNode {
 	}
 
 	public void setUriSegment(String uriSegment) {
+		checkNotFrozen();
 		this.uriSegment = uriSegment;
 	}
 
@@ -89,6 +105,7 @@ public class SitemapNode {
 	 * @param locale
 	 */
 	public void setLabelKey(I18NKey<?> labelKey, Locale locale, Collator collator) {
+		checkNotFrozen();
 		this.labelKey = labelKey;
 		label = translate.from(labelKey, locale);
 		collationKey = collator.getCollationKey(label);
@@ -102,6 +119,7 @@ public class SitemapNode {
 	 * @param locale
 	 */
 	public void setLabelKey(I18NKey<?> labelKey, Translate translate, Collator collator) {
+		checkNotFrozen();
 		this.labelKey = labelKey;
 		label = translate.from(labelKey);
 		collationKey = collator.getCollationKey(label);
@@ -112,12 +130,28 @@ public class SitemapNode {
 	}
 
 	public void setViewClass(Class<? extends V7View> viewClass) {
+		checkNotFrozen();
 		this.viewClass = viewClass;
 	}
 
+	/**
+	 * The parameters declared for this page, empty if there are none
+	 * 
+	 * @return
+	 */
+	public List<RouteParameter> getParameters() {
+		return parameters;
+	}
+
+	public void setParameters(List<RouteParameter> parameters) {
+		checkNotFrozen();
+		this.parameters = Collections.unmodifiableList(parameters);
+	}
+
 	public String toStringAsMapEntry() {
 		StringBuilder buf = new StringBuilder();
 		buf.append((uriSegment == null) ? "no segment given" : uriSegment);
+		buf.append(parameters.isEmpty() ? "" : "{" + RouteParameter.declaration(parameters) + "}");
 		buf.append((viewClass == null) ? "" : "\t\t:  " + viewClass.getSimpleName());
 		buf.append((labelKey == null) ? "" : "\t~  " + ((Enum<?>) labelKey).name());
 		return buf.toString();
@@ -161,6 +195,7 @@ public class SitemapNode {
 	}
 
 	public void setId(int id) {
+		checkNotFrozen();
 		this.id = id;
 	}
 
@@ -177,7 +212,57 @@ public class SitemapNode {
 	}
 
 	public void setTranslate(Translate translate) {
+		checkNotFrozen();
 		this.translate = translate;
 	}
 
+	/**
+	 * Records the position of this node in its {@link Sitemap}. Called by the {@link Sitemap} whenever its structure
+	 * has changed, so this is allowed even when the node is frozen
+	 * 
+	 * @param uri
+	 * @param depth
+	 * @param ancestorIds
+	 * @param publicPage
+	 */
+	void setPosition(String uri, int depth, int[] ancestorIds, boolean publicPage) {
+		this.uri = uri;
+		this.depth = depth;
+		this.ancestorIds = ancestorIds;
+		this.publicPage = publicPage;
+	}
+
+	String getUri() {
+		return uri;
+	}
+
+	int getDepth() {
+		return depth;
+	}
+
+	int[] getAncestorIds() {
+		return ancestorIds;
+	}
+
+	boolean isPublicPage() {
+		return publicPage;
+	}
+
+	/**
+	 * Makes this node immutable. Called by {@link Sitemap#freeze()}
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new SiteMapException("Sitemap node '" + uriSegment + "' is part of a frozen Sitemap and cannot be changed");
+		}
+	}
+
 }
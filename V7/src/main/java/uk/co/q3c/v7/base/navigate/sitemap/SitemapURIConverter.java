@@ -15,7 +15,9 @@ package uk.co.q3c.v7.base.navigate.sitemap;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
 
 import com.google.common.collect.Lists;
@@ -29,19 +31,21 @@ import com.google.common.collect.Lists;
  * <li>reduce the complexity of Guice module creation order <br>
  * <br>
  * <p>
+ * The {@link Sitemap} is read from its provider each time it is needed, so the converter always uses the live map,
+ * even if it has been reloaded (see {@link ReloadingSitemapProvider})
  * 
  * @author David Sowerby 19 May 2013
  * 
  */
 public class SitemapURIConverter {
 
-	private final Sitemap sitemap;
+	private final Provider<Sitemap> sitemapPro;
 	private final URIFragmentHandler uriHandler;
 
 	@Inject
-	protected SitemapURIConverter(Sitemap sitemap, URIFragmentHandler uriHandler) {
+	protected SitemapURIConverter(Provider<Sitemap> sitemapPro, URIFragmentHandler uriHandler) {
 		super();
-		this.sitemap = sitemap;
+		this.sitemapPro = sitemapPro;
 		this.uriHandler = uriHandler;
 	}
 
@@ -55,9 +59,9 @@ public class SitemapURIConverter {
 	 * @return
 	 */
 	public List<SitemapNode> nodeChainForUri(String navigationState, boolean allowPartialPath) {
-		uriHandler.setFragment(navigationState);
-		String[] segments = uriHandler.getPathSegments();
-		List<SitemapNode> nodeChain = sitemap.nodeChainForSegments(Lists.newArrayList(segments), allowPartialPath);
+		NavigationState state = uriHandler.navigationState(navigationState);
+		List<String> segments = state.getPathSegments().isEmpty() ? Lists.newArrayList("") : state.getPathSegments();
+		List<SitemapNode> nodeChain = sitemapPro.get().nodeChainForSegments(segments, allowPartialPath);
 		return nodeChain;
 	}
 
@@ -88,6 +92,10 @@ public class SitemapURIConverter {
 	 * @return
 	 */
 	public SitemapNode nodeForUri(String navigationState, boolean allowPartialPath) {
+		if (!allowPartialPath) {
+			// a full match is required, so the URI index can answer directly
+			return sitemapPro.get().nodeFor(uriHandler.navigationState(navigationState).getVirtualPage());
+		}
 		List<SitemapNode> nodeChain = nodeChainForUri(navigationState, allowPartialPath);
 		if (nodeChain.size() == 0) {
 			return null;
@@ -107,8 +115,35 @@ public class SitemapURIConverter {
 		if (node == null) {
 			return false;
 		}
-		SitemapNode rootNode = sitemap.getRootFor(node);
-		return (rootNode.equals(sitemap.getPublicRootNode()));
+		return sitemapPro.get().isPublicPage(node);
+	}
+
+	/**
+	 * Returns true if the page of {@code state} is public (it can be viewed by unauthenticated users). The state must
+	 * already have been resolved against the {@link Sitemap} (see {@link NavigationState#withNodeChain(List)}), as the
+	 * node is taken from it rather than looked up again
+	 * 
+	 * @param state
+	 * @return
+	 */
+	public boolean pageIsPublic(NavigationState state) {
+		return pageIsPublic(sitemapPro.get(), state);
+	}
+
+	/**
+	 * As {@link #pageIsPublic(NavigationState)}, but for a state resolved against {@code sitemap}, which may not be the
+	 * live one if the map has been reloaded since
+	 * 
+	 * @param sitemap
+	 * @param state
+	 * @return
+	 */
+	public boolean pageIsPublic(Sitemap sitemap, NavigationState state) {
+		SitemapNode node = state.getNode();
+		if (node == null) {
+			return false;
+		}
+		return sitemap.isPublicPage(node);
 	}
 
 }
@@ -12,23 +12,23 @@
  */
 package uk.co.q3c.v7.base.navigate.sitemap;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.text.Collator;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
 
 import javax.inject.Inject;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.WordUtils;
 import org.apache.shiro.io.ResourceUtils;
@@ -77,6 +77,11 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 	private Map<SectionName, List<String>> sections;
 
 	private SectionName currentSection;
+	// map lines are tokenised as they are read, but can only be applied once the other sections are known
+	private List<MapLineRecord> mapRecords;
+	private MapLineReader mapLineReader;
+	private int mapLineIndex;
+	private int mapIndent;
 
 	private Class<? extends Enum<?>> labelKeysClass;
 	// options
@@ -145,6 +150,13 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 		sitemap = new Sitemap();
 		standardPageBuilder.setSitemap(sitemap);
 		sections = new HashMap<>();
+		currentSection = null;
+		mapRecords = new ArrayList<>();
+		mapLineReader = new MapLineReader();
+		mapLineIndex = 1;
+		mapIndent = 0;
+		commentLines = 0;
+		blankLines = 0;
 		labelClassNotI18N = false;
 		labelClassNonExistent = false;
 		labelClassMissing = true;
@@ -155,20 +167,9 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 	public void parse(String resourcePath) {
 		source = resourcePath;
 		log.info("Loading sitemap from {}", source);
-		InputStream is;
-		try {
-			is = ResourceUtils.getInputStreamForPath(resourcePath);
-			InputStreamReader isr = new InputStreamReader(is);
-			Scanner scanner = new Scanner(isr);
-			List<String> lines = new ArrayList<>();
-			try {
-				while (scanner.hasNextLine()) {
-					lines.add(scanner.nextLine());
-				}
-			} finally {
-				scanner.close();
-			}
-			processLines(lines);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				ResourceUtils.getInputStreamForPath(resourcePath)))) {
+			process(reader);
 
 		} catch (Exception e) {
 			log.error("Unable to load site map ", e);
@@ -178,10 +179,17 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 
 	}
 
-	private void processLines(List<String> lines) {
+	/**
+	 * Reads the source a line at a time, in a single pass, so the whole of the source is never held in memory
+	 * 
+	 * @param reader
+	 * @throws IOException
+	 */
+	private void process(BufferedReader reader) throws IOException {
 		init();
 		int i = 0;
-		for (String line : lines) {
+		String line;
+		while ((line = reader.readLine()) != null) {
 			divideIntoSections(line, i);
 			i++;
 		}
@@ -193,6 +201,8 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 			// processStandardPages();
 			generateStandardPages();
 			processMap();
+			// segments may have been reassigned while processing the map
+			sitemap.reindex();
 			validateRedirects();
 			checkLabelKeys();
 			checkViews();
@@ -210,6 +220,8 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 		endTime = DateTime.now();
 		parsed = true;
 		sitemap.setReport(getReport().toString());
+		// the sitemap is shared by all UIs from here on
+		sitemap.freeze();
 	}
 
 	/**
@@ -267,14 +279,15 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 	 * Ensure that redirection targets exist, and that no loops can be created
 	 */
 	private void validateRedirects() {
-		Collection<String> uris = sitemap.uris();
-		for (String target : getRedirects().values()) {
-			if (getRedirects().keySet().contains(target)) {
-				redirectErrors.add("'" + target + "' cannot be both a redirect source and redirect target");
-			}
-			if (!uris.contains(target)) {
+		Set<String> loops = new TreeSet<>();
+		Map<String, String> resolved = sitemap.resolveRedirects(loops);
+		for (String source : loops) {
+			redirectErrors.add("'" + source + "' cannot be redirected, its redirects form a loop");
+		}
+		// only the end of a chain has to be a page
+		for (String target : new HashSet<>(resolved.values())) {
+			if (!sitemap.hasUri(target)) {
 				redirectErrors.add("'" + target + "' cannot be a redirect target, it has not been defined as a page");
-
 			}
 		}
 
@@ -376,9 +389,8 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 		source = file.getAbsolutePath();
 		sourceFile = file;
 		log.info("Loading sitemap from {}", source);
-		try {
-			List<String> lines = FileUtils.readLines(file);
-			processLines(lines);
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), Charset.defaultCharset())) {
+			process(reader);
 
 		} catch (Exception e) {
 			log.error("Unable to load site map", e);
@@ -536,13 +548,10 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 
 	private void processMap() {
 		URITracker uriTracker = new URITracker();
-		MapLineReader reader = new MapLineReader();
-		List<String> sectionLines = sections.get(SectionName.map);
-		int lineIndex = 1;
-		int currentIndent = 0;
-		for (String line : sectionLines) {
-			MapLineRecord lineRecord = reader.processLine(lineIndex, line, syntaxErrors, indentationErrors,
-					currentIndent);
+		// views are resolved together once the map has been read
+		List<SitemapNode> viewNodes = new ArrayList<>();
+		List<String> viewNames = new ArrayList<>();
+		for (MapLineRecord lineRecord : mapRecords) {
 			uriTracker.track(lineRecord.getIndentLevel(), lineRecord.getSegment());
 			SitemapNode node = sitemap.append(uriTracker.uri());
 			// if node is a standard page do not overwrite it
@@ -550,12 +559,13 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 				// warning
 			} else {
 				node.setUriSegment(lineRecord.getSegment());
-				findView(node, lineRecord.getSegment(), lineRecord.getViewName());
+				node.setParameters(lineRecord.getParameters());
+				viewNodes.add(node);
+				viewNames.add(viewName(lineRecord.getSegment(), lineRecord.getViewName()));
 				labelKeyForName(lineRecord.getKeyName(), node);
 			}
-			currentIndent = lineRecord.getIndentLevel();
-			lineIndex++;
 		}
+		findViews(viewNodes, viewNames);
 	}
 
 	// private void processMap() {
@@ -664,7 +674,11 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 		String keyName = keyName(labelKeyName, node);
 		// could be null if invalid label keys given
 		if (lkfn != null) {
-			node.setLabelKey(lkfn.keyForName(keyName, missingEnums), translate, collator);
+			I18NKey<?> labelKey = lkfn.keyForName(keyName, missingEnums);
+			// null if the key does not exist, which has been recorded in missingEnums
+			if (labelKey != null) {
+				node.setLabelKey(labelKey, translate, collator);
+			}
 		} else {
 			missingEnums.add(keyName);
 		}
@@ -685,16 +699,14 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 	}
 
 	/**
-	 * Updates the node with the required view. If {@link #appendView} is true the 'View' is appended to the
-	 * {@code viewName} before attempting to find its class declaration. If no class can be found, {@code viewName} is
-	 * added to {@link #undeclaredViewClasses}
+	 * Returns the name of the view for a map line. If {@code viewName} is null the segment is used. If
+	 * {@link #appendView} is true the 'View' is appended
 	 * 
-	 * @param node
 	 * @param segment
 	 * @param viewName
+	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	private void findView(SitemapNode node, String segment, String viewName) {
+	private String viewName(String segment, String viewName) {
 		// if view is null use the segment
 		if (viewName == null) {
 			viewName = StringUtils.capitalize(segment);
@@ -704,27 +716,32 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 		if (appendView) {
 			viewName = viewName + "View";
 		}
-		Class<?> viewClass = null;
-		// try and find the view in the specified packages
-		for (String pkg : getViewPackages()) {
-			String fullViewName = pkg + "." + viewName;
-			try {
-				viewClass = Class.forName(fullViewName);
-				if (V7View.class.isAssignableFrom(viewClass)) {
-					node.setViewClass((Class<V7View>) viewClass);
-					break;
-				} else {
-					invalidViewClasses.add(fullViewName);
-				}
-			} catch (ClassNotFoundException e) {
-				// don't need to do anything
-			}
+		return viewName;
+	}
 
+	/**
+	 * Updates each node with its view, in the order the nodes appeared in the map. The classes are resolved together
+	 * by a {@link ViewClassIndex} of the view packages. Classes which do not implement {@link V7View} are added to
+	 * {@link #invalidViewClasses}, and view names for which no class can be found are added to
+	 * {@link #undeclaredViewClasses}
+	 * 
+	 * @param nodes
+	 * @param viewNames
+	 */
+	private void findViews(List<SitemapNode> nodes, List<String> viewNames) {
+		ViewClassIndex index = new ViewClassIndex(getViewPackages(), TextReaderSitemapProvider.class.getClassLoader());
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(viewNames);
+		for (int i = 0; i < nodes.size(); i++) {
+			String viewName = viewNames.get(i);
+			ViewClassIndex.Resolution resolution = resolutions.get(viewName);
+			invalidViewClasses.addAll(resolution.getInvalidViewClasses());
+			if (resolution.getViewClass() != null) {
+				nodes.get(i).setViewClass(resolution.getViewClass());
+			}
+			if (!resolution.isDeclared()) {
+				undeclaredViewClasses.add(viewName);
+			}
 		}
-		if (viewClass == null) {
-			undeclaredViewClasses.add(viewName);
-		}
-
 	}
 
 	//
@@ -737,31 +754,47 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 	// }
 
 	/**
-	 * process a line of text from the file into the appropriate section
+	 * process a line of text from the file into the appropriate section. Comments, blank lines and section headings
+	 * are recognised from the first character of the line which is not whitespace, and map lines are passed to the
+	 * {@link MapLineReader} as they are, so neither is copied. Only the lines of the other sections, of which there are
+	 * few, are kept, with their whitespace removed.
 	 * 
 	 * @param line
 	 */
 	private void divideIntoSections(String line, int linenum) {
-		String strippedLine = StringUtils.deleteWhitespace(line);
-		if (strippedLine.startsWith("#")) {
-			commentLines++;
-			return;
+		int first = 0;
+		while ((first < line.length()) && Character.isWhitespace(line.charAt(first))) {
+			first++;
 		}
-		if (Strings.isNullOrEmpty(strippedLine)) {
+		if (first == line.length()) {
 			blankLines++;
 			return;
 		}
-		if (strippedLine.startsWith("[")) {
-			if ((!strippedLine.endsWith("]"))) {
+		char c = line.charAt(first);
+		if (c == '#') {
+			commentLines++;
+			return;
+		}
+		if (c == '[') {
+			int last = line.length() - 1;
+			while (Character.isWhitespace(line.charAt(last))) {
+				last--;
+			}
+			if ((last == first) || (line.charAt(last) != ']')) {
 				log.warn("section requires closing ']' at line " + linenum);
 			} else {
-				String sectionName = strippedLine.substring(1, strippedLine.length() - 1);
+				String sectionName = line.substring(first + 1, last).trim();
 
 				List<String> section = new ArrayList<>();
 				try {
 					SectionName key = SectionName.valueOf(sectionName);
 					currentSection = key;
 					sections.put(key, section);
+					if (key == SectionName.map) {
+						mapRecords.clear();
+						mapLineIndex = 1;
+						mapIndent = 0;
+					}
 				} catch (IllegalArgumentException iae) {
 					log.warn(
 							"Invalid section '{}' in site map file, this section has been ignored. Only sections {} are allowed.",
@@ -772,9 +805,19 @@ public class TextReaderSitemapProvider implements SitemapProvider {
 			return;
 		}
 
+		// map lines are tokenised straight away rather than held as text
+		if (currentSection == SectionName.map) {
+			MapLineRecord lineRecord = mapLineReader.processLine(mapLineIndex, line, syntaxErrors, indentationErrors,
+					mapIndent);
+			mapRecords.add(lineRecord);
+			mapIndent = lineRecord.getIndentLevel();
+			mapLineIndex++;
+			return;
+		}
+
 		List<String> section = sections.get(currentSection);
 		if (section != null) {
-			section.add(strippedLine);
+			section.add(StringUtils.deleteWhitespace(line));
 		}
 
 	}
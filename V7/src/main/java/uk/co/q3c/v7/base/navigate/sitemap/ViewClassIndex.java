@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.view.IndexedView;
+import uk.co.q3c.v7.base.view.V7View;
+import uk.co.q3c.v7.base.view.ViewIndexProcessor;
+
+/**
+ * Resolves view names from the sitemap to {@link V7View} classes, for a given list of view packages. The names of the
+ * classes in each package (and its sub-packages) are read from the classpath once, so that most of the candidate
+ * names, which do not exist, are rejected with a hash lookup instead of a failed {@link Class#forName(String)}. Only
+ * names which are known to exist are loaded, and that is done in parallel when there are enough of them.
+ * <p>
+ * If a package cannot be listed (for example because it is held in a form other than a directory or jar), every
+ * candidate in that package is tried with {@link Class#forName(String)}, as it would be without the index.
+ * <p>
+ * Views annotated with {@link IndexedView} are listed in the view index generated at compile time by
+ * {@link ViewIndexProcessor}. The packages are still tried in order, but a candidate found in the view index is loaded
+ * without listing its package, so a package is listed only when it is needed for a candidate which is not in the view
+ * index.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class ViewClassIndex {
+	private static Logger log = LoggerFactory.getLogger(ViewClassIndex.class);
+
+	/**
+	 * The outcome of resolving a single view name
+	 */
+	public static class Resolution {
+		private final Class<? extends V7View> viewClass;
+		private final List<String> invalidViewClasses;
+		private final boolean declared;
+
+		Resolution(Class<? extends V7View> viewClass, List<String> invalidViewClasses, boolean declared) {
+			super();
+			this.viewClass = viewClass;
+			this.invalidViewClasses = invalidViewClasses;
+			this.declared = declared;
+		}
+
+		/**
+		 * The view class, or null if no valid view class was found
+		 * 
+		 * @return
+		 */
+		public Class<? extends V7View> getViewClass() {
+			return viewClass;
+		}
+
+		/**
+		 * The fully qualified names of classes which were found, but which do not implement {@link V7View}
+		 * 
+		 * @return
+		 */
+		public List<String> getInvalidViewClasses() {
+			return invalidViewClasses;
+		}
+
+		/**
+		 * True if a class of this name was found in any of the packages, whether or not it is a valid view
+		 * 
+		 * @return
+		 */
+		public boolean isDeclared() {
+			return declared;
+		}
+	}
+
+	// below this number of names, the cost of using threads outweighs the benefit
+	private static final int PARALLEL_THRESHOLD = 64;
+
+	private final List<String> packages;
+	private final ClassLoader classLoader;
+	// package -> names of all the classes in it and its sub-packages, null if the package could not be listed
+	private final Map<String, Set<String>> classNames = new HashMap<>();
+	// classes from the view index generated at compile time
+	private final Set<String> indexedViews;
+
+	public ViewClassIndex(List<String> packages, ClassLoader classLoader) {
+		super();
+		this.packages = packages;
+		this.classLoader = classLoader;
+		this.indexedViews = readViewIndex();
+	}
+
+	/**
+	 * Resolves each of {@code viewNames}. Names are relative to the view packages, and may include a sub-package (for
+	 * example 'subview.TransferView'). Each package is tried in the order given, and the first class which implements
+	 * {@link V7View} is used.
+	 * 
+	 * @param viewNames
+	 * @return a map of view name to its {@link Resolution}
+	 */
+	public Map<String, Resolution> resolve(Collection<String> viewNames) {
+		Set<String> distinctNames = new LinkedHashSet<>(viewNames);
+		Map<String, Resolution> resolutions = new HashMap<>();
+		int threads = Runtime.getRuntime().availableProcessors();
+		if ((threads < 2) || (distinctNames.size() < PARALLEL_THRESHOLD)) {
+			for (String viewName : distinctNames) {
+				resolutions.put(viewName, resolve(viewName));
+			}
+			return resolutions;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Map<String, Future<Resolution>> futures = new HashMap<>();
+			for (final String viewName : distinctNames) {
+				futures.put(viewName, executor.submit(new Callable<Resolution>() {
+
+					@Override
+					public Resolution call() {
+						return resolve(viewName);
+					}
+				}));
+			}
+			for (Map.Entry<String, Future<Resolution>> entry : futures.entrySet()) {
+				resolutions.put(entry.getKey(), entry.getValue().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SiteMapException("Interrupted while resolving view classes");
+		} catch (ExecutionException e) {
+			throw new SiteMapException("Unable to resolve view classes: " + e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		return resolutions;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Resolution resolve(String viewName) {
+		List<String> invalid = new ArrayList<>();
+		boolean declared = false;
+		for (String pkg : packages) {
+			String fullViewName = pkg + "." + viewName;
+			// an indexed view is known to exist, so there is no need to list its package
+			if (!indexedViews.contains(fullViewName)) {
+				Set<String> names = classNames(pkg);
+				if ((names != null) && (!names.contains(fullViewName))) {
+					continue;
+				}
+			}
+			try {
+				Class<?> viewClass = Class.forName(fullViewName, false, classLoader);
+				declared = true;
+				if (V7View.class.isAssignableFrom(viewClass)) {
+					return new Resolution((Class<? extends V7View>) viewClass, invalid, true);
+				}
+				invalid.add(fullViewName);
+			} catch (ClassNotFoundException e) {
+				// only possible if the package could not be listed, or the view index is out of date
+				log.debug("{} could not be loaded", fullViewName);
+			}
+		}
+		return new Resolution(null, invalid, declared);
+	}
+
+	/**
+	 * Returns true if {@code className} is in the view index
+	 * 
+	 * @param className
+	 * @return
+	 */
+	boolean isIndexed(String className) {
+		return indexedViews.contains(className);
+	}
+
+	private Set<String> readViewIndex() {
+		Set<String> views = new HashSet<>();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(ViewIndexProcessor.INDEX_RESOURCE);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(),
+						StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (!line.isEmpty()) {
+							views.add(line);
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Unable to read the view index, view packages will be searched instead", e);
+		}
+		return views;
+	}
+
+	/**
+	 * Lists {@code pkg} the first time it is needed. May be called from more than one thread by
+	 * {@link #resolve(Collection)}
+	 * 
+	 * @param pkg
+	 * @return
+	 */
+	private synchronized Set<String> classNames(String pkg) {
+		if (!classNames.containsKey(pkg)) {
+			classNames.put(pkg, listClasses(pkg));
+		}
+		return classNames.get(pkg);
+	}
+
+	private Set<String> listClasses(String pkg) {
+		String path = pkg.replace('.', '/');
+		Set<String> names = new HashSet<>();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(path);
+			if (!urls.hasMoreElements()) {
+				// a jar may not have entries for its directories, so this does not prove the package is empty
+				log.debug("View package {} not found on the classpath, classes will be looked up by name", pkg);
+				return null;
+			}
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				if ("file".equals(url.getProtocol())) {
+					listDirectory(new File(URLDecoder.decode(url.getPath(), "UTF-8")), pkg, names);
+				} else if ("jar".equals(url.getProtocol())) {
+					listJar(url, path, names);
+				} else {
+					log.debug("Unable to list view package {} from {}, classes will be looked up by name", pkg, url);
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			log.debug("Unable to list view package {}, classes will be looked up by name", pkg, e);
+			return null;
+		}
+		return names;
+	}
+
+	private void listDirectory(File dir, String pkg, Set<String> names) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String fileName = file.getName();
+			if (file.isDirectory()) {
+				listDirectory(file, pkg + "." + fileName, names);
+			} else if (fileName.endsWith(".class")) {
+				names.add(pkg + "." + fileName.substring(0, fileName.length() - 6));
+			}
+		}
+	}
+
+	private void listJar(URL url, String path, Set<String> names) throws IOException {
+		URLConnection connection = url.openConnection();
+		if (!(connection instanceof JarURLConnection)) {
+			throw new IOException("Not a jar: " + url);
+		}
+		JarFile jar = ((JarURLConnection) connection).getJarFile();
+		Enumeration<JarEntry> entries = jar.entries();
+		String prefix = path + "/";
+		while (entries.hasMoreElements()) {
+			String entryName = entries.nextElement().getName();
+			if (entryName.startsWith(prefix) && entryName.endsWith(".class")) {
+				names.add(entryName.substring(0, entryName.length() - 6).replace('/', '.'));
+			}
+		}
+	}
+}
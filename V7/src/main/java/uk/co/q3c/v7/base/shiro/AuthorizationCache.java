@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.shiro.subject.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.navigate.NavigationState;
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+
+/**
+ * A bounded cache of the decisions on whether a principal is permitted to view a virtual page, so that once a decision
+ * has been made, checking it again when navigating is a hash lookup, rather than the construction of a
+ * {@link URIViewPermission} and an authorization by the realm(s). Navigation structures, which need the decisions for
+ * many pages at once, use {@link BatchPermissionEvaluator} instead.
+ * <p>
+ * The cache is shared by all sessions, so it is built from concurrent maps and takes no lock of its own: the decisions
+ * are held in a map for each principal (the primary principal of the Subject), keyed on the virtual page, and those
+ * maps are held in a map keyed on the principal. A Subject without a principal is not cached, as Shiro denies it every
+ * permission without consulting the realms.
+ * <p>
+ * The cache holds decisions for up to {@link #getMaxPrincipals()} principals, and up to {@link #getMaxPages()} pages
+ * for each. When a new principal would exceed the first limit, the decisions of another principal are discarded, and
+ * when a principal reaches the second, its decisions are discarded and collected afresh. The number of pages is
+ * normally limited by the sitemap anyway.
+ * <p>
+ * The decisions for a principal are discarded by {@link V7SecurityManager} when the principal logs in or out, which
+ * removes a single entry, and does not affect any other principal. Anything else which changes the roles or
+ * permissions of a principal - a realm reading an updated user store, for example - must call
+ * {@link #invalidate(Object)}, or {@link #invalidateAll()}. A decision being made while its principal is invalidated
+ * is not kept, as it is added to the map which the invalidation removed.
+ * <p>
+ * The realms grant permissions from the roots of the {@link Sitemap}, so all decisions are discarded when the Sitemap
+ * is reloaded, which is detected in the same way as by {@link DefaultRealm}: the Sitemap is no longer the instance
+ * the decisions were made for.
+ * <p>
+ * To help size the cache, it counts hits and misses.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class AuthorizationCache {
+	private static Logger log = LoggerFactory.getLogger(AuthorizationCache.class);
+
+	public static final int DEFAULT_MAX_PRINCIPALS = 1000;
+	public static final int DEFAULT_MAX_PAGES = 100;
+
+	private final URIPermissionFactory uriPermissionFactory;
+	private final Provider<Sitemap> sitemapPro;
+	// the Sitemap the decisions held were made for
+	private volatile Sitemap decidedFor;
+	private final ConcurrentMap<Object, ConcurrentMap<String, Boolean>> principals = new ConcurrentHashMap<>();
+	private final int maxPrincipals;
+	private final int maxPages;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	@Inject
+	public AuthorizationCache(URIPermissionFactory uriPermissionFactory, Provider<Sitemap> sitemapPro) {
+		this(uriPermissionFactory, sitemapPro, DEFAULT_MAX_PRINCIPALS, DEFAULT_MAX_PAGES);
+	}
+
+	public AuthorizationCache(URIPermissionFactory uriPermissionFactory, Provider<Sitemap> sitemapPro,
+			int maxPrincipals, int maxPages) {
+		super();
+		this.uriPermissionFactory = uriPermissionFactory;
+		this.sitemapPro = sitemapPro;
+		this.maxPrincipals = maxPrincipals;
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * Returns true if {@code subject} is permitted to view the virtual page of {@code navigationState}
+	 * 
+	 * @param subject
+	 * @param navigationState
+	 * @return
+	 */
+	public boolean isPermitted(Subject subject, NavigationState navigationState) {
+		return isPermitted(subject, navigationState.getVirtualPage(), navigationState);
+	}
+
+	/**
+	 * Returns true if {@code subject} is permitted to view {@code virtualPage}, which must be a URI without parameters,
+	 * such as the URI of a sitemap node
+	 * 
+	 * @param subject
+	 * @param virtualPage
+	 * @return
+	 */
+	public boolean isPermitted(Subject subject, String virtualPage) {
+		return isPermitted(subject, virtualPage, null);
+	}
+
+	private boolean isPermitted(Subject subject, String virtualPage, NavigationState navigationState) {
+		Object principal = subject.getPrincipal();
+		if (principal == null) {
+			return subject.isPermitted(permission(virtualPage, navigationState));
+		}
+		checkSitemap();
+		ConcurrentMap<String, Boolean> decisions = decisionsFor(principal);
+		Boolean decision = decisions.get(virtualPage);
+		if (decision != null) {
+			hits.incrementAndGet();
+			return decision;
+		}
+		misses.incrementAndGet();
+		boolean permitted = subject.isPermitted(permission(virtualPage, navigationState));
+		if (decisions.size() >= maxPages) {
+			log.debug("decisions for {} reached the limit of {} pages, discarded", principal, maxPages);
+			decisions.clear();
+		}
+		decisions.put(virtualPage, permitted);
+		return permitted;
+	}
+
+	/**
+	 * Discards all decisions if the {@link Sitemap} has been reloaded since they were made. A decision being made
+	 * while they are discarded is added to a map which has been removed, so is not kept
+	 */
+	private void checkSitemap() {
+		Sitemap sitemap = sitemapPro.get();
+		if (sitemap != decidedFor) {
+			log.debug("Sitemap has been reloaded, all decisions discarded");
+			principals.clear();
+			decidedFor = sitemap;
+		}
+	}
+
+	private ConcurrentMap<String, Boolean> decisionsFor(Object principal) {
+		ConcurrentMap<String, Boolean> decisions = principals.get(principal);
+		if (decisions != null) {
+			return decisions;
+		}
+		if (principals.size() >= maxPrincipals) {
+			Iterator<Object> iterator = principals.keySet().iterator();
+			if (iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		decisions = new ConcurrentHashMap<>();
+		ConcurrentMap<String, Boolean> existing = principals.putIfAbsent(principal, decisions);
+		return (existing == null) ? decisions : existing;
+	}
+
+	private URIViewPermission permission(String virtualPage, NavigationState navigationState) {
+		return (navigationState == null) ? uriPermissionFactory.createViewPermission(virtualPage)
+				: uriPermissionFactory.createViewPermission(navigationState);
+	}
+
+	/**
+	 * Discards the decisions for {@code principal}. Does nothing if {@code principal} is null
+	 * 
+	 * @param principal
+	 */
+	public void invalidate(Object principal) {
+		if (principal == null) {
+			return;
+		}
+		principals.remove(principal);
+	}
+
+	/**
+	 * Discards all decisions
+	 */
+	public void invalidateAll() {
+		principals.clear();
+	}
+
+	/**
+	 * The number of decisions currently held
+	 * 
+	 * @return
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<String, Boolean> decisions : principals.values()) {
+			size += decisions.size();
+		}
+		return size;
+	}
+
+	public int getMaxPrincipals() {
+		return maxPrincipals;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * The proportion of checks answered from the cache, or 0 if there have been none
+	 * 
+	 * @return
+	 */
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return (total == 0) ? 0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Sets the hit and miss counts to zero
+	 */
+	public void resetCounts() {
+		hits.set(0);
+		misses.set(0);
+	}
+}
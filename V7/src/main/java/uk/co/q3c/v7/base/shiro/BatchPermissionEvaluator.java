@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+
+import org.apache.shiro.authz.Authorizer;
+import org.apache.shiro.authz.ModularRealmAuthorizer;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.mgt.AuthorizingSecurityManager;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
+
+/**
+ * Decides which of a set of {@link Sitemap} nodes a Subject may view, for rendering a navigation structure such as a
+ * tree or menu. The result is a BitSet, with the bit for each permitted node set at the node's id.
+ * <p>
+ * The nodes are evaluated one level of the map at a time, and the permissions for a whole level are passed to each
+ * realm in one call, so that a realm builds its AuthorizationInfo once for the level rather than once for each node.
+ * The realms are called directly, through the {@link ModularRealmAuthorizer} of the Subject's SecurityManager, so the
+ * Subject is not resolved again for each node. If the Subject or its SecurityManager is of some other kind, the
+ * permissions of each level are checked through {@link Subject#isPermitted(List)}.
+ * <p>
+ * Like a navigation tree, a node is only permitted if its parent is, where the parent is one of the nodes being
+ * evaluated. The descendants of a denied node are therefore not checked at all. Nor are the descendants of a node
+ * covered by a wildcard grant (one for which the Subject has permission to view the page with ":*" appended), nor those
+ * in the public branch of the map, all of which are permitted without being checked.
+ * <p>
+ * The {@link Sitemap} the nodes belong to is passed with them, because the result is indexed by node id, and the ids
+ * of one version of a map mean nothing in another (see
+ * {@link uk.co.q3c.v7.base.navigate.sitemap.ReloadingSitemapProvider}).
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class BatchPermissionEvaluator {
+	private static Logger log = LoggerFactory.getLogger(BatchPermissionEvaluator.class);
+
+	private final URIPermissionFactory uriPermissionFactory;
+
+	@Inject
+	public BatchPermissionEvaluator(URIPermissionFactory uriPermissionFactory) {
+		super();
+		this.uriPermissionFactory = uriPermissionFactory;
+	}
+
+	/**
+	 * Returns the nodes of {@code nodes} which {@code subject} may view, as a BitSet with the bit for each permitted
+	 * node set at the node's id
+	 * 
+	 * @param subject
+	 * @param sitemap
+	 *            the map the nodes belong to
+	 * @param nodes
+	 * @return
+	 */
+	public BitSet permitted(Subject subject, Sitemap sitemap, Collection<SitemapNode> nodes) {
+		BitSet requested = new BitSet();
+		for (SitemapNode node : nodes) {
+			requested.set(node.getId());
+		}
+		// group by depth, and note which nodes have children to be evaluated
+		Map<Integer, List<SitemapNode>> levels = new TreeMap<>();
+		BitSet hasChildren = new BitSet();
+		for (SitemapNode node : nodes) {
+			Integer depth = sitemap.depth(node);
+			List<SitemapNode> level = levels.get(depth);
+			if (level == null) {
+				level = new ArrayList<>();
+				levels.put(depth, level);
+			}
+			level.add(node);
+			SitemapNode parent = sitemap.getParent(node);
+			if ((parent != null) && requested.get(parent.getId())) {
+				hasChildren.set(parent.getId());
+			}
+		}
+
+		BitSet permitted = new BitSet();
+		BitSet covered = new BitSet();
+		int checks = 0;
+		for (List<SitemapNode> level : levels.values()) {
+			List<SitemapNode> checked = new ArrayList<>();
+			List<Permission> permissions = new ArrayList<>();
+			for (SitemapNode node : level) {
+				int id = node.getId();
+				SitemapNode parent = sitemap.getParent(node);
+				if ((parent != null) && requested.get(parent.getId())) {
+					if (!permitted.get(parent.getId())) {
+						continue;
+					}
+					if (covered.get(parent.getId())) {
+						permitted.set(id);
+						covered.set(id);
+						continue;
+					}
+				}
+				if (sitemap.isPublicPage(node)) {
+					permitted.set(id);
+					covered.set(id);
+					continue;
+				}
+				String uri = sitemap.uri(node);
+				checked.add(node);
+				permissions.add(uriPermissionFactory.createViewPermission(uri));
+				if (hasChildren.get(id)) {
+					permissions.add(uriPermissionFactory.createViewPermission(uri, true));
+				}
+			}
+			if (permissions.isEmpty()) {
+				continue;
+			}
+			checks += permissions.size();
+			boolean[] results = isPermitted(subject, permissions);
+			int index = 0;
+			for (SitemapNode node : checked) {
+				int id = node.getId();
+				if (results[index++]) {
+					permitted.set(id);
+				}
+				if (hasChildren.get(id) && results[index++]) {
+					covered.set(id);
+				}
+			}
+		}
+		log.debug("{} of {} nodes permitted, with {} permission checks", new Object[] { permitted.cardinality(),
+				nodes.size(), checks });
+		return permitted;
+	}
+
+	/**
+	 * Returns the nodes of the subtree of {@code root}, including {@code root} itself, which {@code subject} may view
+	 * 
+	 * @see #permitted(Subject, Sitemap, Collection)
+	 * @param subject
+	 * @param sitemap
+	 * @param root
+	 * @return
+	 */
+	public BitSet permittedSubtree(Subject subject, Sitemap sitemap, SitemapNode root) {
+		return permitted(subject, sitemap, sitemap.getSubtreeNodes(root));
+	}
+
+	private boolean[] isPermitted(Subject subject, List<Permission> permissions) {
+		if (subject instanceof DelegatingSubject) {
+			SecurityManager securityManager = ((DelegatingSubject) subject).getSecurityManager();
+			if (securityManager instanceof AuthorizingSecurityManager) {
+				Authorizer authorizer = ((AuthorizingSecurityManager) securityManager).getAuthorizer();
+				if (authorizer instanceof ModularRealmAuthorizer) {
+					return isPermitted(((ModularRealmAuthorizer) authorizer).getRealms(), subject.getPrincipals(),
+							permissions);
+				}
+			}
+		}
+		return subject.isPermitted(permissions);
+	}
+
+	/**
+	 * A permission is granted if any realm grants it, as with {@link ModularRealmAuthorizer}
+	 */
+	private boolean[] isPermitted(Collection<Realm> realms, PrincipalCollection principals, List<Permission> permissions) {
+		boolean[] results = new boolean[permissions.size()];
+		if ((realms == null) || (principals == null) || principals.isEmpty()) {
+			return results;
+		}
+		for (Realm realm : realms) {
+			if (realm instanceof Authorizer) {
+				boolean[] realmResults = ((Authorizer) realm).isPermitted(principals, permissions);
+				for (int i = 0; i < results.length; i++) {
+					results[i] = results[i] || realmResults[i];
+				}
+			}
+		}
+		return results;
+	}
+}
@@ -12,89 +12,225 @@
  */
 package uk.co.q3c.v7.base.shiro;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Singleton;
 
 import org.apache.shiro.authc.ExcessiveAttemptsException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 
+/**
+ * Records login attempts in a concurrent map of username to a small entry for each user, so that logins on many
+ * request threads can be recorded at once without corrupting it. Each entry is locked on its own, so threads only
+ * contend when they are recording attempts for the same user.
+ * <p>
+ * Failed attempts are counted in a sliding window (see {@link #setFailureWindow(long)}): only the failures within the
+ * window count towards the maximum, and no more failures than the maximum are ever held. Successful attempts are
+ * aggregated into a count and the time of the latest one. An entry which has not been used for longer than the idle
+ * expiry (see {@link #setIdleExpiry(long)}) is discarded, by a sweep made at most once every tenth of the expiry, so
+ * the memory used is bounded by the number of users active within the expiry, rather than by the uptime.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
 @Singleton
 public class DefaultLoginAttemptLog implements LoginAttemptLog {
 
-	private int maxAttempts = 3;
-	private final Map<String, Integer> unsuccessful = new TreeMap<>();
-	private final Map<String, List<DateTime>> successful = new TreeMap<>();
-	private final Map<String, DateTime> latestSuccessful = new TreeMap<>();
+	public static final long DEFAULT_FAILURE_WINDOW = TimeUnit.MINUTES.toMillis(15);
+	public static final long DEFAULT_IDLE_EXPIRY = TimeUnit.HOURS.toMillis(24);
+
+	private static class Entry {
+		// times of the failed attempts, oldest first
+		private final ArrayDeque<Long> failures = new ArrayDeque<>();
+		private int successes;
+		private long lastSuccess;
+		private long lastUsed;
+		// set when the entry is swept, so that it is not updated after it has left the map
+		private boolean expired;
+
+		private void pruneFailures(long now, long window) {
+			while (!failures.isEmpty() && (now - failures.peekFirst() >= window)) {
+				failures.removeFirst();
+			}
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong lastSweep = new AtomicLong(DateTimeUtils.currentTimeMillis());
+	private volatile int maxAttempts = 3;
+	private volatile long failureWindow = DEFAULT_FAILURE_WINDOW;
+	private volatile long idleExpiry = DEFAULT_IDLE_EXPIRY;
 
 	@Override
 	public void setMaximumAttempts(int maxAttempts) {
 		this.maxAttempts = maxAttempts;
 	}
 
+	/**
+	 * Sets the period in milliseconds within which failed attempts are counted towards the maximum
+	 * 
+	 * @param failureWindow
+	 */
+	public void setFailureWindow(long failureWindow) {
+		this.failureWindow = failureWindow;
+	}
+
+	public long getFailureWindow() {
+		return failureWindow;
+	}
+
+	/**
+	 * Sets the period in milliseconds after which the record of a user who has made no attempts is discarded
+	 * 
+	 * @param idleExpiry
+	 */
+	public void setIdleExpiry(long idleExpiry) {
+		this.idleExpiry = idleExpiry;
+	}
+
+	public long getIdleExpiry() {
+		return idleExpiry;
+	}
+
 	@Override
 	public void recordSuccessfulAttempt(UsernamePasswordToken upToken) {
-		String username = upToken.getUsername();
-		List<DateTime> list = successful.get(username);
-		if (list == null) {
-			list = new ArrayList<>();
-			successful.put(username, list);
-
+		long now = DateTimeUtils.currentTimeMillis();
+		while (true) {
+			Entry entry = entry(upToken.getUsername());
+			synchronized (entry) {
+				if (entry.expired) {
+					continue;
+				}
+				entry.successes++;
+				entry.lastSuccess = now;
+				entry.lastUsed = now;
+				break;
+			}
 		}
-		DateTime now = DateTime.now();
-		latestSuccessful.put(username, now);
-		list.add(now);
+		sweep(now);
 	}
 
 	/**
-	 * records a failed login attempt and throws a ExcessiveAttemptsException if the number of attempts exceeds
-	 * {@link #maxAttempts}
+	 * records a failed login attempt and throws a ExcessiveAttemptsException if the number of attempts within the
+	 * failure window exceeds {@link #maxAttempts}
 	 * 
 	 * @see uk.co.q3c.v7.base.shiro.LoginAttemptLog#recordFailedAttempt(org.apache.shiro.authc.UsernamePasswordToken)
 	 */
 	@Override
 	public void recordFailedAttempt(UsernamePasswordToken upToken) {
-		Integer record = unsuccessful.get(upToken.getUsername());
-		int count = 0;
-		if (record == null) {
-			count = 0;
-		} else {
-			count = record;
+		long now = DateTimeUtils.currentTimeMillis();
+		sweep(now);
+		while (true) {
+			Entry entry = entry(upToken.getUsername());
+			synchronized (entry) {
+				if (entry.expired) {
+					continue;
+				}
+				entry.lastUsed = now;
+				entry.pruneFailures(now, failureWindow);
+				if (entry.failures.size() + 1 >= maxAttempts) {
+					throw new ExcessiveAttemptsException("Login failed after maximum attempts");
+				}
+				entry.failures.addLast(now);
+				return;
+			}
 		}
-		count++;
-		if (count >= maxAttempts) {
-			throw new ExcessiveAttemptsException("Login failed after maximum attempts");
-		}
-		unsuccessful.put(upToken.getUsername(), new Integer(count));
 	}
 
 	@Override
 	public int failedAttempts(String username) {
-		Integer record = unsuccessful.get(username);
-		if (record == null) {
+		Entry entry = entries.get(username);
+		if (entry == null) {
 			return 0;
-		} else {
-			return record;
+		}
+		synchronized (entry) {
+			entry.pruneFailures(DateTimeUtils.currentTimeMillis(), failureWindow);
+			return entry.failures.size();
 		}
 	}
 
 	@Override
 	public DateTime dateOfLastSuccess(String username) {
-		return latestSuccessful.get(username);
+		Entry entry = entries.get(username);
+		if (entry == null) {
+			return null;
+		}
+		synchronized (entry) {
+			return (entry.successes == 0) ? null : new DateTime(entry.lastSuccess);
+		}
 	}
 
 	@Override
 	public int successfulAttempts(String username) {
-		return successful.get(username).size();
+		Entry entry = entries.get(username);
+		if (entry == null) {
+			return 0;
+		}
+		synchronized (entry) {
+			return entry.successes;
+		}
 	}
 
 	@Override
 	public void clearUnsuccessful(String username) {
-		unsuccessful.remove(username);
+		Entry entry = entries.get(username);
+		if (entry != null) {
+			synchronized (entry) {
+				entry.failures.clear();
+			}
+		}
+	}
+
+	/**
+	 * The number of users for whom attempts are currently held
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private Entry entry(String username) {
+		Entry entry = entries.get(username);
+		if (entry == null) {
+			Entry created = new Entry();
+			entry = entries.putIfAbsent(username, created);
+			if (entry == null) {
+				entry = created;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Discards the entries which have been idle for longer than the idle expiry, and have no failures left in the
+	 * failure window, if no sweep has been made for a tenth of the expiry. Only one thread sweeps at a time, and the
+	 * others carry on without waiting for it.
+	 */
+	private void sweep(long now) {
+		long last = lastSweep.get();
+		if ((now - last < idleExpiry / 10) || !lastSweep.compareAndSet(last, now)) {
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			synchronized (entry) {
+				entry.pruneFailures(now, failureWindow);
+				if ((now - entry.lastUsed >= idleExpiry) && entry.failures.isEmpty()) {
+					entry.expired = true;
+					iterator.remove();
+				}
+			}
+		}
 	}
 
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+/**
+ * A {@link LoginAuditLog} which holds published records in a ring buffer, pre-allocated when the log is constructed,
+ * and has a single background writer which drains them in batches into a {@link RollingAuditFile} in the directory
+ * given by auditDirectory in V7.ini (see {@link V7Ini#optionAuditDirectory()}). Each record is written as a line of
+ * time (ISO 8601, UTC), event and user name, separated by tabs.
+ * <p>
+ * Publishers claim a slot with a compare-and-set, fill it and mark it published, so {@link #publish(Event, String)}
+ * never waits for a lock or for the disk. If the writer falls so far behind that the buffer is full, the record is
+ * dropped and counted (see {@link #getDropped()}) rather than holding up the login. The writer wakes every
+ * {@link #getFlushInterval()} milliseconds, or sooner once the buffer is half full, and writes everything published
+ * since it last woke as a single append.
+ * <p>
+ * The writer is started by {@link #start()}, which the injected instance calls itself, registering {@link #close()}
+ * with the {@link ShutdownRegistry} so that whatever remains in the buffer is written out when the application is
+ * stopped. {@link #close()} waits for any publisher which has already claimed a slot to finish filling it, so that
+ * every record accepted is written.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Singleton
+public class DefaultLoginAuditLog implements LoginAuditLog {
+	private static Logger log = LoggerFactory.getLogger(DefaultLoginAuditLog.class);
+	public static final String FILE_NAME = "login-audit.log";
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+	public static final int DEFAULT_FLUSH_INTERVAL = 200;
+	private static final int MAX_BATCH = 64 * 1024;
+	private static final long CLOSE_TIMEOUT = 5000;
+	private static final DateTimeFormatter timeFormat = ISODateTimeFormat.dateTime().withZoneUTC();
+
+	private static class Record {
+		// the sequence of the record held, set last, which publishes it to the writer
+		private volatile long sequence = -1;
+		private long time;
+		private Event event;
+		private String username;
+	}
+
+	private final Record[] records;
+	private final int mask;
+	// the next sequence to be claimed
+	private final AtomicLong next = new AtomicLong();
+	// every sequence before this has been taken by the writer, and its slot may be reused
+	private volatile long consumed;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final RollingAuditFile file;
+	private final StringBuilder batch = new StringBuilder();
+	private volatile int flushInterval = DEFAULT_FLUSH_INTERVAL;
+	// the number of publishers which may have claimed a slot they have not yet filled
+	private final AtomicInteger publishing = new AtomicInteger();
+	private volatile boolean closed;
+	// set once no more records can be published, which tells the writer to drain for the last time and stop
+	private volatile boolean stopping;
+	private Thread writer;
+
+	@Inject
+	protected DefaultLoginAuditLog(V7Ini ini, ShutdownRegistry shutdownRegistry) {
+		this(ini.optionAuditDirectory(), DEFAULT_CAPACITY);
+		start();
+		shutdownRegistry.register(new Closeable() {
+
+			@Override
+			public void close() {
+				DefaultLoginAuditLog.this.close();
+			}
+		});
+	}
+
+	/**
+	 * Creates a log with a buffer of at least {@code capacity} records, rounded up to a power of two. The writer is
+	 * not started until {@link #start()} is called
+	 * 
+	 * @param directory
+	 * @param capacity
+	 */
+	protected DefaultLoginAuditLog(File directory, int capacity) {
+		super();
+		int size = (capacity < 2) ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		records = new Record[size];
+		for (int i = 0; i < size; i++) {
+			records[i] = new Record();
+		}
+		mask = size - 1;
+		file = new RollingAuditFile(directory, FILE_NAME, DEFAULT_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Starts the background writer, if it has not already been started
+	 */
+	public synchronized void start() {
+		if ((writer != null) || closed) {
+			return;
+		}
+		writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				write();
+			}
+		}, "V7 login audit writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public boolean publish(Event event, String username) {
+		// counted before closed is checked, so that close() either stops this publisher or waits for it
+		publishing.incrementAndGet();
+		try {
+			long sequence;
+			do {
+				sequence = next.get();
+				if (closed || (sequence - consumed >= records.length)) {
+					dropped.incrementAndGet();
+					return false;
+				}
+			} while (!next.compareAndSet(sequence, sequence + 1));
+
+			Record record = records[(int) (sequence & mask)];
+			record.time = DateTimeUtils.currentTimeMillis();
+			record.event = event;
+			record.username = username;
+			record.sequence = sequence;
+
+			if (sequence - consumed == records.length / 2) {
+				Thread w = writer;
+				if (w != null) {
+					LockSupport.unpark(w);
+				}
+			}
+			return true;
+		} finally {
+			publishing.decrementAndGet();
+		}
+	}
+
+	private void write() {
+		while (true) {
+			boolean last = stopping;
+			drain();
+			if (last) {
+				break;
+			}
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushInterval));
+		}
+		closeFile();
+	}
+
+	/**
+	 * Takes every record published in sequence since the last drain, and appends them to the file, in batches of up
+	 * to about 64K characters. Called only by the writer, or by {@link #close()} if the writer was
+	 * never started
+	 * 
+	 * @return the number of records taken
+	 */
+	protected synchronized int drain() {
+		long sequence = consumed;
+		int taken = 0;
+		int count = 0;
+		while (true) {
+			Record record = records[(int) (sequence & mask)];
+			if (record.sequence != sequence) {
+				break;
+			}
+			format(record);
+			record.event = null;
+			record.username = null;
+			sequence++;
+			consumed = sequence;
+			taken++;
+			count++;
+			if (batch.length() >= MAX_BATCH) {
+				flush(count);
+				count = 0;
+			}
+		}
+		flush(count);
+		return taken;
+	}
+
+	private void format(Record record) {
+		batch.append(timeFormat.print(record.time));
+		batch.append('\t');
+		batch.append(record.event);
+		batch.append('\t');
+		String username = record.username;
+		if (username != null) {
+			// a user name must not be able to break, or forge, a line of the audit trail
+			for (int i = 0; i < username.length(); i++) {
+				char c = username.charAt(i);
+				batch.append(Character.isISOControl(c) ? '?' : c);
+			}
+		}
+		batch.append('\n');
+	}
+
+	private void flush(int count) {
+		if (count == 0) {
+			return;
+		}
+		try {
+			file.append(batch.toString());
+			written.addAndGet(count);
+		} catch (IOException e) {
+			log.error("Unable to write " + count + " login audit records to " + file.getFile().getAbsolutePath(), e);
+		}
+		batch.setLength(0);
+	}
+
+	private synchronized void closeFile() {
+		file.close();
+	}
+
+	/**
+	 * Stops accepting records, and waits for the writer to write those already accepted and stop
+	 * 
+	 * @see uk.co.q3c.v7.base.shiro.LoginAuditLog#close()
+	 */
+	@Override
+	public void close() {
+		Thread w;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			w = writer;
+		}
+		// a publisher which got past the check of closed is only ever filling in its slot, so this is brief
+		while (publishing.get() > 0) {
+			Thread.yield();
+		}
+		stopping = true;
+		if (w == null) {
+			drain();
+			closeFile();
+			return;
+		}
+		LockSupport.unpark(w);
+		try {
+			w.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (w.isAlive()) {
+			log.warn("The login audit writer did not finish within {} ms", CLOSE_TIMEOUT);
+		}
+	}
+
+	/**
+	 * The number of records the buffer holds
+	 * 
+	 * @return
+	 */
+	public int getCapacity() {
+		return records.length;
+	}
+
+	/**
+	 * The number of records accepted by {@link #publish(Event, String)}
+	 * 
+	 * @return
+	 */
+	public long getPublished() {
+		return next.get();
+	}
+
+	/**
+	 * The number of records rejected by {@link #publish(Event, String)}, because the buffer was full or the log closed
+	 * 
+	 * @return
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * The number of records successfully appended to the file
+	 * 
+	 * @return
+	 */
+	public long getWritten() {
+		return written.get();
+	}
+
+	/**
+	 * The file currently appended to
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return file.getFile();
+	}
+
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the longest time, in milliseconds, that the writer waits before writing the records published
+	 * 
+	 * @param flushInterval
+	 */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Sets the size in bytes at which the file is rolled over
+	 * 
+	 * @param maxFileSize
+	 */
+	public synchronized void setMaxFileSize(long maxFileSize) {
+		file.setMaxSize(maxFileSize);
+	}
+
+	public synchronized long getMaxFileSize() {
+		return file.getMaxSize();
+	}
+
+}
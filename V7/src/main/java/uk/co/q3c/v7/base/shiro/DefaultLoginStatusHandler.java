@@ -45,14 +45,16 @@ public class DefaultLoginStatusHandler implements LoginStatusHandler {
 	private final SubjectIdentifier subjectIdentifier;
 
 	private final SubjectProvider subjectProvider;
+	private final LoginAuditLog loginAuditLog;
 
 	@Inject
 	protected DefaultLoginStatusHandler(VaadinSessionProvider sessionProvider, SubjectIdentifier subjectIdentifier,
-			SubjectProvider subjectProvider) {
+			SubjectProvider subjectProvider, LoginAuditLog loginAuditLog) {
 		super();
 		this.sessionProvider = sessionProvider;
 		this.subjectIdentifier = subjectIdentifier;
 		this.subjectProvider = subjectProvider;
+		this.loginAuditLog = loginAuditLog;
 	}
 
 	@Override
@@ -75,6 +77,7 @@ public class DefaultLoginStatusHandler implements LoginStatusHandler {
 
 	@Override
 	public void initiateStatusChange() {
+		loginAuditLog.publish(LoginAuditLog.Event.Status_Change, subjectIdentifier.subjectName());
 
 		VaadinSession session = sessionProvider.get();
 		Collection<UI> uIs = session.getUIs();
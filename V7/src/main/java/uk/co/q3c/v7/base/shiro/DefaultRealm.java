@@ -1,6 +1,9 @@
 package uk.co.q3c.v7.base.shiro;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.apache.shiro.authc.AccountException;
 import org.apache.shiro.authc.AuthenticationException;
@@ -11,28 +14,60 @@ import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.cache.MapCache;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.realm.activedirectory.ActiveDirectoryRealm;
 import org.apache.shiro.realm.jdbc.JdbcRealm;
 import org.apache.shiro.realm.ldap.JndiLdapRealm;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
 
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
 
 public class DefaultRealm extends AuthorizingRealm {
 
 	private final LoginAttemptLog loginAttemptLog;
-	private final Sitemap sitemap;
+	private final LoginAuditLog loginAuditLog;
+	private final Provider<Sitemap> sitemapPro;
 	private final URIPermissionFactory permissionFactory;
+	// the map the cached authorization was compiled from
+	private volatile Sitemap authorizedFor;
 
 	@Inject
-	protected DefaultRealm(LoginAttemptLog loginAttemptLog, CredentialsMatcher matcher, Sitemap sitemap,
-			URIPermissionFactory permissionFactory) {
+	protected DefaultRealm(LoginAttemptLog loginAttemptLog, LoginAuditLog loginAuditLog, CredentialsMatcher matcher,
+			Provider<Sitemap> sitemapPro, URIPermissionFactory permissionFactory) {
 		super(matcher);
 		this.loginAttemptLog = loginAttemptLog;
-		this.sitemap = sitemap;
+		this.loginAuditLog = loginAuditLog;
+		this.sitemapPro = sitemapPro;
 		this.permissionFactory = permissionFactory;
-		setCachingEnabled(false);
+		// the compiled authorization is cached per principal, see getAuthorizationInfo
+		setAuthenticationCachingEnabled(false);
+		setAuthorizationCachingEnabled(true);
+		setAuthorizationCache(new BoundedMapCache(getName() + ".authorizationCache",
+				AuthorizationCache.DEFAULT_MAX_PRINCIPALS));
+		setPermissionResolver(new URIPermissionResolver());
+	}
+
+	/**
+	 * A concurrent map cache, which is cleared if it would hold more than {@code capacity} entries, to bound the
+	 * authorization held for principals whose sessions expire without logging out
+	 */
+	private static class BoundedMapCache extends MapCache<Object, AuthorizationInfo> {
+		private final int capacity;
+
+		BoundedMapCache(String name, int capacity) {
+			super(name, new ConcurrentHashMap<Object, AuthorizationInfo>());
+			this.capacity = capacity;
+		}
+
+		@Override
+		public AuthorizationInfo put(Object key, AuthorizationInfo value) {
+			if (size() >= capacity) {
+				clear();
+			}
+			return super.put(key, value);
+		}
 	}
 
 	@Override
@@ -44,7 +79,8 @@ public class DefaultRealm extends AuthorizingRealm {
 	 * This Realm implementation is not expected to be used in a real system, not least because anyone can log in as
 	 * long as they have a password of 'password'! <br>
 	 * <br>
-	 * It does however demonstrate the use of {@link LoginAttemptLog} to track login attempts Authorises all users to
+	 * It does however demonstrate the use of {@link LoginAttemptLog} to track login attempts, and of
+	 * {@link LoginAuditLog} to audit them. Authorises all users to
 	 * access the private pages of the {@link Sitemap}
 	 * 
 	 * @see org.apache.shiro.realm.AuthorizingRealm#doGetAuthorizationInfo(org.apache.shiro.subject.PrincipalCollection)
@@ -62,9 +98,13 @@ public class DefaultRealm extends AuthorizingRealm {
 		String password = String.copyValueOf(upToken.getPassword());
 
 		if (password.equals("password")) {
+			loginAuditLog.publish(LoginAuditLog.Event.Login_Success, username);
 			loginAttemptLog.recordSuccessfulAttempt(upToken);
+			// roles may have changed since the authorization was cached; logout clears it in the same way
+			clearCachedAuthorizationInfo(new SimplePrincipalCollection(username, getName()));
 			return new SimpleAuthenticationInfo(username, password, this.getName());
 		} else {
+			loginAuditLog.publish(LoginAuditLog.Event.Login_Failure, username);
 			loginAttemptLog.recordFailedAttempt(upToken);
 			return null;
 		}
@@ -81,7 +121,9 @@ public class DefaultRealm extends AuthorizingRealm {
 	 * <br>
 	 * You can provide your own Realm implementation by overriding {@link DefaultShiroModule#bindRealms()}<br>
 	 * <br>
-	 * Authorises all users to access the private pages of the {@link Sitemap}
+	 * Authorises all users to access the private pages of the {@link Sitemap}. The URI permissions are compiled into a
+	 * {@link URIPermissionTrie}, which is cached for the principal until it logs in or out, or the {@link Sitemap} is
+	 * reloaded, so that it is compiled once rather than for every permission check
 	 * 
 	 * @see org.apache.shiro.realm.AuthorizingRealm#doGetAuthorizationInfo(org.apache.shiro.subject.PrincipalCollection)
 	 */
@@ -89,11 +131,12 @@ public class DefaultRealm extends AuthorizingRealm {
 	@Override
 	protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
 		SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+		Sitemap sitemap = sitemapPro.get();
 		String privatePermission = "uri:view:" + sitemap.getPrivateRoot() + ":*";
 		URIViewPermission publicPermission = permissionFactory.createViewPermission(sitemap.getPublicRoot(), true);
 		info.addObjectPermission(publicPermission);
 		info.addStringPermission(privatePermission);
-		return info;
+		return URIPermissionTrie.compile(info, getPermissionResolver());
 	}
 
 	@Override
@@ -102,12 +145,18 @@ public class DefaultRealm extends AuthorizingRealm {
 	}
 
 	/**
-	 * This has been made public to enable testing
+	 * This has been made public to enable testing. The cached authorization is discarded if the {@link Sitemap} has
+	 * been reloaded since it was compiled, as the roots it was compiled from may have changed
 	 * 
 	 * @see org.apache.shiro.realm.AuthorizingRealm#getAuthorizationInfo(org.apache.shiro.subject.PrincipalCollection)
 	 */
 	@Override
 	public AuthorizationInfo getAuthorizationInfo(PrincipalCollection principals) {
+		Sitemap sitemap = sitemapPro.get();
+		if (sitemap != authorizedFor) {
+			getAuthorizationCache().clear();
+			authorizedFor = sitemap;
+		}
 		return super.getAuthorizationInfo(principals);
 	}
 }
@@ -46,6 +46,8 @@ public class DefaultShiroModule extends ShiroModule {
 		expose(URIPermissionFactory.class);
 		bindCredentialsMatcher();
 		bindLoginAttemptLog();
+		bindLoginAuditLog();
+		expose(LoginAuditLog.class);
 		bindRealms();
 		bindSubjectIdentifier();
 		expose(SubjectIdentifier.class);
@@ -73,6 +75,13 @@ public class DefaultShiroModule extends ShiroModule {
 		bind(LoginAttemptLog.class).to(DefaultLoginAttemptLog.class);
 	}
 
+	/**
+	 * Override this to bind your own implementation of {@link LoginAuditLog}
+	 */
+	protected void bindLoginAuditLog() {
+		bind(LoginAuditLog.class).to(DefaultLoginAuditLog.class);
+	}
+
 	/**
 	 * Override this method to bind your own {@link CredentialsMatcher} implementation
 	 */
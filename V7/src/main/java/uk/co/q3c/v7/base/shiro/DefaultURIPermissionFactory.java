@@ -14,6 +14,7 @@ package uk.co.q3c.v7.base.shiro;
 
 import javax.inject.Inject;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
 
 public class DefaultURIPermissionFactory implements URIPermissionFactory {
@@ -31,6 +32,11 @@ public class DefaultURIPermissionFactory implements URIPermissionFactory {
 		return new URIViewPermission(uriHandler, uri);
 	}
 
+	@Override
+	public URIViewPermission createViewPermission(NavigationState navigationState) {
+		return new URIViewPermission(navigationState);
+	}
+
 	@Override
 	public URIViewPermission createViewPermission(String uri, boolean appendWildcard) {
 		return new URIViewPermission(uriHandler, uri, appendWildcard);
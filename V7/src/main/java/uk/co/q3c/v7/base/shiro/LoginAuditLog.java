@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+/**
+ * An audit trail of logins, failed logins, logouts and login status changes. {@link #publish(Event, String)} is called
+ * while a login is being processed, so implementations must not block the caller, and should hand the record over to
+ * be persisted in the background.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public interface LoginAuditLog {
+
+	public static enum Event {
+		Login_Success,
+		Login_Failure,
+		Logout,
+		Status_Change
+	}
+
+	/**
+	 * Records {@code event} for {@code username} without blocking. Returns false if the record could not be accepted,
+	 * for example because the log is full or closed, in which case it is lost
+	 * 
+	 * @param event
+	 * @param username
+	 * @return
+	 */
+	boolean publish(Event event, String username);
+
+	/**
+	 * Persists any records not yet persisted, and stops accepting new ones
+	 */
+	void close();
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * An append-only file in {@code directory}, which is rolled over once it reaches {@link #getMaxSize()} bytes by
+ * renaming it with the time it was rolled as a suffix, and starting a new one. The directory and file are created when
+ * first written to, and an existing file is appended to, so the file survives restarts. Not thread safe, as it is only
+ * written to by the writer of a {@link DefaultLoginAuditLog}.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class RollingAuditFile {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final DateTimeFormatter suffixFormat = DateTimeFormat.forPattern("yyyyMMdd-HHmmss-SSS");
+
+	private final File directory;
+	private final String name;
+	private long maxSize;
+	private FileOutputStream out;
+	private long size;
+
+	public RollingAuditFile(File directory, String name, long maxSize) {
+		super();
+		this.directory = directory;
+		this.name = name;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Appends {@code text} in a single write, rolling the file over first if it would exceed {@link #getMaxSize()}. A
+	 * file is never rolled over while it is empty, however large the text
+	 * 
+	 * @param text
+	 * @throws IOException
+	 */
+	public void append(String text) throws IOException {
+		byte[] bytes = text.getBytes(UTF_8);
+		if (out == null) {
+			open();
+		}
+		if ((size > 0) && (size + bytes.length > maxSize)) {
+			roll();
+		}
+		out.write(bytes);
+		size += bytes.length;
+	}
+
+	private void open() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory " + directory.getAbsolutePath());
+		}
+		File file = getFile();
+		out = new FileOutputStream(file, true);
+		size = file.length();
+	}
+
+	private void roll() throws IOException {
+		close();
+		String suffix = suffixFormat.print(DateTimeUtils.currentTimeMillis());
+		File rolled = new File(directory, name + "." + suffix);
+		for (int i = 1; rolled.exists(); i++) {
+			rolled = new File(directory, name + "." + suffix + "-" + i);
+		}
+		if (!getFile().renameTo(rolled)) {
+			throw new IOException("Unable to roll " + getFile().getAbsolutePath() + " over to " + rolled.getName());
+		}
+		open();
+	}
+
+	/**
+	 * Closes the file, which is opened again by the next {@link #append(String)}
+	 */
+	public void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			// nothing more can be done with it
+		}
+		out = null;
+	}
+
+	/**
+	 * The file currently appended to
+	 * 
+	 * @return
+	 */
+	public File getFile() {
+		return new File(directory, name);
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+}
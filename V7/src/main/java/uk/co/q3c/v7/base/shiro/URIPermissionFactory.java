@@ -12,6 +12,8 @@
  */
 package uk.co.q3c.v7.base.shiro;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
+
 public interface URIPermissionFactory {
 
 	/**
@@ -23,6 +25,15 @@ public interface URIPermissionFactory {
 	 */
 	URIViewPermission createViewPermission(String uri);
 
+	/**
+	 * Creates a Permission object from the virtual page of {@code navigationState}, in the same way as
+	 * {@link #createViewPermission(String)}
+	 * 
+	 * @param navigationState
+	 * @return
+	 */
+	URIViewPermission createViewPermission(NavigationState navigationState);
+
 	/**
 	 * Creates a Permission object from the uri. The '/' characters are changed to ':' to facilitate use of Shiro
 	 * WildcardPermission. If {@code appendWildCard} is true, a final ':*' is added. The fill translation is, for
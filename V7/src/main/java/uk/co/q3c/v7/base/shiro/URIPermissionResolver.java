@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.io.Serializable;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.PermissionResolver;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.authz.permission.WildcardPermissionResolver;
+
+/**
+ * A {@link PermissionResolver} which resolves a URI permission string, such as "uri:view:private:*", to a
+ * {@link URIViewPermission}, so that a realm which grants URI permissions as strings gets permissions which can be
+ * compared segment by segment, and compiled into a {@link URIPermissionTrie}. Anything else, and any URI permission
+ * which cannot be held as segments, is resolved to a {@link WildcardPermission}, exactly as by the
+ * {@link WildcardPermissionResolver} Shiro uses by default.
+ * <p>
+ * {@link V7SecurityManager} applies this resolver to all its realms.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class URIPermissionResolver implements PermissionResolver, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final String WILDCARD_SUFFIX = ":*";
+
+	@Override
+	public Permission resolvePermission(String permissionString) {
+		if (permissionString.regionMatches(true, 0, URIViewPermission.PREFIX, 0, URIViewPermission.PREFIX.length())) {
+			String pagePerm = permissionString.substring(URIViewPermission.PREFIX.length());
+			if (pagePerm.equals("*")) {
+				return URIViewPermission.allPages();
+			}
+			boolean wildcard = false;
+			if (pagePerm.endsWith(WILDCARD_SUFFIX)) {
+				pagePerm = pagePerm.substring(0, pagePerm.length() - WILDCARD_SUFFIX.length());
+				wildcard = true;
+			}
+			URIViewPermission permission = new URIViewPermission(pagePerm.replace(':', '/'), wildcard);
+			if (permission.isSegmented()) {
+				return permission;
+			}
+		}
+		return new WildcardPermission(permissionString);
+	}
+
+}
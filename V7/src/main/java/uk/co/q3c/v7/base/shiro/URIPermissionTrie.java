@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.PermissionResolver;
+
+/**
+ * A single {@link Permission} which holds any number of granted {@link URIViewPermission}s as a tree of their
+ * segments. Whether a requested URIViewPermission is implied by any of the granted ones is decided by walking its
+ * segments down the tree, which takes no longer however many permissions are granted, and builds no strings. The
+ * outcome is the same as checking each granted permission in turn.
+ * <p>
+ * Only URIViewPermissions held as segments (see {@link URIViewPermission#isSegmented()}) can be added, and the trie
+ * only implies URIViewPermissions held as segments. {@link #compile(AuthorizationInfo, PermissionResolver)} compiles
+ * the URI permissions of an {@link AuthorizationInfo} into a trie, leaving any other permissions as they are.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class URIPermissionTrie implements Permission, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static class Node implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Map<String, Node> children = new HashMap<>();
+		// the child for a final wildcard
+		private Node wildcard;
+		// a granted permission ends at this node
+		private boolean granted;
+	}
+
+	private final Node root = new Node();
+	private int size;
+
+	/**
+	 * Adds {@code permission} to the trie, and returns true, or returns false if it is not held as segments
+	 * 
+	 * @param permission
+	 * @return
+	 */
+	public boolean add(URIViewPermission permission) {
+		if (!permission.isSegmented()) {
+			return false;
+		}
+		Node node = root;
+		for (int i = 0; i < permission.length(); i++) {
+			String segment = permission.segment(i);
+			Node next = (segment == null) ? node.wildcard : node.children.get(segment);
+			if (next == null) {
+				next = new Node();
+				if (segment == null) {
+					node.wildcard = next;
+				} else {
+					node.children.put(segment, next);
+				}
+			}
+			node = next;
+		}
+		if (!node.granted) {
+			node.granted = true;
+			size++;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean implies(Permission p) {
+		if (!(p instanceof URIViewPermission)) {
+			return false;
+		}
+		URIViewPermission requested = (URIViewPermission) p;
+		return requested.isSegmented() && implies(root, requested, 0);
+	}
+
+	private boolean implies(Node node, URIViewPermission requested, int index) {
+		// a granted permission which is shorter than the one requested implies everything below it
+		if (node.granted) {
+			return true;
+		}
+		if (index == requested.length()) {
+			// a longer one only if all that is left is a wildcard
+			return (node.wildcard != null) && node.wildcard.granted;
+		}
+		String segment = requested.segment(index);
+		if (segment != null) {
+			Node child = node.children.get(segment);
+			if ((child != null) && implies(child, requested, index + 1)) {
+				return true;
+			}
+		}
+		return (node.wildcard != null) && implies(node.wildcard, requested, index + 1);
+	}
+
+	/**
+	 * The number of distinct permissions held
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a copy of {@code info} in which the URI permissions, whether held as objects or as strings, are compiled
+	 * into a single {@link URIPermissionTrie}. String permissions are resolved with {@code resolver}, and those which
+	 * do not resolve to a URI permission are kept as strings. Roles, and any other object permissions, are copied as
+	 * they are.
+	 * 
+	 * @param info
+	 * @param resolver
+	 * @return
+	 */
+	public static AuthorizationInfo compile(AuthorizationInfo info, PermissionResolver resolver) {
+		URIPermissionTrie trie = new URIPermissionTrie();
+		Set<Permission> objectPermissions = new HashSet<>();
+		Set<String> stringPermissions = new HashSet<>();
+		Collection<Permission> granted = info.getObjectPermissions();
+		if (granted != null) {
+			for (Permission permission : granted) {
+				if (!trie.add(permission)) {
+					objectPermissions.add(permission);
+				}
+			}
+		}
+		Collection<String> grantedStrings = info.getStringPermissions();
+		if (grantedStrings != null) {
+			for (String permissionString : grantedStrings) {
+				if (!trie.add(resolver.resolvePermission(permissionString))) {
+					stringPermissions.add(permissionString);
+				}
+			}
+		}
+		if (trie.size() > 0) {
+			objectPermissions.add(trie);
+		}
+		SimpleAuthorizationInfo compiled = new SimpleAuthorizationInfo();
+		if (info.getRoles() != null) {
+			compiled.setRoles(new HashSet<>(info.getRoles()));
+		}
+		compiled.setObjectPermissions(objectPermissions);
+		compiled.setStringPermissions(stringPermissions);
+		return compiled;
+	}
+
+	private boolean add(Permission permission) {
+		return (permission instanceof URIViewPermission) && add((URIViewPermission) permission);
+	}
+}
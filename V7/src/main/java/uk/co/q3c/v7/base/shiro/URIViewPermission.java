@@ -12,15 +12,43 @@
  */
 package uk.co.q3c.v7.base.shiro;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.permission.WildcardPermission;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
 
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 
+/**
+ * The permission to view a virtual page, equivalent to the {@link WildcardPermission} "uri:view:" followed by the
+ * segments of the page separated by ':', and optionally a final ":*".
+ * <p>
+ * As URI permissions are purely hierarchical, the page is held as an array of lower case segments, and
+ * {@link #implies(Permission)} compares the segments of two URIViewPermissions directly, with the same outcome as
+ * {@link WildcardPermission} would have. The parts used by {@link WildcardPermission} are only built if they are
+ * needed, when this permission is compared with some other kind of permission. A page with a segment which cannot be
+ * represented this way - one which is empty, or contains ':', ',', '*' or white space - is held as parts in the usual
+ * way.
+ * <p>
+ * Any number of these permissions can be compiled into a {@link URIPermissionTrie}.
+ */
 public class URIViewPermission extends WildcardPermission {
 
+	public static final String PREFIX = "uri:view:";
+
+	private static final String[] NO_SEGMENTS = new String[0];
+
+	// lower case segments of the virtual page, null if the page cannot be held as segments
+	private String[] segments;
+	private boolean wildcard;
+	private volatile boolean partsSet;
+
 	@AssistedInject
 	public URIViewPermission(URIFragmentHandler uriHandler, @Assisted String uri) {
 		super();
@@ -33,12 +61,199 @@ public class URIViewPermission extends WildcardPermission {
 		construct(uriHandler, uri, appendWildcard);
 	}
 
+	/**
+	 * Creates the permission for the virtual page of a {@link NavigationState} which has already been decoded, so the
+	 * fragment does not need to be parsed again
+	 * 
+	 * @param navigationState
+	 */
+	@AssistedInject
+	public URIViewPermission(@Assisted NavigationState navigationState) {
+		super();
+		construct(navigationState.getVirtualPage(), false);
+	}
+
+	/**
+	 * Creates the permission for a virtual page, which must not contain any parameters
+	 * 
+	 * @param virtualPage
+	 * @param appendWildcard
+	 */
+	public URIViewPermission(String virtualPage, boolean appendWildcard) {
+		super();
+		construct(virtualPage, appendWildcard);
+	}
+
 	protected void construct(URIFragmentHandler uriHandler, String uri, boolean appendWildcard) {
-		uriHandler.setFragment(uri);
-		String prefix = "uri:view:";
-		String pagePerm = uriHandler.virtualPage().replace("/", ":");
+		construct(uriHandler.navigationState(uri).getVirtualPage(), appendWildcard);
+	}
+
+	/**
+	 * The permission "uri:view:*", to view any page. Note that this is not the same as the permission for an empty
+	 * virtual page with a wildcard appended, which is "uri:view::*"
+	 * 
+	 * @return
+	 */
+	public static URIViewPermission allPages() {
+		URIViewPermission permission = new URIViewPermission("", false);
+		permission.wildcard = true;
+		return permission;
+	}
+
+	protected void construct(String virtualPage, boolean appendWildcard) {
+		// "uri:view::*" has an empty part
+		segments = (appendWildcard && virtualPage.isEmpty()) ? null : segments(virtualPage);
+		wildcard = appendWildcard;
+		if (segments == null) {
+			String pagePerm = virtualPage.replace("/", ":");
+			setParts(appendWildcard ? PREFIX + pagePerm + ":*" : PREFIX + pagePerm);
+			partsSet = true;
+		}
+	}
+
+	/**
+	 * Splits {@code virtualPage} into lower case segments, or returns null if it has a segment which would not be a
+	 * single, literal part of a {@link WildcardPermission}
+	 */
+	private static String[] segments(String virtualPage) {
+		if (virtualPage.isEmpty()) {
+			return NO_SEGMENTS;
+		}
+		int count = 1;
+		for (int i = 0; i < virtualPage.length(); i++) {
+			char c = virtualPage.charAt(i);
+			if (c == '/') {
+				count++;
+			} else if ((c == ':') || (c == ',') || (c == '*') || Character.isWhitespace(c)) {
+				return null;
+			}
+		}
+		String[] segments = new String[count];
+		int start = 0;
+		for (int i = 0; i < count; i++) {
+			int end = virtualPage.indexOf('/', start);
+			if (end < 0) {
+				end = virtualPage.length();
+			}
+			if (end == start) {
+				return null;
+			}
+			segments[i] = virtualPage.substring(start, end).toLowerCase();
+			start = end + 1;
+		}
+		return segments;
+	}
+
+	/**
+	 * True if the page is held as segments, and so can be compiled into a {@link URIPermissionTrie}
+	 * 
+	 * @return
+	 */
+	public boolean isSegmented() {
+		return segments != null;
+	}
+
+	/**
+	 * The number of parts after "uri:view", including any final wildcard. Only valid if {@link #isSegmented()}
+	 * 
+	 * @return
+	 */
+	int length() {
+		return wildcard ? segments.length + 1 : segments.length;
+	}
+
+	/**
+	 * The part at {@code index} after "uri:view", or null for the final wildcard. Only valid if {@link #isSegmented()}
+	 * 
+	 * @param index
+	 * @return
+	 */
+	String segment(int index) {
+		return (index < segments.length) ? segments[index] : null;
+	}
+
+	@Override
+	public boolean implies(Permission p) {
+		if (isSegmented() && (p instanceof URIViewPermission) && ((URIViewPermission) p).isSegmented()) {
+			URIViewPermission other = (URIViewPermission) p;
+			int length = length();
+			int otherLength = other.length();
+			for (int i = 0; i < otherLength; i++) {
+				// a shorter permission implies everything below it
+				if (i >= length) {
+					return true;
+				}
+				String segment = segment(i);
+				if ((segment != null) && !segment.equals(other.segment(i))) {
+					return false;
+				}
+			}
+			// anything left must be a wildcard
+			return length <= otherLength || segment(otherLength) == null;
+		}
+		return super.implies(p);
+	}
+
+	@Override
+	protected List<Set<String>> getParts() {
+		if (!partsSet) {
+			setParts(permissionString());
+			partsSet = true;
+		}
+		return super.getParts();
+	}
+
+	private String permissionString() {
+		StringBuilder buf = new StringBuilder(PREFIX);
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0) {
+				buf.append(':');
+			}
+			buf.append(segments[i]);
+		}
+		if (wildcard) {
+			buf.append((segments.length == 0) ? "*" : ":*");
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (isSegmented() && (o instanceof URIViewPermission) && ((URIViewPermission) o).isSegmented()) {
+			URIViewPermission other = (URIViewPermission) o;
+			return (wildcard == other.wildcard) && Arrays.equals(segments, other.segments);
+		}
+		getParts();
+		if (o instanceof URIViewPermission) {
+			((URIViewPermission) o).getParts();
+		}
+		return super.equals(o);
+	}
+
+	/**
+	 * The same as the hash code of the {@link WildcardPermission} parts, but worked out from the segments
+	 * 
+	 * @see org.apache.shiro.authz.permission.WildcardPermission#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		if (!isSegmented()) {
+			return super.hashCode();
+		}
+		// a list of single element sets, each of which has the hash code of its element
+		int hash = 31 * (31 + "uri".hashCode()) + "view".hashCode();
+		for (String segment : segments) {
+			hash = 31 * hash + segment.hashCode();
+		}
+		if (wildcard) {
+			hash = 31 * hash + "*".hashCode();
+		}
+		return hash;
+	}
 
-		String permissionString = appendWildcard ? prefix + pagePerm + ":*" : prefix + pagePerm;
-		setParts(permissionString);
+	@Override
+	public String toString() {
+		getParts();
+		return super.toString();
 	}
 }
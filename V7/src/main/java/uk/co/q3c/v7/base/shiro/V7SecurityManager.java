@@ -18,6 +18,8 @@ import javax.inject.Inject;
 
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authz.Authorizer;
+import org.apache.shiro.authz.ModularRealmAuthorizer;
 import org.apache.shiro.mgt.DefaultSecurityManager;
 import org.apache.shiro.realm.Realm;
 import org.apache.shiro.session.mgt.SessionManager;
@@ -33,18 +35,60 @@ public class V7SecurityManager extends DefaultSecurityManager {
 	@Inject
 	private VaadinSessionProvider sessionProvider;
 
+	@Inject
+	private AuthorizationCache authorizationCache;
+
+	@Inject
+	private LoginAuditLog loginAuditLog;
+
 	public V7SecurityManager() {
 		super();
+		applyPermissionResolver();
 	}
 
 	public V7SecurityManager(Collection<Realm> realms) {
 		super(realms);
+		applyPermissionResolver();
+	}
+
+	/**
+	 * Sets a {@link URIPermissionResolver} on the authorizer, which applies it to all the realms, both those already
+	 * set and any set later
+	 */
+	protected void applyPermissionResolver() {
+		Authorizer authorizer = getAuthorizer();
+		if (authorizer instanceof ModularRealmAuthorizer) {
+			((ModularRealmAuthorizer) authorizer).setPermissionResolver(new URIPermissionResolver());
+		}
 	}
 
 	@Override
 	protected void onSuccessfulLogin(AuthenticationToken token, AuthenticationInfo info, Subject subject) {
 		super.onSuccessfulLogin(token, info, subject);
 		setSubject(subject);
+		invalidateAuthorization(subject.getPrincipal());
+	}
+
+	@Override
+	public void logout(Subject subject) {
+		Object principal = subject.getPrincipal();
+		super.logout(subject);
+		invalidateAuthorization(principal);
+		if ((loginAuditLog != null) && (principal != null)) {
+			loginAuditLog.publish(LoginAuditLog.Event.Logout, principal.toString());
+		}
+	}
+
+	/**
+	 * Discards any cached authorization decisions for {@code principal}, as its roles may have changed since they were
+	 * made
+	 * 
+	 * @param principal
+	 */
+	protected void invalidateAuthorization(Object principal) {
+		if (authorizationCache != null) {
+			authorizationCache.invalidate(principal);
+		}
 	}
 
 	protected void setSubject(Subject subject) {
@@ -68,4 +112,12 @@ public class V7SecurityManager extends DefaultSecurityManager {
 		this.sessionProvider = sessionProvider;
 	}
 
+	public void setAuthorizationCache(AuthorizationCache authorizationCache) {
+		this.authorizationCache = authorizationCache;
+	}
+
+	public void setLoginAuditLog(LoginAuditLog loginAuditLog) {
+		this.loginAuditLog = loginAuditLog;
+	}
+
 }
@@ -7,6 +7,7 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.ui.ScopedUI;
 
 import com.vaadin.ui.Component;
@@ -24,8 +25,16 @@ public abstract class GridViewBase extends GridLayout implements V7View {
 	public void enter(V7ViewChangeEvent event) {
 		log.debug("entered view: " + this.getClass().getSimpleName() + " with uri: "
 				+ event.getNavigator().getNavigationState());
-		List<String> params = event.getNavigator().getNavigationParams();
-		processParams(params);
+		processParams(event.getNavigationState());
+	}
+
+	/**
+	 * See {@link ViewBase#processParams(NavigationState)}
+	 * 
+	 * @param state
+	 */
+	protected void processParams(NavigationState state) {
+		processParams(state.parameterList());
 	}
 
 	/**
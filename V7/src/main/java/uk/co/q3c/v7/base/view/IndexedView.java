@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.view;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link V7View} implementation to be included in the view index generated by {@link ViewIndexProcessor}
+ * when the application is compiled. Views in the index are found by the sitemap without searching the classpath. It is
+ * a compile error to use this annotation on anything other than a concrete class which implements {@link V7View}
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Documented
+@Retention(CLASS)
+@Target(TYPE)
+public @interface IndexedView {
+
+}
@@ -1,20 +1,22 @@
 package uk.co.q3c.v7.base.view;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.V7Navigator;
 
 public class V7ViewChangeEvent {
 	private final V7View oldView;
 	private final V7View newView;
 	private final String viewName;
-	private final String parameters;
+	private final NavigationState navigationState;
 	private final V7Navigator navigator;
 
-	public V7ViewChangeEvent(V7Navigator navigator, V7View oldView, V7View newView, String viewName, String parameters) {
+	public V7ViewChangeEvent(V7Navigator navigator, V7View oldView, V7View newView, String viewName,
+			NavigationState navigationState) {
 		super();
 		this.oldView = oldView;
 		this.newView = newView;
 		this.viewName = viewName;
-		this.parameters = parameters;
+		this.navigationState = navigationState;
 		this.navigator = navigator;
 	}
 
@@ -30,8 +32,23 @@ public class V7ViewChangeEvent {
 		return viewName;
 	}
 
+	/**
+	 * The fragment being navigated to. Use {@link #getNavigationState()} to get its virtual page and parameters
+	 * without decoding it again
+	 * 
+	 * @return
+	 */
 	public String getParameters() {
-		return parameters;
+		return navigationState.getFragment();
+	}
+
+	/**
+	 * The decoded fragment being navigated to
+	 * 
+	 * @return
+	 */
+	public NavigationState getNavigationState() {
+		return navigationState;
 	}
 
 	public V7Navigator getNavigator() {
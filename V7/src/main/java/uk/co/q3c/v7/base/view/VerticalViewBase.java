@@ -7,6 +7,7 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.V7Navigator;
 import uk.co.q3c.v7.base.ui.ScopedUI;
 
@@ -27,8 +28,16 @@ public abstract class VerticalViewBase extends VerticalLayout implements V7View
 	public void enter(V7ViewChangeEvent event) {
 		log.debug("entered view: " + this.getClass().getSimpleName()
 				+ " with uri: " + navigator.getNavigationState());
-		List<String> params = navigator.getNavigationParams();
-		processParams(params);
+		processParams(event.getNavigationState());
+	}
+
+	/**
+	 * See {@link ViewBase#processParams(NavigationState)}
+	 * 
+	 * @param state
+	 */
+	protected void processParams(NavigationState state) {
+		processParams(state.parameterList());
 	}
 
 	/**
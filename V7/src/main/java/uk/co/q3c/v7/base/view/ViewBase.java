@@ -20,6 +20,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.co.q3c.util.ID;
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.V7Navigator;
 
 import com.vaadin.ui.Component;
@@ -63,8 +64,18 @@ public abstract class ViewBase implements V7View {
 	@Override
 	public void enter(V7ViewChangeEvent event) {
 		log.debug("entered view: " + this.getClass().getSimpleName() + " with uri " + navigator.getNavigationState());
-		List<String> params = navigator.getNavigationParams();
-		processParams(params);
+		processParams(event.getNavigationState());
+	}
+
+	/**
+	 * This method is called with the decoded fragment navigated to. Override it to use the parameter values already
+	 * converted to the types declared for them in the sitemap (see {@link NavigationState#value(String, Class)}),
+	 * rather than splitting the parameter strings again. By default it calls {@link #processParams(List)}
+	 * 
+	 * @param state
+	 */
+	protected void processParams(NavigationState state) {
+		processParams(state.parameterList());
 	}
 
 	/**
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.view;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates the view index, a resource at {@link #INDEX_RESOURCE} which lists the binary name of every class annotated
+ * with {@link IndexedView}, one per line. The index is read by
+ * {@link uk.co.q3c.v7.base.navigate.sitemap.ViewClassIndex}, so that the views named in the sitemap can be found
+ * without searching the classpath.
+ * <p>
+ * The processor is registered in META-INF/services, so it is used automatically by javac when V7 is on the compile
+ * classpath. An annotated class which is abstract, or does not implement {@link V7View}, is reported as a compile error
+ * <p>
+ * An incremental compile sees only the classes it compiles, so the index it writes is merged with the existing index;
+ * an existing entry is kept while its class can still be found and is still annotated. javac does not run the
+ * processor at all for a compilation which contains no annotated class, so removing the annotation from the only class
+ * being compiled leaves that class in the index until the next full build. This does no harm, as
+ * {@link uk.co.q3c.v7.base.navigate.sitemap.ViewClassIndex} checks each indexed class when it is used.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@SupportedAnnotationTypes("uk.co.q3c.v7.base.view.IndexedView")
+public class ViewIndexProcessor extends AbstractProcessor {
+
+	public static final String INDEX_RESOURCE = "META-INF/v7/views.index";
+
+	// collected over all rounds, and written once processing is complete
+	private final Set<String> viewClasses = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			if (!viewClasses.isEmpty()) {
+				writeIndex();
+			}
+			return false;
+		}
+		TypeMirror viewType = processingEnv.getElementUtils().getTypeElement(V7View.class.getName()).asType();
+		for (Element element : roundEnv.getElementsAnnotatedWith(IndexedView.class)) {
+			if ((element.getKind() != ElementKind.CLASS) || element.getModifiers().contains(Modifier.ABSTRACT)) {
+				error(element, "@IndexedView can only be used on a concrete class");
+				continue;
+			}
+			if (!processingEnv.getTypeUtils().isAssignable(element.asType(), viewType)) {
+				error(element, "@IndexedView can only be used on an implementation of V7View");
+				continue;
+			}
+			viewClasses.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+		}
+		return true;
+	}
+
+	private void writeIndex() {
+		Set<String> views = new TreeSet<>(viewClasses);
+		views.addAll(previouslyIndexed());
+		try {
+			FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					INDEX_RESOURCE);
+			try (Writer writer = index.openWriter()) {
+				for (String viewClass : views) {
+					writer.write(viewClass);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write the view index: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the entries of the existing index, if there is one, whose classes can still be found and are still
+	 * annotated with {@link IndexedView}
+	 * 
+	 * @return
+	 */
+	private Set<String> previouslyIndexed() {
+		Set<String> views = new TreeSet<>();
+		try {
+			FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+			try (BufferedReader reader = new BufferedReader(index.openReader(true))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if ((!line.isEmpty()) && stillIndexed(line)) {
+						views.add(line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// there is no existing index
+		}
+		return views;
+	}
+
+	private boolean stillIndexed(String viewClass) {
+		TypeElement element = processingEnv.getElementUtils().getTypeElement(viewClass.replace('$', '.'));
+		return (element != null) && (element.getAnnotation(IndexedView.class) != null);
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.view;
+
+import static java.lang.annotation.ElementType.*;
+import static java.lang.annotation.RetentionPolicy.*;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how long the navigator keeps an instance of a {@link V7View} for reuse, once it has been displayed in a UI (see
+ * {@link uk.co.q3c.v7.base.navigate.ViewCache}). A retained view is not built again when it is navigated back to, it
+ * only has its {@link V7View#enter(V7ViewChangeEvent)} method called again, so a view which is expensive to build, but
+ * which sets all of its state in {@code enter}, is a good candidate. A view without this annotation is created afresh
+ * for each navigation, unless it has a Guice scope of its own.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@Documented
+@Inherited
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface ViewRetention {
+
+	public static enum Policy {
+		/**
+		 * A new instance for every navigation
+		 */
+		Always_New,
+		/**
+		 * Kept with the most recently used views of the UI, up to the capacity of the cache
+		 */
+		Keep_Last,
+		/**
+		 * Kept until the UI is detached
+		 */
+		Keep_Forever
+	}
+
+	Policy value() default Policy.Keep_Last;
+}
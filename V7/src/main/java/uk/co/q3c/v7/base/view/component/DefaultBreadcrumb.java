@@ -12,7 +12,6 @@
  */
 package uk.co.q3c.v7.base.view.component;
 
-import java.text.Collator;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,7 +23,6 @@ import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
 import uk.co.q3c.v7.base.view.V7ViewChangeEvent;
 import uk.co.q3c.v7.base.view.V7ViewChangeListener;
-import uk.co.q3c.v7.i18n.CurrentLocale;
 import uk.co.q3c.v7.i18n.I18NKey;
 import uk.co.q3c.v7.i18n.I18NListener;
 import uk.co.q3c.v7.i18n.I18NTranslator;
@@ -41,18 +39,13 @@ public class DefaultBreadcrumb extends HorizontalLayout implements I18NListener,
 	private final List<BreadcrumbStep> steps = new ArrayList<>();
 	private final V7Navigator navigator;
 	private final SitemapURIConverter converter;
-	private final CurrentLocale currentLocale;
-	private final Collator collator;
 	private final Translate translate;
 
 	@Inject
-	protected DefaultBreadcrumb(V7Navigator navigator, SitemapURIConverter converter, CurrentLocale currentLocale,
-			Translate translate) {
+	protected DefaultBreadcrumb(V7Navigator navigator, SitemapURIConverter converter, Translate translate) {
 		this.navigator = navigator;
 		navigator.addViewChangeListener(this);
 		this.converter = converter;
-		this.currentLocale = currentLocale;
-		this.collator = Collator.getInstance(currentLocale.getLocale());
 		this.translate = translate;
 
 	}
@@ -86,15 +79,11 @@ public class DefaultBreadcrumb extends HorizontalLayout implements I18NListener,
 	}
 
 	private void setupStep(BreadcrumbStep step, SitemapNode sitemapNode) {
-		// TODO can label translate be removed? May be done in build of sitemap later
-
+		// the node is shared by all UIs and is read only, so the caption is translated here rather than in the node
 		step.setNode(sitemapNode);
-		I18NKey<?> key = step.getNode().getLabelKey();
-		sitemapNode.setLabelKey(key, translate, collator);
-
+		I18NKey<?> key = sitemapNode.getLabelKey();
+		step.setCaption(translate.from(key));
 		step.setVisible(true);
-		step.setNode(sitemapNode);
-
 	}
 
 	@Override
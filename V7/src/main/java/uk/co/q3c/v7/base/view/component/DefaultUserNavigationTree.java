@@ -12,7 +12,8 @@
  */
 package uk.co.q3c.v7.base.view.component;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -24,30 +25,30 @@ import org.slf4j.LoggerFactory;
 
 import uk.co.q3c.util.ID;
 import uk.co.q3c.v7.base.guice.uiscope.UIScoped;
-import uk.co.q3c.v7.base.navigate.CollationKeyOrder;
-import uk.co.q3c.v7.base.navigate.InsertionOrder;
 import uk.co.q3c.v7.base.navigate.StandardPageKey;
 import uk.co.q3c.v7.base.navigate.V7Navigator;
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapLabels;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
-import uk.co.q3c.v7.base.shiro.DefaultURIPermissionFactory;
+import uk.co.q3c.v7.base.shiro.BatchPermissionEvaluator;
 import uk.co.q3c.v7.base.shiro.LoginStatusHandler;
 import uk.co.q3c.v7.base.shiro.LoginStatusListener;
-import uk.co.q3c.v7.base.shiro.URIViewPermission;
 import uk.co.q3c.v7.base.useropt.UserOption;
 import uk.co.q3c.v7.base.view.V7ViewChangeEvent;
 import uk.co.q3c.v7.base.view.V7ViewChangeListener;
-import uk.co.q3c.v7.i18n.I18NKey;
+import uk.co.q3c.v7.i18n.CurrentLocale;
 import uk.co.q3c.v7.i18n.Translate;
 
 import com.vaadin.data.Property;
 import com.vaadin.ui.Tree;
 
 /**
- * A navigation tree for users to find their way around the site. Uses {@link Sitemap} as the site structure. Although
- * this seems naturally to be a {@link UIScoped} class it is not currently possible to have a UIScoped Component (see
- * https://github.com/davidsowerby/v7/issues/177)
+ * A navigation tree for users to find their way around the site. Uses {@link Sitemap} as the site structure. The map
+ * is read from its provider each time the nodes are loaded, and if the map has been reloaded since (see
+ * {@link uk.co.q3c.v7.base.navigate.sitemap.ReloadingSitemapProvider}), the nodes are loaded again after the next
+ * navigation. Although this seems naturally to be a {@link UIScoped} class it is not currently possible to have a
+ * UIScoped Component (see https://github.com/davidsowerby/v7/issues/177)
  * 
  * @author David Sowerby 17 May 2013
  * 
@@ -55,31 +56,38 @@ import com.vaadin.ui.Tree;
 public class DefaultUserNavigationTree extends Tree implements UserNavigationTree, V7ViewChangeListener,
 		LoginStatusListener {
 	private static Logger log = LoggerFactory.getLogger(DefaultUserNavigationTree.class);
-	private final Sitemap sitemap;
+	private final Provider<Sitemap> sitemapPro;
+	// the version of the map the nodes were loaded from
+	private Sitemap sitemap;
 	private int maxLevel;
 	private int level;
 	private final V7Navigator navigator;
 	private final Provider<Subject> subjectPro;
-	private final DefaultURIPermissionFactory uriPermissionFactory;
+	private final BatchPermissionEvaluator permissionEvaluator;
+	private BitSet permitted;
 	private boolean sorted;
 	private final UserOption userOption;
 	private final SitemapURIConverter sitemapURIConverter;
 	private final Translate translate;
+	private final CurrentLocale currentLocale;
+	private SitemapLabels labels;
 	public static final String sortedOpt = "sorted";
 	public static final String maxLevelOpt = "maxLevel";
 
 	@Inject
-	protected DefaultUserNavigationTree(Sitemap sitemap, V7Navigator navigator, Provider<Subject> subjectPro,
-			DefaultURIPermissionFactory uriPermissionFactory, UserOption userOption,
-			SitemapURIConverter sitemapURIConverter, LoginStatusHandler loginStatusHandler, Translate translate) {
+	protected DefaultUserNavigationTree(Provider<Sitemap> sitemapPro, V7Navigator navigator,
+			Provider<Subject> subjectPro, BatchPermissionEvaluator permissionEvaluator, UserOption userOption,
+			SitemapURIConverter sitemapURIConverter, LoginStatusHandler loginStatusHandler, Translate translate,
+			CurrentLocale currentLocale) {
 		super();
-		this.sitemap = sitemap;
+		this.sitemapPro = sitemapPro;
 		this.navigator = navigator;
 		this.subjectPro = subjectPro;
-		this.uriPermissionFactory = uriPermissionFactory;
+		this.permissionEvaluator = permissionEvaluator;
 		this.userOption = userOption;
 		this.sitemapURIConverter = sitemapURIConverter;
 		this.translate = translate;
+		this.currentLocale = currentLocale;
 		setImmediate(true);
 		setItemCaptionMode(ItemCaptionMode.EXPLICIT);
 		// set user option
@@ -97,66 +105,81 @@ public class DefaultUserNavigationTree extends Tree implements UserNavigationTre
 	private void loadNodes() {
 
 		this.removeAllItems();
-		List<SitemapNode> nodeList = sitemap.getRoots();
+		sitemap = sitemapPro.get();
+		// labels and sorted orderings are shared by all users of the same locale
+		labels = sitemap.labels(currentLocale.getLocale(), translate);
+		List<SitemapNode> nodeList = null;
 
 		// which order, sorted or insertion?
 		if (sorted) {
 			log.debug("'sorted' is true, sorting by collation key");
-			Collections.sort(nodeList, new CollationKeyOrder());
+			nodeList = labels.sortedRoots();
 		} else {
 			log.debug("'sorted' is false, using insertion order");
-			Collections.sort(nodeList, new InsertionOrder());
+			nodeList = sitemap.getRoots();
 		}
 
+		// the permissions for all the nodes which may be shown are evaluated together
+		List<SitemapNode> candidates = new ArrayList<>();
+		for (SitemapNode node : nodeList) {
+			// doesn't make sense to show the logout page
+			if (!node.getLabelKey().equals(StandardPageKey.Logout)) {
+				addCandidates(node, 1, candidates);
+			}
+		}
+		permitted = permissionEvaluator.permitted(subjectPro.get(), sitemap, candidates);
+
 		for (SitemapNode node : nodeList) {
 			level = 1;
 			// doesn't make sense to show the logout page
 			if (!node.getLabelKey().equals(StandardPageKey.Logout)) {
-				loadNode(null, node, node.equals(sitemap.getPublicRootNode()));
+				loadNode(null, node);
+			}
+		}
+	}
+
+	private void addCandidates(SitemapNode node, int nodeLevel, List<SitemapNode> candidates) {
+		candidates.add(node);
+		if ((maxLevel < 0) || (nodeLevel < maxLevel)) {
+			for (SitemapNode child : sitemap.getChildren(node)) {
+				if (!child.getLabelKey().equals(StandardPageKey.Logout)) {
+					addCandidates(child, nodeLevel + 1, candidates);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Checks each node to ensure that the Subject has permission to view, and if so, adds it to this tree
+	 * Checks each node to ensure that the Subject has permission to view, and if so, adds it to this tree. The
+	 * permissions have already been evaluated by {@link BatchPermissionEvaluator}
 	 * 
 	 * @param parentNode
 	 * @param childNode
 	 */
-	private void loadNode(SitemapNode parentNode, SitemapNode childNode, boolean publicBranch) {
-		// construct the permission
+	private void loadNode(SitemapNode parentNode, SitemapNode childNode) {
 		String uri = sitemap.uri(childNode);
-		URIViewPermission pagePermissionRequired = uriPermissionFactory.createViewPermission(uri);
 
 		// if permitted, add it
-		if (publicBranch || subjectPro.get().isPermitted(pagePermissionRequired)) {
+		if (permitted.get(childNode.getId())) {
 			log.debug("user has permission to view URI {}", uri);
 			this.addItem(childNode);
-			I18NKey<?> key = childNode.getLabelKey();
-
-			String caption = translate.from(key);
-			this.setItemCaption(childNode, caption);
+			this.setItemCaption(childNode, labels.label(childNode));
 			setParent(childNode, parentNode);
 
 			SitemapNode newParentNode = childNode;
 			level++;
 
 			if ((maxLevel < 0) || (level <= maxLevel)) {
-				List<SitemapNode> children = sitemap.getChildren(newParentNode);
+				// which order, sorted or insertion?
+				List<SitemapNode> children = (sorted) ? labels.sortedChildren(newParentNode) : sitemap
+						.getChildren(newParentNode);
 				if (children.size() == 0) {
 					// no children, visual tree should not allow expanding the node
 					setChildrenAllowed(newParentNode, false);
-				} else {
-					// which order, sorted or insertion?
-					if (sorted) {
-						Collections.sort(children, new CollationKeyOrder());
-					} else {
-						Collections.sort(children, new InsertionOrder());
-					}
 				}
 				for (SitemapNode child : children) {
 					if (!child.getLabelKey().equals(StandardPageKey.Logout)) {
-						loadNode(newParentNode, child, publicBranch);
+						loadNode(newParentNode, child);
 					}
 				}
 
@@ -234,6 +257,10 @@ public class DefaultUserNavigationTree extends Tree implements UserNavigationTre
 	 */
 	@Override
 	public void afterViewChange(V7ViewChangeEvent event) {
+		if (sitemapPro.get() != sitemap) {
+			log.debug("sitemap has been reloaded, reloading nodes");
+			loadNodes();
+		}
 		SitemapNode selectedNode = sitemapURIConverter.nodeForUri(navigator.getNavigationState(), false);
 		// shouldn't get null, but just in case
 		if (selectedNode != null) {
@@ -209,7 +209,7 @@ public class BasicForestTest {
 		// when
 		addAllNodes();
 		// then
-		assertThat(tree.toString()).isEqualTo("\n-0\n--2\n---2.1\n---2.2\n--1\n---1.2\n----1.2.1\n---1.1\n----1.1.1\n");
+		assertThat(tree.toString()).isEqualTo("\n-0\n--1\n---1.1\n----1.1.1\n---1.2\n----1.2.1\n--2\n---2.1\n---2.2\n");
 	}
 
 	@Test
@@ -221,7 +221,7 @@ public class BasicForestTest {
 		tree.text(s0, buf, 0);
 		String s = buf.toString();
 		// then
-		assertThat(s).isEqualTo("-0\n--2\n---2.1\n---2.2\n--1\n---1.2\n----1.2.1\n---1.1\n----1.1.1\n");
+		assertThat(s).isEqualTo("-0\n--1\n---1.1\n----1.1.1\n---1.2\n----1.2.1\n--2\n---2.1\n---2.2\n");
 	}
 
 	@Test
@@ -281,6 +281,72 @@ public class BasicForestTest {
 		assertThat(tree.getRootFor(s121)).isEqualTo(s0);
 	}
 
+	@Test
+	public void childrenAndRootsInInsertionOrder() {
+
+		// given
+		addAllNodes();
+		tree.addNode("x");
+		// when
+
+		// then
+		assertThat(tree.getChildren(s0)).containsExactly(s1, s2);
+		assertThat(tree.getChildren(s1)).containsExactly(s11, s12);
+		assertThat(tree.getRoots()).containsExactly(s0, "x");
+		assertThat(tree.getChildren("not there")).isEmpty();
+	}
+
+	@Test
+	public void addChildMovesExistingNode() {
+
+		// given
+		addAllNodes();
+		// when
+		tree.addChild(s2, s12);
+		// then
+		assertThat(tree.getParent(s12)).isEqualTo(s2);
+		assertThat(tree.getChildren(s1)).containsExactly(s11);
+		assertThat(tree.getChildren(s2)).containsExactly(s21, s22, s12);
+		assertThat(tree.getSubtreeNodes(s2)).containsOnly(s2, s21, s22, s12, s121);
+		assertThat(tree.getNodeCount()).isEqualTo(9);
+	}
+
+	@Test
+	public void addChildToRootRemovesRoot() {
+
+		// given
+		tree.addNode(s1);
+		tree.addNode(s2);
+		// when
+		tree.addChild(s1, s2);
+		// then
+		assertThat(tree.getRoots()).containsExactly(s1);
+		assertThat(tree.getRootFor(s2)).isEqualTo(s1);
+	}
+
+	@Test
+	public void keyedLookup() {
+
+		// given
+		BasicForest<Integer> keyed = new BasicForest<Integer>() {
+			@Override
+			protected int key(Integer node) {
+				return node;
+			}
+		};
+		// when
+		for (int i = 1; i < 1000; i++) {
+			keyed.addChild(i / 2, i);
+		}
+		// then
+		assertThat(keyed.getRoot()).isEqualTo(0);
+		assertThat(keyed.getNodeCount()).isEqualTo(1000);
+		assertThat(keyed.getParent(999)).isEqualTo(499);
+		assertThat(keyed.getChildren(10)).containsExactly(20, 21);
+		assertThat(keyed.containsNode(1000)).isFalse();
+		assertThat(keyed.getGraph().getVertexCount()).isEqualTo(1000);
+	}
+
 	private void addAllNodes() {
 
 		tree.addNode(s0);
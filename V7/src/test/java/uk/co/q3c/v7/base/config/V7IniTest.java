@@ -87,6 +87,10 @@ public class V7IniTest {
 
 		// then
 		assertThat(ini.optionReadSiteMap()).isTrue();
+		assertThat(ini.optionHistoryDepth()).isEqualTo(V7Ini.DEFAULT_HISTORY_DEPTH);
+		assertThat(ini.optionCoalesceWindow()).isEqualTo(0);
+		assertThat(ini.optionViewCacheSize()).isEqualTo(V7Ini.DEFAULT_VIEW_CACHE_SIZE);
+		assertThat(ini.optionPrefetchViews()).isEqualTo(0);
 	}
 
 	@Test
@@ -123,6 +127,10 @@ public class V7IniTest {
 
 		// then
 		assertThat(ini.optionReadSiteMap()).isFalse();
+		assertThat(ini.optionHistoryDepth()).isEqualTo(5);
+		assertThat(ini.optionCoalesceWindow()).isEqualTo(250);
+		assertThat(ini.optionViewCacheSize()).isEqualTo(3);
+		assertThat(ini.optionPrefetchViews()).isEqualTo(2);
 	}
 
 	@Test
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.guice;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class ShutdownRegistryTest {
+
+	ShutdownRegistry registry;
+
+	List<String> closed;
+
+	@Before
+	public void setup() {
+		registry = new ShutdownRegistry();
+		closed = new ArrayList<>();
+	}
+
+	@Test
+	public void closedInReverseOrder() {
+
+		// given
+		registry.register(resource("a", false));
+		registry.register(resource("b", false));
+		// when
+		registry.shutdown();
+		// then
+		assertThat(closed).containsExactly("b", "a");
+		assertThat(registry.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void failureDoesNotStopOthers() {
+
+		// given
+		registry.register(resource("a", false));
+		registry.register(resource("b", true));
+		// when
+		registry.shutdown();
+		// then
+		assertThat(closed).containsExactly("b", "a");
+	}
+
+	@Test
+	public void unregistered() {
+
+		// given
+		Closeable a = resource("a", false);
+		registry.register(a);
+		registry.register(resource("b", false));
+		// when
+		registry.unregister(a);
+		registry.shutdown();
+		// then
+		assertThat(closed).containsExactly("b");
+	}
+
+	@Test
+	public void registeredAfterShutdown() {
+
+		// given
+		registry.shutdown();
+		// when
+		registry.register(resource("a", false));
+		// then
+		assertThat(closed).containsExactly("a");
+		assertThat(registry.size()).isEqualTo(0);
+	}
+
+	private Closeable resource(final String name, final boolean fail) {
+		return new Closeable() {
+
+			@Override
+			public void close() throws IOException {
+				closed.add(name);
+				if (fail) {
+					throw new IOException("failed to close " + name);
+				}
+			}
+		};
+	}
+}
@@ -29,6 +29,7 @@ import uk.co.q3c.v7.base.shiro.DefaultURIPermissionFactory;
 import uk.co.q3c.v7.base.shiro.DefaultUnauthenticatedExceptionHandler;
 import uk.co.q3c.v7.base.shiro.DefaultUnauthorizedExceptionHandler;
 import uk.co.q3c.v7.base.shiro.DefaultVaadinSessionProvider;
+import uk.co.q3c.v7.base.shiro.LoginAuditLog;
 import uk.co.q3c.v7.base.shiro.LoginStatusHandler;
 import uk.co.q3c.v7.base.shiro.SubjectIdentifier;
 import uk.co.q3c.v7.base.shiro.URIPermissionFactory;
@@ -133,6 +134,7 @@ public class UIScopeTest {
 			bind(VaadinSessionProvider.class).to(DefaultVaadinSessionProvider.class);
 			bind(SessionManager.class).to(VaadinSessionManager.class).asEagerSingleton();
 			bind(LoginStatusHandler.class).to(DefaultLoginStatusHandler.class);
+			bind(LoginAuditLog.class).toInstance(mock(LoginAuditLog.class));
 			bind(SubjectIdentifier.class).to(DefaultSubjectIdentifier.class);
 
 		}
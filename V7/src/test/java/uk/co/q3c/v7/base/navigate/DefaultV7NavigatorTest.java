@@ -5,21 +5,33 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.text.Collator;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.subject.Subject;
 import org.fest.assertions.Fail;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.navigate.metrics.NavigationMetrics;
+import uk.co.q3c.v7.base.navigate.metrics.NavigationPhase;
+import uk.co.q3c.v7.base.navigate.sitemap.RouteParameter;
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
+import uk.co.q3c.v7.base.shiro.AuthorizationCache;
 import uk.co.q3c.v7.base.shiro.DefaultURIPermissionFactory;
 import uk.co.q3c.v7.base.shiro.LoginStatusHandler;
 import uk.co.q3c.v7.base.ui.ScopedUI;
@@ -32,10 +44,13 @@ import uk.co.q3c.v7.base.view.V7ViewChangeListener;
 import uk.co.q3c.v7.i18n.LabelKey;
 import uk.co.q3c.v7.i18n.Translate;
 
+import com.google.inject.Injector;
 import com.google.inject.Provider;
+import com.google.inject.util.Providers;
 import com.mycila.testing.junit.MycilaJunitRunner;
 import com.mycila.testing.plugin.guice.GuiceContext;
 import com.vaadin.server.Page;
+import com.vaadin.server.Page.UriFragmentChangedEvent;
 import com.vaadin.ui.UI;
 import com.vaadin.util.CurrentInstance;
 
@@ -44,6 +59,21 @@ import com.vaadin.util.CurrentInstance;
 public class DefaultV7NavigatorTest {
 	DefaultV7Navigator navigator;
 
+	ViewPrefetcher prefetcher;
+
+	NavigationMetrics metrics;
+
+	ViewCache viewCache;
+
+	NavigationHistory history;
+
+	FragmentCoalescer coalescer;
+
+	AuthorizationCache authorizationCache;
+
+	@Mock
+	ScheduledExecutorService scheduler;
+
 	@Mock
 	Provider<ErrorView> errorViewPro;
 
@@ -135,6 +165,9 @@ public class DefaultV7NavigatorTest {
 	@Mock
 	Translate translate;
 
+	@Mock
+	Injector injector;
+
 	@Before
 	public void setup() {
 		// ini = iniPro.get();
@@ -143,14 +176,27 @@ public class DefaultV7NavigatorTest {
 		// sitemap = new TextReaderSitemapProvider(new StandardPageBuilder()).get();
 
 		uriHandler = new StrictURIFragmentHandler();
+		metrics = new NavigationMetrics(null);
+		viewCache = new ViewCache(V7Ini.DEFAULT_VIEW_CACHE_SIZE);
+		history = new NavigationHistory(V7Ini.DEFAULT_HISTORY_DEPTH);
+		coalescer = new FragmentCoalescer(scheduler, 0);
+		authorizationCache = new AuthorizationCache(uriPermissionFactory, Providers.of(sitemap));
+		prefetcher = new ViewPrefetcher(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
 
 		when(scopedUI.getPage()).thenReturn(page);
 		when(errorViewPro.get()).thenReturn(errorView);
 		when(subjectPro.get()).thenReturn(subject);
-		when(sitemapURIConverter.pageIsPublic(anyString())).thenReturn(true);
+		when(sitemapURIConverter.pageIsPublic(any(Sitemap.class), any(NavigationState.class))).thenReturn(true);
 
-		navigator = new DefaultV7Navigator(errorViewPro, uriHandler, sitemap, viewProMap, subjectPro,
-				uriPermissionFactory, sitemapURIConverter, loginHandler);
+		navigator = new DefaultV7Navigator(errorViewPro, uriHandler, Providers.of(sitemap), viewProMap, subjectPro,
+				authorizationCache, sitemapURIConverter, loginHandler, injector, viewCache, prefetcher, metrics,
+				history, coalescer);
 		CurrentInstance.set(UI.class, scopedUI);
 	}
 
@@ -247,6 +293,55 @@ public class DefaultV7NavigatorTest {
 
 	}
 
+	@Test
+	public void sitemapReloadedDuringNavigation() {
+
+		// given
+		String page = "public/view2";
+		when(sitemap.getRedirectFor(page)).thenReturn(page);
+		when(viewProMap.get(page)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		Sitemap reloaded = mock(Sitemap.class);
+		when(reloaded.getRedirectFor(page)).thenReturn("public/view1");
+		@SuppressWarnings("unchecked")
+		Provider<Sitemap> sitemapPro = mock(Provider.class);
+		// the map is reloaded as soon as the navigation has read it
+		when(sitemapPro.get()).thenReturn(sitemap, reloaded);
+		navigator = new DefaultV7Navigator(errorViewPro, uriHandler, sitemapPro, viewProMap, subjectPro,
+				authorizationCache, sitemapURIConverter, loginHandler, injector, viewCache, prefetcher, metrics,
+				history, coalescer);
+		// when
+		navigator.navigateTo(page);
+		// then the whole navigation uses the version it started with
+		assertThat(navigator.getCurrentView()).isEqualTo(view2);
+		verify(sitemapURIConverter).pageIsPublic(eq(sitemap), any(NavigationState.class));
+		verifyZeroInteractions(reloaded);
+
+	}
+
+	@Test
+	public void navigationStatePassedToView() {
+
+		// given
+		String page = "public/view2";
+		SitemapNode node = new SitemapNode();
+		when(sitemap.nodeFor(page)).thenReturn(node);
+		when(sitemap.getRedirectFor(page)).thenReturn(page);
+		when(viewProMap.get(page)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		ArgumentCaptor<V7ViewChangeEvent> captor = ArgumentCaptor.forClass(V7ViewChangeEvent.class);
+		// when
+		navigator.navigateTo(page + "/id=2");
+		// then
+		verify(view2).enter(captor.capture());
+		NavigationState state = captor.getValue().getNavigationState();
+		assertThat(captor.getValue().getParameters()).isEqualTo(page + "/id=2");
+		assertThat(state.getVirtualPage()).isEqualTo(page);
+		assertThat(state.parameterValue("id")).isEqualTo("2");
+		assertThat(state.getNode()).isEqualTo(node);
+		verify(sitemapURIConverter).pageIsPublic(sitemap, state);
+	}
+
 	@Test
 	public void navigateToEmptyPageWithParams() {
 
@@ -263,6 +358,22 @@ public class DefaultV7NavigatorTest {
 
 	}
 
+	@Test
+	public void navigateToRedirectedPageWithRegexCharacters() {
+
+		// given
+		String page1 = "a+b(c)";
+		String fragment1 = "!" + page1 + "/id=2";
+		when(sitemap.getRedirectFor(page1)).thenReturn("public");
+		when(viewProMap.get("public")).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		// when
+		navigator.navigateTo(fragment1);
+		// then
+		assertThat(navigator.getNavigationState()).isEqualTo("public/id=2");
+
+	}
+
 	@Test(expected = InvalidURIException.class)
 	public void navigateTo_invalidURI() {
 
@@ -462,7 +573,7 @@ public class DefaultV7NavigatorTest {
 		when(sitemap.getRedirectFor(page)).thenReturn(page);
 		when(viewProMap.get(page)).thenReturn(view2Pro);
 		when(view2Pro.get()).thenReturn(view2);
-		when(sitemapURIConverter.pageIsPublic(anyString())).thenReturn(false);
+		when(sitemapURIConverter.pageIsPublic(any(Sitemap.class), any(NavigationState.class))).thenReturn(false);
 		// when
 		navigator.navigateTo(page);
 		// then
@@ -470,6 +581,283 @@ public class DefaultV7NavigatorTest {
 
 	}
 
+	@Test
+	public void permissionCached() {
+
+		// given
+		String page1 = "private/view1";
+		String page2 = "private/view2";
+		when(sitemap.getRedirectFor(page1)).thenReturn(page1);
+		when(sitemap.getRedirectFor(page2)).thenReturn(page2);
+		when(viewProMap.get(page1)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		when(viewProMap.get(page2)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		when(sitemapURIConverter.pageIsPublic(any(Sitemap.class), any(NavigationState.class))).thenReturn(false);
+		when(subject.getPrincipal()).thenReturn("fred");
+		when(subject.isPermitted(any(Permission.class))).thenReturn(true);
+		// when
+		navigator.navigateTo(page1);
+		navigator.navigateTo(page2);
+		navigator.navigateTo(page1);
+		navigator.navigateTo(page2);
+		// then
+		verify(subject, times(2)).isPermitted(any(Permission.class));
+		assertThat(authorizationCache.getHits()).isEqualTo(2);
+		assertThat(authorizationCache.getMisses()).isEqualTo(2);
+		// when
+		authorizationCache.invalidate("fred");
+		navigator.navigateTo(page1);
+		// then
+		verify(subject, times(3)).isPermitted(any(Permission.class));
+	}
+
+	@Test
+	public void retainedViewReused() {
+
+		// given
+		String page1 = "public/view1";
+		String page2 = "public/view2";
+		V7View retained = new ViewCacheTest.LastView();
+		when(sitemap.getRedirectFor(page1)).thenReturn(page1);
+		when(sitemap.getRedirectFor(page2)).thenReturn(page2);
+		when(viewProMap.get(page1)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(retained);
+		when(viewProMap.get(page2)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		// when
+		navigator.navigateTo(page1);
+		navigator.navigateTo(page2);
+		navigator.navigateTo(page1);
+		// then
+		assertThat(navigator.getCurrentView()).isSameAs(retained);
+		verify(view1Pro, times(1)).get();
+		verify(view2Pro, times(1)).get();
+	}
+
+	@Test
+	public void historyReused() {
+
+		// given
+		String page1 = "public/view1";
+		String page2 = "public/view2";
+		String page3 = "public/view3";
+		when(sitemap.getRedirectFor(page1)).thenReturn(page1);
+		when(sitemap.getRedirectFor(page2)).thenReturn(page2);
+		when(sitemap.getRedirectFor(page3)).thenReturn(page3);
+		when(viewProMap.get(page1)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		when(viewProMap.get(page2)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		when(viewProMap.get(page3)).thenReturn(view2Pro);
+		// when
+		navigator.navigateTo(page1);
+		navigator.navigateTo(page2);
+		navigator.navigateTo(page1);
+		// then the state is reused, but the view comes from the cache, and these views are not retained
+		assertThat(navigator.getCurrentView()).isSameAs(view1);
+		assertThat(history.size()).isEqualTo(2);
+		assertThat(history.current().getFragment()).isEqualTo(page1);
+		verify(view1Pro, times(2)).get();
+		verify(sitemap, times(1)).getRedirectFor(page1);
+		// when
+		navigator.navigateTo(page2);
+		navigator.navigateTo(page3);
+		navigator.navigateTo(page1);
+		// then page1 is no longer next to the current position, so it is resolved again
+		verify(sitemap, times(2)).getRedirectFor(page1);
+	}
+
+	@Test
+	public void routeTableUsed() {
+
+		// given
+		Sitemap routes = new Sitemap();
+		routes.append("private/orders").setParameters(RouteParameter.parse("id:int"));
+		routes.freeze();
+		String page = "private/orders";
+		when(sitemap.getRouteTable()).thenReturn(routes.getRouteTable());
+		when(sitemap.getRedirectFor(page)).thenReturn(page);
+		when(viewProMap.get(page)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		ArgumentCaptor<V7ViewChangeEvent> captor = ArgumentCaptor.forClass(V7ViewChangeEvent.class);
+		// when
+		navigator.navigateTo(page + "/id=23");
+		// then
+		verify(view2).enter(captor.capture());
+		NavigationState state = captor.getValue().getNavigationState();
+		assertThat(state.getNode()).isEqualTo(routes.nodeFor(page));
+		assertThat(state.value("id", Integer.class)).isEqualTo(23);
+		verify(sitemap, never()).nodeFor(page);
+	}
+
+	@Test(expected = InvalidURIException.class)
+	public void routeTableInvalidValue() {
+
+		// given
+		Sitemap routes = new Sitemap();
+		routes.append("private/orders").setParameters(RouteParameter.parse("id:int"));
+		routes.freeze();
+		when(sitemap.getRouteTable()).thenReturn(routes.getRouteTable());
+		// when
+		try {
+			navigator.navigateTo("private/orders/id=abc");
+		} finally {
+			// then
+			assertThat(metrics.getInvalidURI()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	public void fragmentChangesCoalesced() {
+
+		// given
+		String page1 = "public/view1";
+		String page2 = "public/view2";
+		when(sitemap.getRedirectFor(page1)).thenReturn(page1);
+		when(sitemap.getRedirectFor(page2)).thenReturn(page2);
+		when(viewProMap.get(page1)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		when(viewProMap.get(page2)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		when(page.getUriFragment()).thenReturn(page2, page2 + "/a=b");
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				((Runnable) invocation.getArguments()[0]).run();
+				return null;
+			}
+		}).when(scopedUI).accessSynchronously(any(Runnable.class));
+		ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+		coalescer.setWindow(60000);
+		navigator.navigateTo(page1);
+		// when
+		navigator.uriFragmentChanged(new UriFragmentChangedEvent(page, page2));
+		navigator.uriFragmentChanged(new UriFragmentChangedEvent(page, page2 + "/a=b"));
+		// then
+		verify(scheduler, times(1)).schedule(captor.capture(), anyLong(), any(TimeUnit.class));
+		verify(view2Pro, never()).get();
+		assertThat(coalescer.getPending()).isEqualTo(page2 + "/a=b");
+		// when
+		captor.getValue().run();
+		// then
+		assertThat(navigator.getCurrentView()).isSameAs(view2);
+		assertThat(navigator.getNavigationState()).isEqualTo(page2 + "/a=b");
+		verify(view2Pro, times(1)).get();
+		assertThat(coalescer.getReceived()).isEqualTo(2);
+		assertThat(coalescer.getDeferred()).isEqualTo(1);
+		assertThat(coalescer.getCoalesced()).isEqualTo(1);
+		assertThat(coalescer.getPending()).isNull();
+	}
+
+	@Test
+	public void overtakenNavigationAbandoned() {
+
+		// given
+		final String page1 = "public/view1";
+		final String page2 = "public/view2";
+		when(sitemap.getRedirectFor(page1)).thenReturn(page1);
+		when(sitemap.getRedirectFor(page2)).thenReturn(page2);
+		when(viewProMap.get(page1)).thenReturn(view1Pro);
+		when(viewProMap.get(page2)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		// the view for page1 navigates to page2 while it is being constructed
+		when(view1Pro.get()).thenAnswer(new Answer<V7View>() {
+
+			@Override
+			public V7View answer(InvocationOnMock invocation) {
+				navigator.navigateTo(page2);
+				return view1;
+			}
+		});
+		coalescer.setWindow(60000);
+		// when
+		navigator.navigateTo(page1);
+		// then
+		assertThat(navigator.getCurrentView()).isSameAs(view2);
+		assertThat(navigator.getNavigationState()).isEqualTo(page2);
+		verify(view1, never()).enter(any(V7ViewChangeEvent.class));
+		assertThat(coalescer.getCoalesced()).isEqualTo(1);
+	}
+
+	@Test
+	public void prefetchChildren() {
+
+		// given
+		String page = "public/view2";
+		String childPage = "public/view2/view1";
+		SitemapNode node = new SitemapNode();
+		SitemapNode child = new SitemapNode();
+		node.setId(1);
+		child.setId(2);
+		when(sitemap.nodeFor(page)).thenReturn(node);
+		when(sitemap.nodeFor(childPage)).thenReturn(child);
+		when(sitemap.getChildren(node)).thenReturn(Arrays.asList(child));
+		when(sitemap.getParent(child)).thenReturn(node);
+		when(sitemap.uri(child)).thenReturn(childPage);
+		when(sitemap.getRedirectFor(page)).thenReturn(page);
+		when(sitemap.getRedirectFor(childPage)).thenReturn(childPage);
+		when(viewProMap.get(page)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		when(viewProMap.get(childPage)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				((Runnable) invocation.getArguments()[0]).run();
+				return null;
+			}
+		}).when(scopedUI).accessSynchronously(any(Runnable.class));
+		prefetcher.setEnabled(true);
+		// when
+		navigator.navigateTo(page);
+		// then
+		verify(view1Pro, times(1)).get();
+		assertThat(prefetcher.isPrefetched(childPage)).isTrue();
+		// when
+		navigator.navigateTo(childPage);
+		// then
+		assertThat(navigator.getCurrentView()).isSameAs(view1);
+		verify(view1Pro, times(1)).get();
+		assertThat(prefetcher.getHits()).isEqualTo(1);
+		assertThat(prefetcher.getMisses()).isEqualTo(1);
+		assertThat(prefetcher.getWasted()).isEqualTo(0);
+	}
+
+	@Test
+	public void metricsRecorded() {
+
+		// given
+		String page = "public/view2";
+		String privatePage = "private/view1";
+		String invalidPage = "public/view3";
+		when(sitemap.getRedirectFor(page)).thenReturn(page);
+		when(sitemap.getRedirectFor(privatePage)).thenReturn(privatePage);
+		when(sitemap.getRedirectFor(invalidPage)).thenReturn(invalidPage);
+		when(viewProMap.get(page)).thenReturn(view2Pro);
+		when(view2Pro.get()).thenReturn(view2);
+		when(viewProMap.get(privatePage)).thenReturn(view1Pro);
+		when(view1Pro.get()).thenReturn(view1);
+		when(sitemapURIConverter.pageIsPublic(any(Sitemap.class), any(NavigationState.class))).thenReturn(true, false);
+		// when
+		navigator.navigateTo(page);
+		try {
+			navigator.navigateTo(privatePage);
+		} catch (AuthorizationException e) {
+		}
+		try {
+			navigator.navigateTo(invalidPage);
+		} catch (InvalidURIException e) {
+		}
+		// then
+		assertThat(metrics.getCompleted()).isEqualTo(1);
+		assertThat(metrics.getUnauthorized()).isEqualTo(1);
+		assertThat(metrics.getInvalidURI()).isEqualTo(1);
+		assertThat(metrics.histogram(view2.getClass(), NavigationPhase.Total).getCount()).isEqualTo(1);
+	}
+
 	@Test
 	public void error() {
 
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class FragmentCoalescerTest {
+
+	@Mock
+	ScheduledExecutorService scheduler;
+
+	@Mock
+	@SuppressWarnings("rawtypes")
+	ScheduledFuture future;
+
+	@Mock
+	UI ui;
+
+	@Mock
+	V7Navigator navigator;
+
+	FragmentCoalescer coalescer;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		coalescer = new FragmentCoalescer(scheduler, 60000);
+		when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn(future);
+	}
+
+	@Test
+	public void disabled() {
+
+		// given
+		coalescer.setWindow(0);
+		coalescer.navigated();
+		// when
+		boolean now = coalescer.offer(ui, "a", navigator);
+		// then
+		assertThat(now).isTrue();
+		assertThat(coalescer.isEnabled()).isFalse();
+		assertThat(coalescer.getReceived()).isEqualTo(0);
+		verifyZeroInteractions(scheduler);
+	}
+
+	@Test
+	public void firstChangeIsImmediate() {
+
+		// given
+		// when
+		boolean now = coalescer.offer(ui, "a", navigator);
+		// then
+		assertThat(now).isTrue();
+		assertThat(coalescer.getReceived()).isEqualTo(1);
+		assertThat(coalescer.getDeferred()).isEqualTo(0);
+	}
+
+	@Test
+	public void deferredChangeAbandonedByNavigation() {
+
+		// given
+		coalescer.navigated();
+		boolean now = coalescer.offer(ui, "a", navigator);
+		// when
+		coalescer.navigated();
+		// then
+		assertThat(now).isFalse();
+		assertThat(coalescer.getPending()).isNull();
+		assertThat(coalescer.getCoalesced()).isEqualTo(1);
+		verify(future).cancel(false);
+	}
+
+	@Test
+	public void detachedUI() {
+
+		// given
+		ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+		doThrow(new UIDetachedException()).when(ui).accessSynchronously(any(Runnable.class));
+		coalescer.navigated();
+		coalescer.offer(ui, "a", navigator);
+		verify(scheduler).schedule(captor.capture(), anyLong(), any(TimeUnit.class));
+		// when
+		captor.getValue().run();
+		// then
+		assertThat(coalescer.getPending()).isNull();
+		assertThat(coalescer.getCoalesced()).isEqualTo(1);
+		verifyZeroInteractions(navigator);
+	}
+
+	@Test
+	public void rejectedIsImmediate() {
+
+		// given
+		when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenThrow(
+				new RejectedExecutionException());
+		coalescer.navigated();
+		// when
+		boolean now = coalescer.offer(ui, "a", navigator);
+		// then
+		assertThat(now).isTrue();
+		assertThat(coalescer.getPending()).isNull();
+	}
+
+	@Test
+	public void overtakenNavigation() {
+
+		// given
+		long first = coalescer.begin();
+		// when
+		coalescer.offer(ui, "a", navigator);
+		// then
+		assertThat(coalescer.superseded(first)).isTrue();
+		assertThat(coalescer.getCoalesced()).isEqualTo(1);
+		// when
+		long second = coalescer.begin();
+		// then
+		assertThat(coalescer.superseded(second)).isFalse();
+		// when
+		long third = coalescer.begin();
+		coalescer.begin();
+		coalescer.setWindow(0);
+		// then
+		assertThat(coalescer.superseded(third)).isFalse();
+	}
+
+	@Test
+	public void schedulerShutDownWithApplication() {
+
+		// given
+		ShutdownRegistry shutdownRegistry = new ShutdownRegistry();
+		CoalescingScheduler coalescingScheduler = new CoalescingScheduler(shutdownRegistry);
+		// when
+		shutdownRegistry.shutdown();
+		// then
+		assertThat(coalescingScheduler.isShutdown()).isTrue();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package uk.co.q3c.v7.base.navigate;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class NavigationHistoryTest {
+
+	StrictURIFragmentHandler uriHandler;
+
+	NavigationHistory history;
+
+	@Before
+	public void setup() {
+		uriHandler = new StrictURIFragmentHandler();
+		history = new NavigationHistory(3);
+	}
+
+	@Test
+	public void backAndForward() {
+
+		// given
+		visit("a");
+		visit("b");
+		visit("c");
+		// when
+		NavigationHistory.Entry back = history.find("b");
+		visit("b");
+		// then
+		assertThat(back.getFragment()).isEqualTo("b");
+		assertThat(history.current().getFragment()).isEqualTo("b");
+		assertThat(history.size()).isEqualTo(3);
+		// when
+		NavigationHistory.Entry first = history.find("a");
+		NavigationHistory.Entry forward = history.find("c");
+		// then
+		assertThat(first.getState().getVirtualPage()).isEqualTo("a");
+		assertThat(forward.getFragment()).isEqualTo("c");
+		assertThat(history.find("b")).isNull();
+		assertThat(history.find("d")).isNull();
+		assertThat(history.find(null)).isNull();
+	}
+
+	@Test
+	public void onlyNextToCurrentFound() {
+
+		// given
+		visit("a");
+		visit("b");
+		visit("c");
+		// when
+		NavigationHistory.Entry earlier = history.find("a");
+		// then
+		assertThat(earlier).isNull();
+		assertThat(history.find("b")).isNotNull();
+	}
+
+	@Test
+	public void newNavigationDiscardsForward() {
+
+		// given
+		visit("a");
+		visit("b");
+		visit("c");
+		visit("b");
+		// when
+		visit("d");
+		// then
+		assertThat(history.size()).isEqualTo(3);
+		assertThat(history.current().getFragment()).isEqualTo("d");
+		assertThat(history.find("c")).isNull();
+		assertThat(history.find("b")).isNotNull();
+	}
+
+	@Test
+	public void oldestDiscardedWhenFull() {
+
+		// given
+		visit("a");
+		visit("b");
+		visit("c");
+		// when
+		visit("d");
+		visit("e");
+		// then
+		assertThat(history.size()).isEqualTo(3);
+		assertThat(history.getDepth()).isEqualTo(3);
+		assertThat(history.find("a")).isNull();
+		assertThat(history.find("b")).isNull();
+		assertThat(history.find("d")).isNotNull();
+		// when
+		history.clear();
+		// then
+		assertThat(history.size()).isEqualTo(0);
+		assertThat(history.current()).isNull();
+		assertThat(history.find("d")).isNull();
+	}
+
+	@Test
+	public void discardedWhenSitemapReplaced() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		history.checkSitemap(sitemap);
+		visit("a");
+		visit("b");
+		// when
+		history.checkSitemap(sitemap);
+		// then
+		assertThat(history.find("a")).isNotNull();
+		// when
+		history.checkSitemap(new Sitemap());
+		// then
+		assertThat(history.size()).isEqualTo(0);
+		assertThat(history.find("a")).isNull();
+	}
+
+	@Test
+	public void disabled() {
+
+		// given
+		history = new NavigationHistory(0);
+		// when
+		visit("a");
+		visit("b");
+		// then
+		assertThat(history.size()).isEqualTo(0);
+		assertThat(history.find("a")).isNull();
+	}
+
+	private void visit(String fragment) {
+		history.visit(uriHandler.navigationState(fragment), fragment);
+	}
+}
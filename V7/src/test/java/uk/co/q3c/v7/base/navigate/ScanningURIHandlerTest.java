@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.guice.uiscope.UIScopeModule;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+/**
+ * Runs all the {@link StrictURIHandlerTest} tests against {@link ScanningURIFragmentHandler}, which must interpret a
+ * fragment in exactly the same way
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({ UIScopeModule.class })
+public class ScanningURIHandlerTest extends StrictURIHandlerTest {
+
+	@Override
+	protected URIFragmentHandler createHandler() {
+		return new ScanningURIFragmentHandler();
+	}
+
+	@Test
+	public void sameAsStrict() {
+
+		// given
+		StrictURIFragmentHandler strict = new StrictURIFragmentHandler();
+		String[] fragments = { "", "/", "!", "a", "a/", "a//b", "a//b/", "a/b//c=d", "a=b=c/d", "a/=/b=/c=d/e",
+				"!a/b/c=1/c=2", "a/b/c=1/d/e=2/", "=x/a=b", "/a/b=c", "x//", "z=1/y=2/a=3" };
+		for (String fragment : fragments) {
+			// when
+			handler.setFragment(fragment);
+			strict.setFragment(fragment);
+			// then
+			assertThat(handler.virtualPage()).as(fragment).isEqualTo(strict.virtualPage());
+			assertThat(handler.fragment()).as(fragment).isEqualTo(strict.fragment());
+			assertThat(handler.parameterList()).as(fragment).isEqualTo(strict.parameterList());
+			assertThat(handler.getPathSegments()).as(fragment).isEqualTo(strict.getPathSegments());
+			NavigationState state = handler.navigationState(fragment);
+			NavigationState strictState = strict.navigationState(fragment);
+			assertThat(state.getVirtualPage()).as(fragment).isEqualTo(strictState.getVirtualPage());
+			assertThat(state.getPathSegments()).as(fragment).isEqualTo(strictState.getPathSegments());
+			assertThat(state.getParameters()).as(fragment).isEqualTo(strictState.getParameters());
+		}
+
+		// when
+		handler.setUseBang(true);
+		strict.setUseBang(true);
+		handler.setParameterValue("b", "2").setParameterValue("a", "1").removeParameter("z");
+		strict.setParameterValue("b", "2").setParameterValue("a", "1").removeParameter("z");
+		// then
+		assertThat(handler.fragment()).isEqualTo(strict.fragment());
+	}
+}
@@ -3,6 +3,8 @@ package uk.co.q3c.v7.base.navigate;
 import static org.fest.assertions.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.ArrayList;
+
 import org.apache.shiro.subject.Subject;
 import org.junit.Before;
 import org.junit.Test;
@@ -55,7 +57,7 @@ public class StrictURIHandlerTest extends ShiroIntegrationTestBase {
 
 	final String subView_p2_bang = "!view1/subView/a=b/year=1970";
 
-	StrictURIFragmentHandler handler;
+	URIFragmentHandler handler;
 
 	@Mock
 	BasicUI ui;
@@ -63,7 +65,11 @@ public class StrictURIHandlerTest extends ShiroIntegrationTestBase {
 	@Override
 	@Before
 	public void setupShiro() {
-		handler = new StrictURIFragmentHandler();
+		handler = createHandler();
+	}
+
+	protected URIFragmentHandler createHandler() {
+		return new StrictURIFragmentHandler();
 	}
 
 	@Test
@@ -236,6 +242,32 @@ public class StrictURIHandlerTest extends ShiroIntegrationTestBase {
 
 	}
 
+	@Test
+	public void navigationState() {
+
+		// given
+		handler.setFragment(view_p);
+		// when
+		NavigationState state = handler.navigationState("!view1/subView/year=1970/a=b/");
+		// then
+		assertThat(state.getFragment()).isEqualTo("!view1/subView/year=1970/a=b/");
+		assertThat(state.getVirtualPage()).isEqualTo(subView);
+		assertThat(state.getPathSegments()).containsExactly("view1", "subView");
+		assertThat(new ArrayList<>(state.getParameters().keySet())).containsExactly("a", "year");
+		assertThat(state.parameterValue("year")).isEqualTo("1970");
+		assertThat(state.getNodeChain()).isEmpty();
+		// handler is unchanged
+		assertThat(handler.virtualPage()).isEqualTo(view);
+		assertThat(handler.parameterList()).containsOnly("a=b");
+
+		// when
+		state = handler.navigationState(null);
+		// then
+		assertThat(state.getVirtualPage()).isEqualTo(home);
+		assertThat(state.getPathSegments()).isEmpty();
+		assertThat(state.getParameters()).isEmpty();
+	}
+
 	protected ScopedUI createUI() {
 		UIKey uiKey = new UIKey(3);
 		CurrentInstance.set(UI.class, null);
@@ -51,4 +51,28 @@ public class URITrackerTest {
 		assertThat(tracker.uri()).isEqualTo("root2/level1c");
 
 	}
+
+	@Test
+	public void trackDeep() {
+
+		// given
+		URITracker tracker = new URITracker();
+		StringBuilder expected = new StringBuilder("a0");
+		tracker.track(1, "a0");
+		// when
+		for (int i = 1; i < 20; i++) {
+			tracker.track(i + 1, "a" + i);
+			expected.append("/a").append(i);
+		}
+		// then
+		assertThat(tracker.uri()).isEqualTo(expected.toString());
+		// when
+		tracker.track(3, "b");
+		// then
+		assertThat(tracker.uri()).isEqualTo("a0/a1/b");
+		// when indent skips a level
+		tracker.track(5, "c");
+		// then
+		assertThat(tracker.uri()).isEqualTo("a0/a1/b/c");
+	}
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package uk.co.q3c.v7.base.navigate;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.view.V7View;
+import uk.co.q3c.v7.base.view.V7ViewChangeEvent;
+import uk.co.q3c.v7.base.view.ViewRetention;
+import uk.co.q3c.v7.base.view.ViewRetention.Policy;
+
+import com.google.inject.Provider;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+import com.vaadin.ui.Component;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class ViewCacheTest {
+
+	Provider<V7View> newPro = new ViewProvider(NewView.class);
+	Provider<V7View> lastPro = new ViewProvider(LastView.class);
+	Provider<V7View> foreverPro = new ViewProvider(ForeverView.class);
+
+	ViewCache cache;
+
+	@Before
+	public void setup() {
+		cache = new ViewCache(V7Ini.DEFAULT_VIEW_CACHE_SIZE);
+	}
+
+	@Test
+	public void policy() {
+
+		// given
+		// when
+		// then
+		assertThat(cache.policyFor(NewView.class)).isEqualTo(Policy.Always_New);
+		assertThat(cache.policyFor(LastView.class)).isEqualTo(Policy.Keep_Last);
+		assertThat(cache.policyFor(ForeverView.class)).isEqualTo(Policy.Keep_Forever);
+		// inherited
+		assertThat(cache.policyFor(SubLastView.class)).isEqualTo(Policy.Keep_Last);
+	}
+
+	@Test
+	public void retained() {
+
+		// given
+		V7View newView = cache.get("a", newPro);
+		V7View lastView = cache.get("b", lastPro);
+		V7View foreverView = cache.get("c", foreverPro);
+		// when
+		// then
+		assertThat(cache.get("a", newPro)).isNotSameAs(newView);
+		assertThat(cache.get("b", lastPro)).isSameAs(lastView);
+		assertThat(cache.get("c", foreverPro)).isSameAs(foreverView);
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void leastRecentlyUsedReleased() {
+
+		// given
+		cache.setCapacity(2);
+		V7View view1 = cache.get("1", lastPro);
+		V7View view2 = cache.get("2", lastPro);
+		V7View forever = cache.get("f", foreverPro);
+		// when
+		cache.get("1", lastPro); // 2 is now the least recently used
+		cache.get("3", lastPro);
+		// then
+		assertThat(cache.size()).isEqualTo(3);
+		assertThat(cache.get("1", lastPro)).isSameAs(view1);
+		assertThat(cache.get("f", foreverPro)).isSameAs(forever);
+		assertThat(cache.get("2", lastPro)).isNotSameAs(view2);
+	}
+
+	@Test
+	public void reduceCapacity() {
+
+		// given
+		cache.get("1", lastPro);
+		cache.get("2", lastPro);
+		cache.get("3", lastPro);
+		// when
+		cache.setCapacity(1);
+		// then
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void clear() {
+
+		// given
+		V7View view = cache.get("1", foreverPro);
+		cache.get("2", lastPro);
+		// when
+		cache.clear();
+		// then
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.get("1", foreverPro)).isNotSameAs(view);
+	}
+
+	static class ViewProvider implements Provider<V7View> {
+		private final Class<? extends V7View> viewClass;
+
+		ViewProvider(Class<? extends V7View> viewClass) {
+			this.viewClass = viewClass;
+		}
+
+		@Override
+		public V7View get() {
+			try {
+				return viewClass.newInstance();
+			} catch (InstantiationException | IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	static class NewView implements V7View {
+
+		@Override
+		public void enter(V7ViewChangeEvent event) {
+		}
+
+		@Override
+		public Component getRootComponent() {
+			return null;
+		}
+	}
+
+	@ViewRetention
+	static class LastView extends NewView {
+	}
+
+	static class SubLastView extends LastView {
+	}
+
+	@ViewRetention(Policy.Keep_Forever)
+	static class ForeverView extends NewView {
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.fest.assertions.Fail;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+import uk.co.q3c.v7.base.view.V7View;
+
+import com.google.inject.Provider;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+import com.vaadin.ui.UI;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class ViewPrefetcherTest {
+
+	@Mock
+	UI ui;
+
+	@Mock
+	Provider<V7View> viewPro;
+
+	@Mock
+	V7View view;
+
+	ViewPrefetcher prefetcher;
+
+	// tasks are held until run() is called, so that pending views can be tested
+	List<Runnable> tasks;
+	boolean reject;
+
+	@Before
+	public void setup() {
+		tasks = new ArrayList<>();
+		prefetcher = new ViewPrefetcher(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				if (reject) {
+					throw new RejectedExecutionException();
+				}
+				tasks.add(command);
+			}
+		});
+		prefetcher.setEnabled(true);
+		when(viewPro.get()).thenReturn(view);
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				((Runnable) invocation.getArguments()[0]).run();
+				return null;
+			}
+		}).when(ui).accessSynchronously(any(Runnable.class));
+	}
+
+	// runs the tasks scheduled so far, but not those they schedule
+	private void run() {
+		List<Runnable> scheduled = new ArrayList<>(tasks);
+		tasks.clear();
+		for (Runnable task : scheduled) {
+			task.run();
+		}
+	}
+
+	@Test
+	public void prefetchAndTake() {
+
+		// given
+		prefetcher.prefetch(ui, "a", viewPro);
+		assertThat(prefetcher.isPrefetched("a")).isTrue();
+		// when
+		run();
+		// then
+		assertThat(prefetcher.size()).isEqualTo(1);
+		assertThat(prefetcher.take("a")).isSameAs(view);
+		assertThat(prefetcher.take("a")).isNull();
+		assertThat(prefetcher.isPrefetched("a")).isFalse();
+		assertThat(prefetcher.getScheduled()).isEqualTo(1);
+		assertThat(prefetcher.getHits()).isEqualTo(1);
+		assertThat(prefetcher.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void pendingNotScheduledTwice() {
+
+		// given
+		prefetcher.prefetch(ui, "a", viewPro);
+		// when
+		prefetcher.prefetch(ui, "a", viewPro);
+		run();
+		prefetcher.prefetch(ui, "a", viewPro);
+		// then
+		assertThat(prefetcher.getScheduled()).isEqualTo(1);
+		verify(viewPro, times(1)).get();
+	}
+
+	@Test
+	public void oldestDiscarded() {
+
+		// given
+		prefetcher.setCapacity(2);
+		// when
+		prefetcher.prefetch(ui, "a", viewPro);
+		prefetcher.prefetch(ui, "b", viewPro);
+		prefetcher.prefetch(ui, "c", viewPro);
+		run();
+		// then
+		assertThat(prefetcher.size()).isEqualTo(2);
+		assertThat(prefetcher.isPrefetched("a")).isFalse();
+		assertThat(prefetcher.getWasted()).isEqualTo(1);
+		// when
+		prefetcher.setCapacity(1);
+		// then
+		assertThat(prefetcher.size()).isEqualTo(1);
+		assertThat(prefetcher.getWasted()).isEqualTo(2);
+	}
+
+	@Test
+	public void rejected() {
+
+		// given
+		reject = true;
+		// when
+		prefetcher.prefetch(ui, "a", viewPro);
+		// then
+		assertThat(prefetcher.getRejected()).isEqualTo(1);
+		assertThat(prefetcher.getScheduled()).isEqualTo(0);
+		assertThat(prefetcher.isPrefetched("a")).isFalse();
+	}
+
+	@Test
+	public void disabled() {
+
+		// given
+		prefetcher.prefetch(ui, "a", viewPro);
+		run();
+		prefetcher.prefetch(ui, "b", viewPro);
+		// when
+		prefetcher.setEnabled(false);
+		run();
+		prefetcher.prefetch(ui, "c", viewPro);
+		// then
+		assertThat(tasks).isEmpty();
+		assertThat(prefetcher.size()).isEqualTo(0);
+		assertThat(prefetcher.getWasted()).isEqualTo(2);
+		assertThat(prefetcher.take("a")).isNull();
+		assertThat(prefetcher.getMisses()).isEqualTo(0);
+	}
+
+	@Test
+	public void selectionInBackground() {
+
+		// given
+		Runnable selection = new Runnable() {
+
+			@Override
+			public void run() {
+				prefetcher.prefetch(ui, "a", viewPro);
+			}
+		};
+		// when
+		prefetcher.select(selection);
+		// then
+		assertThat(prefetcher.isPrefetched("a")).isFalse();
+		// when
+		run();
+		run();
+		// then
+		assertThat(prefetcher.take("a")).isSameAs(view);
+	}
+
+	@Test
+	public void enabledByIni() {
+
+		// given
+		V7Ini ini = mock(V7Ini.class);
+		when(ini.optionPrefetchViews()).thenReturn(3);
+		// when
+		prefetcher = new ViewPrefetcher(new ViewPrefetchExecutor(new ShutdownRegistry()), ini);
+		// then
+		assertThat(prefetcher.isEnabled()).isTrue();
+		assertThat(prefetcher.getCapacity()).isEqualTo(3);
+		// when
+		when(ini.optionPrefetchViews()).thenReturn(0);
+		prefetcher = new ViewPrefetcher(new ViewPrefetchExecutor(new ShutdownRegistry()), ini);
+		// then
+		assertThat(prefetcher.isEnabled()).isFalse();
+	}
+
+	@Test
+	public void noSelectionWhileDisabled() {
+
+		// given
+		prefetcher.setEnabled(false);
+		// when
+		prefetcher.select(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+		});
+		// then
+		assertThat(tasks).isEmpty();
+	}
+
+	@Test
+	public void executorShutDownWithApplication() {
+
+		// given
+		ShutdownRegistry shutdownRegistry = new ShutdownRegistry();
+		ViewPrefetchExecutor executor = new ViewPrefetchExecutor(shutdownRegistry);
+		// when
+		shutdownRegistry.shutdown();
+		// then
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+				}
+			});
+			Fail.fail("prefetch accepted after shutdown");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.metrics;
+
+import static org.fest.assertions.Assertions.*;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class NavigationMetricsTest {
+
+	MBeanServer server;
+
+	NavigationMetrics metrics;
+
+	@Before
+	public void setup() {
+		server = MBeanServerFactory.newMBeanServer();
+		metrics = new NavigationMetrics(server);
+	}
+
+	@Test
+	public void recordAndExpose() throws Exception {
+
+		// given
+		NavigationTimer timer = metrics.start();
+		timer.lap(NavigationPhase.Redirect);
+		timer.lap(NavigationPhase.Enter);
+		metrics.invalidURI();
+		metrics.unauthorized();
+		// when
+		metrics.record(String.class, timer);
+		metrics.record(String.class, timer);
+		// then
+		ObjectName navigation = new ObjectName(NavigationMetrics.DOMAIN + ":type=Navigation");
+		assertThat(server.getAttribute(navigation, "Completed")).isEqualTo(2L);
+		assertThat(server.getAttribute(navigation, "InvalidURI")).isEqualTo(1L);
+		assertThat(server.getAttribute(navigation, "Unauthorized")).isEqualTo(1L);
+		assertThat(server.getAttribute(navigation, "Blocked")).isEqualTo(0L);
+		ObjectName phase = new ObjectName(NavigationMetrics.DOMAIN
+				+ ":type=NavigationPhase,view=java.lang.String,phase=Total");
+		assertThat(server.getAttribute(phase, "Count")).isEqualTo(2L);
+		assertThat(metrics.histogram(String.class, NavigationPhase.Enter).getCount()).isEqualTo(2);
+		assertThat(metrics.histogram(Integer.class, NavigationPhase.Enter)).isNull();
+	}
+
+	@Test
+	public void reset() throws Exception {
+
+		// given
+		metrics.record(String.class, metrics.start());
+		metrics.blocked();
+		// when
+		server.invoke(new ObjectName(NavigationMetrics.DOMAIN + ":type=Navigation"), "reset", null, null);
+		// then
+		assertThat(metrics.getCompleted()).isEqualTo(0);
+		assertThat(metrics.getBlocked()).isEqualTo(0);
+		assertThat(metrics.histogram(String.class, NavigationPhase.Total).getCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void unregister() throws Exception {
+
+		// given
+		metrics.record(String.class, metrics.start());
+		// when
+		metrics.unregister();
+		// then
+		assertThat(server.queryNames(new ObjectName(NavigationMetrics.DOMAIN + ":*"), null)).isEmpty();
+	}
+
+	@Test
+	public void unregisteredOnShutdown() throws Exception {
+
+		// given
+		ShutdownRegistry shutdownRegistry = new ShutdownRegistry();
+		MBeanServer otherServer = MBeanServerFactory.newMBeanServer();
+		NavigationMetrics other = new NavigationMetrics(otherServer, shutdownRegistry);
+		other.record(String.class, other.start());
+		// when
+		shutdownRegistry.shutdown();
+		// then
+		assertThat(otherServer.queryNames(new ObjectName(NavigationMetrics.DOMAIN + ":*"), null)).isEmpty();
+	}
+
+	@Test
+	public void percentiles() {
+
+		// given
+		PhaseHistogram histogram = new PhaseHistogram("view", NavigationPhase.Enter);
+		// when
+		for (int i = 0; i < 90; i++) {
+			histogram.record(100000); // 100 micros
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(5000000); // 5 millis
+		}
+		// then
+		assertThat(histogram.getCount()).isEqualTo(100);
+		assertThat(histogram.getMaxMicros()).isEqualTo(5000);
+		assertThat(histogram.getMeanMicros()).isEqualTo(590);
+		assertThat(histogram.getP50Micros()).isEqualTo(128);
+		assertThat(histogram.getP95Micros()).isEqualTo(5000);
+		assertThat(histogram.getP99Micros()).isEqualTo(5000);
+	}
+}
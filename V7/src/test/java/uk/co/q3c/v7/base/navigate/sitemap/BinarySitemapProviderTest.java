@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.navigate.StandardPageKey;
+import uk.co.q3c.v7.i18n.AnnotationI18NTranslator;
+import uk.co.q3c.v7.i18n.I18NTranslator;
+
+import com.google.inject.AbstractModule;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class BinarySitemapProviderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Inject
+	SitemapCompiler compiler;
+
+	@Inject
+	BinarySitemapProvider provider;
+
+	@Inject
+	TextReaderSitemapProvider textProvider;
+
+	private File sitemapFile;
+	private File artifact;
+	private List<String> lines;
+
+	@Before
+	public void setup() throws IOException {
+		lines = FileUtils.readLines(new File("src/test/java/uk/co/q3c/v7/base/navigate/sitemap_good.properties"));
+		sitemapFile = folder.newFile("sitemap.properties");
+		FileUtils.writeLines(sitemapFile, lines);
+		artifact = new File(SitemapCompiler.artifactPath(sitemapFile.getPath()));
+	}
+
+	@Test
+	public void compileAndLoad() throws IOException {
+
+		// given
+		compiler.compile(sitemapFile, artifact);
+		textProvider.parse(sitemapFile);
+		Sitemap expected = textProvider.getSitemap();
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isTrue();
+		Sitemap sitemap = provider.getSitemap();
+		assertThat(sitemap.isFrozen()).isTrue();
+		assertThat(sitemap.hasErrors()).isFalse();
+		assertThat(sitemap.uris()).containsOnly(expected.uris().toArray());
+		assertThat(sitemap.getRedirects()).isEqualTo(expected.getRedirects());
+		assertThat(sitemap.getStandardPages()).isEqualTo(expected.getStandardPages());
+		assertThat(sitemap.getPublicRoot()).isEqualTo(expected.getPublicRoot());
+		assertThat(sitemap.getPrivateRoot()).isEqualTo(expected.getPrivateRoot());
+		assertThat(sitemap.getReport()).isNotEmpty();
+		for (String uri : expected.uris()) {
+			SitemapNode expectedNode = expected.nodeFor(uri);
+			SitemapNode node = sitemap.nodeFor(uri);
+			assertThat(node.getId()).isEqualTo(expectedNode.getId());
+			assertThat(node.getViewClass()).isEqualTo(expectedNode.getViewClass());
+			assertThat(node.getLabelKey()).isEqualTo(expectedNode.getLabelKey());
+			assertThat(node.getLabel()).isEqualTo(expectedNode.getLabel());
+		}
+		assertThat(sitemap.nodeFor(sitemap.standardPageURI(StandardPageKey.Login)).getLabelKey()).isEqualTo(
+				StandardPageKey.Login);
+	}
+
+	@Test
+	public void parametersCompiled() throws IOException {
+
+		// given
+		lines.set(lines.indexOf("--transfers     : subview.Transfer"), "--transfers{id:int,from}  : subview.Transfer");
+		FileUtils.writeLines(sitemapFile, lines);
+		compiler.compile(sitemapFile, artifact);
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isTrue();
+		SitemapNode node = provider.getSitemap().nodeFor("private/transfers");
+		assertThat(RouteParameter.declaration(node.getParameters())).isEqualTo("id:int,from:string");
+		assertThat(provider.getSitemap().getRouteTable().match("private/transfers/id=7").value("id", Integer.class))
+				.isEqualTo(7);
+	}
+
+	@Test
+	public void staleArtifactIsNotUsed() throws IOException {
+
+		// given
+		compiler.compile(sitemapFile, artifact);
+		lines.add(lines.indexOf("--options                                 ~ Opt"), "--extra : subview.Transfer ~ Opt");
+		FileUtils.writeLines(sitemapFile, lines);
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isFalse();
+		assertThat(provider.getSitemap().hasUri("private/extra")).isTrue();
+	}
+
+	@Test
+	public void missingArtifactIsNotUsed() {
+
+		// given
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isFalse();
+		assertThat(provider.getSitemap().hasUri("private/transfers")).isTrue();
+	}
+
+	@Test
+	public void corruptArtifactIsNotUsed() throws IOException {
+
+		// given
+		FileUtils.writeStringToFile(artifact, "not a sitemap");
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isFalse();
+		assertThat(provider.getSitemap().hasUri("private/transfers")).isTrue();
+	}
+
+	@Test
+	public void damagedArtifactIsNotUsed() throws IOException {
+
+		// given
+		compiler.compile(sitemapFile, artifact);
+		byte[] bytes = FileUtils.readFileToByteArray(artifact);
+		// header is 24 bytes, then the size of the string table
+		bytes[24] = (byte) 0x7f;
+		FileUtils.writeByteArrayToFile(artifact, bytes);
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isFalse();
+		assertThat(provider.getSitemap().hasUri("private/transfers")).isTrue();
+	}
+
+	@Test
+	public void truncatedArtifactIsNotUsed() throws IOException {
+
+		// given
+		compiler.compile(sitemapFile, artifact);
+		byte[] bytes = FileUtils.readFileToByteArray(artifact);
+		FileUtils.writeByteArrayToFile(artifact, Arrays.copyOf(bytes, bytes.length / 2));
+		// when
+		provider.parse(sitemapFile);
+		// then
+		assertThat(provider.isFromArtifact()).isFalse();
+		assertThat(provider.getSitemap().hasUri("private/transfers")).isTrue();
+	}
+
+	@Test(expected = SiteMapException.class)
+	public void sourceWithErrorsIsNotCompiled() throws IOException {
+
+		// given
+		lines.add(lines.indexOf("--options                                 ~ Opt"), "--extra : subview.NoSuchView ~ Opt");
+		FileUtils.writeLines(sitemapFile, lines);
+		// when
+		compiler.compile(sitemapFile, artifact);
+		// then
+	}
+
+	@ModuleProvider
+	protected AbstractModule module() {
+		return new AbstractModule() {
+
+			@Override
+			protected void configure() {
+				bind(I18NTranslator.class).to(AnnotationI18NTranslator.class);
+			}
+
+		};
+	}
+}
@@ -51,6 +51,22 @@ public class MapLineReaderTest {
 
 	}
 
+	@Test
+	public void full_correct_Line_tabs_and_trailing_whitespace() {
+
+		// given
+		String line = "\t--\tlevel2\t: view\t~ key \t";
+		// when
+		MapLineRecord result = reader.processLine(33, line, syntaxErrors, indentationErrors, 1);
+		// then
+		assertThat(result.getIndentLevel()).isEqualTo(2);
+		assertThat(result.getSegment()).isEqualTo("level2");
+		assertThat(result.getViewName()).isEqualTo("view");
+		assertThat(result.getKeyName()).isEqualTo("key");
+		assertThat(syntaxErrors).isEmpty();
+
+	}
+
 	@Test
 	public void full_correct_Line_leading_spaces() {
 
@@ -111,6 +127,37 @@ public class MapLineReaderTest {
 
 	}
 
+	@Test
+	public void parameters() {
+
+		// given
+		String line = "--  level2{id:int,status}   : view  ~ key";
+		// when
+		MapLineRecord result = reader.processLine(33, line, syntaxErrors, indentationErrors, 1);
+		// then
+		assertThat(syntaxErrors).isEmpty();
+		assertThat(result.getSegment()).isEqualTo("level2");
+		assertThat(RouteParameter.declaration(result.getParameters())).isEqualTo("id:int,status:string");
+		assertThat(result.getViewName()).isEqualTo("view");
+		assertThat(result.getKeyName()).isEqualTo("key");
+
+	}
+
+	@Test
+	public void invalid_parameters() {
+
+		// given
+		String unclosed = "--  level2{id:int   : view  ~ key";
+		String badType = "--  level2{id:float}   : view  ~ key";
+		// when
+		reader.processLine(33, unclosed, syntaxErrors, indentationErrors, 1);
+		reader.processLine(34, badType, syntaxErrors, indentationErrors, 1);
+		// then
+		assertThat(syntaxErrors).contains(MapLineReader.PARAMETERS + "33");
+		assertThat(syntaxErrors).hasSize(2);
+
+	}
+
 	@Test
 	public void invalid_no_hypen() {
 
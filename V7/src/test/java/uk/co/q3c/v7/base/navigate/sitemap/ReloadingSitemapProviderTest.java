@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+import uk.co.q3c.v7.i18n.AnnotationI18NTranslator;
+import uk.co.q3c.v7.i18n.I18NTranslator;
+
+import com.google.inject.AbstractModule;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class ReloadingSitemapProviderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Inject
+	ReloadingSitemapProvider provider;
+
+	@Inject
+	Provider<TextReaderSitemapProvider> parserPro;
+
+	private File sitemapFile;
+	private List<String> lines;
+
+	@Before
+	public void setup() throws IOException {
+		lines = FileUtils.readLines(new File("src/test/java/uk/co/q3c/v7/base/navigate/sitemap_good.properties"));
+		sitemapFile = folder.newFile("sitemap.properties");
+		FileUtils.writeLines(sitemapFile, lines);
+	}
+
+	@After
+	public void teardown() {
+		provider.stop();
+	}
+
+	@Test
+	public void reload() throws IOException {
+
+		// given
+		provider.parse(sitemapFile);
+		// reload is called directly, so the watcher is not needed
+		provider.stop();
+		Sitemap original = provider.get();
+		lines.add(lines.indexOf("--options                                 ~ Opt"), "--extra : subview.Transfer ~ Opt");
+		FileUtils.writeLines(sitemapFile, lines);
+		// when
+		boolean reloaded = provider.reload(sitemapFile);
+		// then
+		assertThat(reloaded).isTrue();
+		assertThat(provider.get()).isNotSameAs(original);
+		assertThat(provider.get().hasUri("private/extra")).isTrue();
+		assertThat(provider.get().isFrozen()).isTrue();
+		assertThat(original.hasUri("private/extra")).isFalse();
+	}
+
+	@Test
+	public void reloadWithErrorsKeepsCurrent() throws IOException {
+
+		// given
+		provider.parse(sitemapFile);
+		// reload is called directly, so the watcher is not needed
+		provider.stop();
+		Sitemap original = provider.get();
+		lines.add(lines.indexOf("--options                                 ~ Opt"), "--extra : subview.NoSuchView ~ Opt");
+		FileUtils.writeLines(sitemapFile, lines);
+		// when
+		boolean reloaded = provider.reload(sitemapFile);
+		// then
+		assertThat(reloaded).isFalse();
+		assertThat(provider.get()).isSameAs(original);
+	}
+
+	@Test
+	public void reloadMissingFileKeepsCurrent() {
+
+		// given
+		provider.parse(sitemapFile);
+		// reload is called directly, so the watcher is not needed
+		provider.stop();
+		Sitemap original = provider.get();
+		// when
+		boolean reloaded = provider.reload(new File(folder.getRoot(), "missing.properties"));
+		// then
+		assertThat(reloaded).isFalse();
+		assertThat(provider.get()).isSameAs(original);
+	}
+
+	@Test
+	public void reloadFailureKeepsCurrent() {
+
+		// given
+		final TextReaderSitemapProvider parser = mock(TextReaderSitemapProvider.class);
+		doThrow(new SiteMapException("half written")).when(parser).parse(any(File.class));
+		ReloadingSitemapProvider failing = new ReloadingSitemapProvider(new Provider<TextReaderSitemapProvider>() {
+
+			@Override
+			public TextReaderSitemapProvider get() {
+				return parser;
+			}
+		}, new ShutdownRegistry());
+		// when
+		boolean reloaded = failing.reload(sitemapFile);
+		// then
+		assertThat(reloaded).isFalse();
+		assertThat(failing.getSitemap()).isNull();
+	}
+
+	@Test
+	public void watcherStoppedOnShutdown() {
+
+		// given
+		ShutdownRegistry shutdownRegistry = new ShutdownRegistry();
+		ReloadingSitemapProvider watching = new ReloadingSitemapProvider(parserPro, shutdownRegistry);
+		watching.parse(sitemapFile);
+		assertThat(shutdownRegistry.size()).isEqualTo(1);
+		// when
+		shutdownRegistry.shutdown();
+		// then
+		assertThat(shutdownRegistry.size()).isEqualTo(0);
+		// stopping again is harmless
+		watching.stop();
+	}
+
+	@Test
+	public void watch() throws Exception {
+
+		// given
+		provider.parse(sitemapFile);
+		Sitemap original = provider.get();
+		lines.add(lines.indexOf("--options                                 ~ Opt"), "--extra : subview.Transfer ~ Opt");
+		// when
+		FileUtils.writeLines(sitemapFile, lines);
+		// then
+		long timeout = System.currentTimeMillis() + 10000;
+		while ((provider.get() == original) && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(100);
+		}
+		assertThat(provider.get()).isNotSameAs(original);
+		assertThat(provider.get().hasUri("private/extra")).isTrue();
+	}
+
+	@ModuleProvider
+	protected AbstractModule module() {
+		return new AbstractModule() {
+
+			@Override
+			protected void configure() {
+				bind(I18NTranslator.class).to(AnnotationI18NTranslator.class);
+			}
+
+		};
+	}
+}
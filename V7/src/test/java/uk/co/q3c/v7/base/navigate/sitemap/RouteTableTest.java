@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.navigate.InvalidURIException;
+import uk.co.q3c.v7.base.navigate.NavigationState;
+import uk.co.q3c.v7.base.navigate.StrictURIFragmentHandler;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class RouteTableTest {
+
+	@Inject
+	StrictURIFragmentHandler handler;
+
+	Sitemap sitemap;
+
+	SitemapNode orders;
+
+	@Before
+	public void setup() {
+		sitemap = new Sitemap();
+		sitemap.append("");
+		sitemap.append("public/home");
+		orders = sitemap.append("private/orders");
+		orders.setParameters(RouteParameter.parse("id:int,total:long,paid:boolean,status"));
+		sitemap.freeze();
+	}
+
+	@Test
+	public void compiled() {
+
+		// given
+		// when
+		RouteTable routes = sitemap.getRouteTable();
+		// then
+		assertThat(routes).isNotNull();
+		assertThat(routes.size()).isEqualTo(5);
+	}
+
+	@Test
+	public void typedParameters() {
+
+		// given
+		String fragment = "!private/orders/status=open/id=23/total=5000000000/paid=true/";
+		// when
+		NavigationState state = sitemap.getRouteTable().match(fragment);
+		// then
+		assertThat(state.getFragment()).isEqualTo(fragment);
+		assertThat(state.getVirtualPage()).isEqualTo("private/orders");
+		assertThat(state.getPathSegments()).containsExactly("private", "orders");
+		assertThat(state.getNode()).isEqualTo(orders);
+		assertThat(state.getNodeChain()).containsExactly(sitemap.nodeFor("private"), orders);
+		assertThat(state.value("id", Integer.class)).isEqualTo(23);
+		assertThat(state.value("total", Long.class)).isEqualTo(5000000000L);
+		assertThat(state.value("paid", Boolean.class)).isTrue();
+		assertThat(state.value("status", String.class)).isEqualTo("open");
+		assertThat(state.parameterValue("id")).isEqualTo("23");
+	}
+
+	@Test
+	public void undeclaredParameters() {
+
+		// given
+		// when
+		NavigationState state = sitemap.getRouteTable().match("public/home/a=b");
+		// then
+		assertThat(state.getNode()).isEqualTo(sitemap.nodeFor("public/home"));
+		assertThat(state.value("a", String.class)).isEqualTo("b");
+	}
+
+	@Test(expected = InvalidURIException.class)
+	public void invalidValue() {
+
+		// given
+		// when
+		sitemap.getRouteTable().match("private/orders/id=abc");
+		// then
+	}
+
+	@Test
+	public void notInTable() {
+
+		// given
+		// when
+		// then
+		assertThat(sitemap.getRouteTable().match("private/accounts")).isNull();
+		assertThat(sitemap.getRouteTable().match("private//orders")).isNull();
+		assertThat(sitemap.getRouteTable().match("id=1")).isNull();
+		assertThat(sitemap.getRouteTable().match("").getNode()).isEqualTo(sitemap.nodeFor(""));
+	}
+
+	@Test
+	public void sameAsStrict() {
+
+		// given
+		String[] fragments = { "", "public", "public/home/", "!private/orders/a=b/c", "private/orders/x=1=2/y=/=z",
+				"private/orders/id=3/public" };
+		for (String fragment : fragments) {
+			// when
+			NavigationState expected = handler.navigationState(fragment);
+			NavigationState state = sitemap.getRouteTable().match(fragment);
+			// then
+			assertThat(state.getVirtualPage()).isEqualTo(expected.getVirtualPage());
+			assertThat(state.getPathSegments()).isEqualTo(expected.getPathSegments());
+			assertThat(new ArrayList<>(state.getParameters().entrySet())).isEqualTo(
+					new ArrayList<>(expected.getParameters().entrySet()));
+		}
+	}
+}
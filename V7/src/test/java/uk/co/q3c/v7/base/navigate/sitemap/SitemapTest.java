@@ -16,8 +16,11 @@ import static org.fest.assertions.Assertions.*;
 
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -169,6 +172,35 @@ public class SitemapTest {
 
 	}
 
+	@Test
+	public void redirectChain() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		sitemap.append("public/home");
+		sitemap.getRedirects().put("", "home");
+		sitemap.getRedirects().put("home", "public");
+		sitemap.getRedirects().put("public", "public/home");
+		sitemap.getRedirects().put("a", "b");
+		sitemap.getRedirects().put("b", "a");
+		sitemap.getRedirects().put("c", "a");
+		Set<String> loops = new HashSet<>();
+		// when
+		Map<String, String> resolved = sitemap.resolveRedirects(loops);
+		// then
+		assertThat(resolved).hasSize(3);
+		assertThat(resolved.get("")).isEqualTo("public/home");
+		assertThat(resolved.get("home")).isEqualTo("public/home");
+		assertThat(loops).containsOnly("a", "b", "c");
+		// when
+		sitemap.freeze();
+		// then
+		assertThat(sitemap.getRedirectFor("")).isEqualTo("public/home");
+		assertThat(sitemap.getRedirectFor("public")).isEqualTo("public/home");
+		assertThat(sitemap.getRedirectFor("a")).isEqualTo("a");
+		assertThat(sitemap.getRedirectFor("public/home")).isEqualTo("public/home");
+	}
+
 	@Test
 	public void getRedirectFor() {
 
@@ -222,6 +254,70 @@ public class SitemapTest {
 
 	}
 
+	@Test
+	public void nodeFor() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode view1 = sitemap.append("public/home/view1");
+		sitemap.append("private/home/wiggly");
+
+		// when
+
+		// then
+		assertThat(sitemap.nodeFor("public/home/view1")).isEqualTo(view1);
+		assertThat(sitemap.nodeFor("public/home/view3")).isNull();
+		assertThat(sitemap.hasUri("public/home/view3")).isFalse();
+
+		// when
+		SitemapNode view3 = sitemap.append("public/home/view3");
+
+		// then index has been updated
+		assertThat(sitemap.nodeFor("public/home/view3")).isEqualTo(view3);
+		assertThat(sitemap.hasUri("public/home/view3")).isTrue();
+	}
+
+	@Test
+	public void indexFollowsStructuralChange() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode parent = new SitemapNode();
+		parent.setUriSegment("home");
+		SitemapNode child = new SitemapNode();
+		child.setUriSegment("login");
+		sitemap.addChild(parent, child);
+		assertThat(sitemap.hasUri("home/login")).isTrue();
+		SitemapNode grandparent = new SitemapNode();
+		grandparent.setUriSegment("public");
+
+		// when an existing root is moved
+		sitemap.addChild(grandparent, parent);
+
+		// then
+		assertThat(sitemap.hasUri("home/login")).isFalse();
+		assertThat(sitemap.nodeFor("public/home/login")).isEqualTo(child);
+		assertThat(sitemap.append("public/home/login")).isEqualTo(child);
+		assertThat(sitemap.getNodeCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void reindex() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode node = sitemap.append("public/home");
+		node.setUriSegment("house");
+
+		// when
+		sitemap.reindex();
+
+		// then
+		assertThat(sitemap.hasUri("public/home")).isFalse();
+		assertThat(sitemap.nodeFor("public/house")).isEqualTo(node);
+		assertThat(sitemap.append("public/house")).isEqualTo(node);
+	}
+
 	@Test
 	public void privateNode() {
 
@@ -286,6 +382,145 @@ public class SitemapTest {
 
 	}
 
+	@Test
+	public void freeze() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode node = sitemap.append("private/home");
+		sitemap.append("public/login");
+		sitemap.getRedirects().put("", "public/login");
+		// when
+		sitemap.freeze();
+		// then
+		assertThat(sitemap.isFrozen()).isTrue();
+		assertThat(node.isFrozen()).isTrue();
+		assertThat(sitemap.nodeFor("private/home")).isEqualTo(node);
+		assertThat(sitemap.getPrivateRootNode().getUriSegment()).isEqualTo("private");
+		assertThat(sitemap.getPublicRootNode().getUriSegment()).isEqualTo("public");
+		assertThat(sitemap.getRedirectFor("")).isEqualTo("public/login");
+		assertThat(sitemap.getNodeCount()).isEqualTo(4);
+	}
+
+	@Test(expected = SiteMapException.class)
+	public void frozenSitemapCannotBeChanged() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		sitemap.append("private/home");
+		sitemap.freeze();
+		// when
+		sitemap.append("private/other");
+		// then
+	}
+
+	@Test(expected = SiteMapException.class)
+	public void frozenNodeCannotBeChanged() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode node = sitemap.append("private/home");
+		sitemap.freeze();
+		// when
+		node.setUriSegment("other");
+		// then
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void frozenRedirectsCannotBeChanged() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		sitemap.freeze();
+		// when
+		sitemap.getRedirects().put("home", "public/home");
+		// then
+	}
+
+	@Test
+	public void positions() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode login = sitemap.append("public/account/login");
+		SitemapNode account = sitemap.getParent(login);
+		SitemapNode publicNode = sitemap.getParent(account);
+		SitemapNode home = sitemap.append("private/home");
+		// when
+
+		// then
+		assertThat(sitemap.uri(login)).isEqualTo("public/account/login");
+		assertThat(sitemap.depth(login)).isEqualTo(2);
+		assertThat(sitemap.depth(publicNode)).isEqualTo(0);
+		assertThat(sitemap.ancestorIds(login)).isEqualTo(new int[] { publicNode.getId(), account.getId() });
+		assertThat(sitemap.ancestorIds(publicNode)).isEmpty();
+		assertThat(sitemap.isPublicPage(login)).isTrue();
+		assertThat(sitemap.isPublicPage(home)).isFalse();
+	}
+
+	@Test
+	public void positionsFollowStructuralChange() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode login = sitemap.append("public/login");
+		SitemapNode privateNode = sitemap.append("private");
+		assertThat(sitemap.isPublicPage(login)).isTrue();
+		// when
+		sitemap.addChild(privateNode, login);
+		// then
+		assertThat(sitemap.uri(login)).isEqualTo("private/login");
+		assertThat(sitemap.isPublicPage(login)).isFalse();
+		assertThat(sitemap.ancestorIds(login)).isEqualTo(new int[] { privateNode.getId() });
+
+		// when
+		sitemap.setPublicRoot("private");
+		// then
+		assertThat(sitemap.isPublicPage(login)).isTrue();
+	}
+
+	@Test
+	public void labels() {
+
+		// given
+		Locale locale = Locale.UK;
+		Collator collator = Collator.getInstance(locale);
+		Sitemap sitemap = new Sitemap();
+		SitemapNode root = new SitemapNode("root", PublicHomeView.class, TestLabelKey.Home, locale, collator, translate);
+		SitemapNode yes = new SitemapNode("yes", PublicHomeView.class, TestLabelKey.Yes, locale, collator, translate);
+		SitemapNode home = new SitemapNode("home", PublicHomeView.class, TestLabelKey.Home, locale, collator, translate);
+		SitemapNode no = new SitemapNode("no", PublicHomeView.class, TestLabelKey.No, locale, collator, translate);
+		sitemap.addChild(root, yes);
+		sitemap.addChild(root, home);
+		sitemap.addChild(root, no);
+		// when
+		SitemapLabels uk = sitemap.labels(Locale.UK, translate);
+		SitemapLabels german = sitemap.labels(Locale.GERMAN, translate);
+		// then
+		assertThat(uk.label(yes)).isEqualTo("Yes");
+		assertThat(uk.sortedChildren(root)).containsExactly(home, no, yes);
+		assertThat(german.label(yes)).isEqualTo("Ja");
+		assertThat(german.sortedChildren(root)).containsExactly(yes, no, home);
+		assertThat(german.sortedChildren(yes)).isEmpty();
+		assertThat(german.sortedRoots()).containsExactly(root);
+		assertThat(sitemap.labels(Locale.UK, translate)).isSameAs(uk);
+	}
+
+	@Test
+	public void labelsFollowStructuralChange() {
+
+		// given
+		Sitemap sitemap = new Sitemap();
+		SitemapNode node = sitemap.append("private/home");
+		SitemapLabels labels = sitemap.labels(Locale.UK, translate);
+		// when
+		SitemapNode other = sitemap.append("private/other");
+		// then
+		assertThat(sitemap.labels(Locale.UK, translate)).isNotSameAs(labels);
+		assertThat(sitemap.labels(Locale.UK, translate).label(other)).isEqualTo("other");
+		assertThat(sitemap.labels(Locale.UK, translate).label(node)).isEqualTo("home");
+	}
+
 	@ModuleProvider
 	protected AbstractModule moduleProvider() {
 		return new AbstractModule() {
@@ -29,6 +29,7 @@ import uk.co.q3c.v7.i18n.AnnotationI18NTranslator;
 import uk.co.q3c.v7.i18n.I18NTranslator;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.util.Providers;
 import com.mycila.testing.junit.MycilaJunitRunner;
 import com.mycila.testing.plugin.guice.GuiceContext;
 import com.mycila.testing.plugin.guice.ModuleProvider;
@@ -53,7 +54,7 @@ public class SitemapURIConverterTest extends TestWithSitemap {
 	@Before
 	public void setup() {
 		super.setup();
-		converter = new SitemapURIConverter(sitemap, uriHandler);
+		converter = new SitemapURIConverter(Providers.of(sitemap), uriHandler);
 	}
 
 	@Test
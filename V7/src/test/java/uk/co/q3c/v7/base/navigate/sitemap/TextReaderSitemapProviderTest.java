@@ -536,11 +536,28 @@ public class TextReaderSitemapProviderTest {
 		reader.parse(modifiedFile);
 
 		// then
-		assertThat(reader.getRedirectErrors()).contains("'' cannot be both a redirect source and redirect target");
+		assertThat(reader.getRedirectErrors()).containsOnly("'' cannot be redirected, its redirects form a loop",
+				"'public' cannot be redirected, its redirects form a loop");
 		assertThat(reader.getSitemap().hasErrors()).isTrue();
 
 	}
 
+	@Test
+	public void redirectChain() throws IOException {
+
+		// given
+		insertAfter("       : public", "public : private/transfers");
+		prepFile();
+		// when
+		reader.parse(modifiedFile);
+
+		// then
+		assertThat(reader.getRedirectErrors()).isEmpty();
+		assertThat(reader.getSitemap().getRedirectFor("")).isEqualTo("private/transfers");
+		assertThat(reader.getSitemap().getRedirectFor("public")).isEqualTo("private/transfers");
+
+	}
+
 	@Test
 	public void rootsChange() throws IOException {
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.navigate.sitemap;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.co.q3c.v7.base.view.ViewIndexProcessor;
+import uk.co.q3c.v7.base.view.testviews.subview.TransferView;
+import fixture.testviews2.View1;
+
+public class ViewClassIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<String> packages = Arrays.asList("fixture.testviews2", "uk.co.q3c.v7.base.view.testviews");
+
+	@Test
+	public void resolve() {
+
+		// given
+		ViewClassIndex index = new ViewClassIndex(packages, getClass().getClassLoader());
+		// when
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(Arrays.asList("View1",
+				"subview.TransferView", "subview.NotV7View", "MissingView", "View1"));
+		// then
+		assertThat(resolutions).hasSize(4);
+		assertThat(resolutions.get("View1").getViewClass()).isEqualTo(View1.class);
+		assertThat(resolutions.get("subview.TransferView").getViewClass()).isEqualTo(TransferView.class);
+
+		ViewClassIndex.Resolution invalid = resolutions.get("subview.NotV7View");
+		assertThat(invalid.getViewClass()).isNull();
+		assertThat(invalid.isDeclared()).isTrue();
+		assertThat(invalid.getInvalidViewClasses()).containsOnly(
+				"uk.co.q3c.v7.base.view.testviews.subview.NotV7View");
+
+		ViewClassIndex.Resolution missing = resolutions.get("MissingView");
+		assertThat(missing.getViewClass()).isNull();
+		assertThat(missing.isDeclared()).isFalse();
+		assertThat(missing.getInvalidViewClasses()).isEmpty();
+	}
+
+	@Test
+	public void resolveInParallel() {
+
+		// given
+		ViewClassIndex index = new ViewClassIndex(packages, getClass().getClassLoader());
+		List<String> viewNames = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			viewNames.add("Missing" + i + "View");
+		}
+		viewNames.add("View1");
+		// when
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(viewNames);
+		// then
+		assertThat(resolutions).hasSize(201);
+		assertThat(resolutions.get("View1").getViewClass()).isEqualTo(View1.class);
+		assertThat(resolutions.get("Missing10View").isDeclared()).isFalse();
+	}
+
+	@Test
+	public void unknownPackage() {
+
+		// given
+		ViewClassIndex index = new ViewClassIndex(Arrays.asList("no.such.pkg", "fixture.testviews2"), getClass()
+				.getClassLoader());
+		// when
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(Arrays.asList("View2"));
+		// then
+		assertThat(resolutions.get("View2").isDeclared()).isTrue();
+	}
+
+	@Test
+	public void resolveFromViewIndex() throws IOException {
+
+		// given
+		File root = folder.newFolder("index");
+		FileUtils.writeStringToFile(new File(root, ViewIndexProcessor.INDEX_RESOURCE),
+				"uk.co.q3c.v7.base.view.testviews.subview.TransferView\nfixture.testviews2.Missing\n");
+		ClassLoader loader = new URLClassLoader(new URL[] { root.toURI().toURL() }, getClass().getClassLoader());
+		ViewClassIndex index = new ViewClassIndex(packages, loader);
+		// when
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(Arrays.asList("subview.TransferView",
+				"Missing", "View1"));
+		// then
+		assertThat(index.isIndexed("uk.co.q3c.v7.base.view.testviews.subview.TransferView")).isTrue();
+		assertThat(resolutions.get("subview.TransferView").getViewClass()).isEqualTo(TransferView.class);
+		// out of date entries, and views which are not indexed, are still found from the packages
+		assertThat(resolutions.get("Missing").isDeclared()).isFalse();
+		assertThat(resolutions.get("View1").getViewClass()).isEqualTo(View1.class);
+	}
+
+	@Test
+	public void viewIndexKeepsPackageOrder() throws IOException {
+
+		// given the view in the later package is indexed, but the one in the earlier package is not
+		File root = folder.newFolder("index");
+		FileUtils.writeStringToFile(new File(root, ViewIndexProcessor.INDEX_RESOURCE),
+				"uk.co.q3c.v7.base.view.testviews.subview.DuplicateView\n");
+		ClassLoader loader = new URLClassLoader(new URL[] { root.toURI().toURL() }, getClass().getClassLoader());
+		ViewClassIndex index = new ViewClassIndex(packages, loader);
+		// when
+		Map<String, ViewClassIndex.Resolution> resolutions = index.resolve(Arrays.asList("subview.DuplicateView"));
+		// then
+		assertThat(resolutions.get("subview.DuplicateView").getViewClass()).isEqualTo(
+				fixture.testviews2.subview.DuplicateView.class);
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import javax.inject.Provider;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.subject.Subject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import uk.co.q3c.v7.base.navigate.NavigationState;
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class AuthorizationCacheTest {
+
+	@Mock
+	URIPermissionFactory uriPermissionFactory;
+
+	@Mock
+	Subject fred;
+
+	@Mock
+	Subject mary;
+
+	@Mock
+	Subject anonymous;
+
+	@Mock
+	URIViewPermission privatePermission;
+
+	@Mock
+	NavigationState navigationState;
+
+	@Mock
+	Provider<Sitemap> sitemapPro;
+
+	@Mock
+	Sitemap sitemap;
+
+	@Mock
+	Sitemap reloaded;
+
+	AuthorizationCache cache;
+
+	@Before
+	public void setup() {
+		when(sitemapPro.get()).thenReturn(sitemap);
+		cache = new AuthorizationCache(uriPermissionFactory, sitemapPro, 2, 3);
+		when(fred.getPrincipal()).thenReturn("fred");
+		when(mary.getPrincipal()).thenReturn("mary");
+		when(uriPermissionFactory.createViewPermission("private/a")).thenReturn(privatePermission);
+		when(fred.isPermitted(privatePermission)).thenReturn(true);
+		when(mary.isPermitted(privatePermission)).thenReturn(false);
+	}
+
+	@Test
+	public void decisionCached() {
+
+		// given
+		// when
+		boolean first = cache.isPermitted(fred, "private/a");
+		boolean second = cache.isPermitted(fred, "private/a");
+		// then
+		assertThat(first).isTrue();
+		assertThat(second).isTrue();
+		verify(fred, times(1)).isPermitted(any(Permission.class));
+		assertThat(cache.getMisses()).isEqualTo(1);
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getHitRatio()).isEqualTo(0.5);
+	}
+
+	@Test
+	public void keyedOnPrincipal() {
+
+		// given
+		// when
+		boolean fredPermitted = cache.isPermitted(fred, "private/a");
+		boolean maryPermitted = cache.isPermitted(mary, "private/a");
+		boolean maryAgain = cache.isPermitted(mary, "private/a");
+		// then denials are cached too
+		assertThat(fredPermitted).isTrue();
+		assertThat(maryPermitted).isFalse();
+		assertThat(maryAgain).isFalse();
+		verify(mary, times(1)).isPermitted(any(Permission.class));
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void navigationState() {
+
+		// given
+		when(navigationState.getVirtualPage()).thenReturn("private/a");
+		when(uriPermissionFactory.createViewPermission(navigationState)).thenReturn(privatePermission);
+		// when
+		cache.isPermitted(fred, navigationState);
+		boolean permitted = cache.isPermitted(fred, "private/a");
+		// then the state and the virtual page share a decision
+		assertThat(permitted).isTrue();
+		verify(fred, times(1)).isPermitted(any(Permission.class));
+		verify(uriPermissionFactory, never()).createViewPermission("private/a");
+	}
+
+	@Test
+	public void noPrincipal_notCached() {
+
+		// given
+		// when
+		cache.isPermitted(anonymous, "private/a");
+		cache.isPermitted(anonymous, "private/a");
+		// then
+		verify(anonymous, times(2)).isPermitted(any(Permission.class));
+		assertThat(cache.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void invalidate() {
+
+		// given
+		cache.isPermitted(fred, "private/a");
+		cache.isPermitted(mary, "private/a");
+		// when
+		cache.invalidate("fred");
+		cache.invalidate(null);
+		// then
+		assertThat(cache.size()).isEqualTo(1);
+		// when
+		cache.isPermitted(fred, "private/a");
+		// then
+		verify(fred, times(2)).isPermitted(any(Permission.class));
+		// when
+		cache.invalidateAll();
+		// then
+		assertThat(cache.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void pagesBoundedPerPrincipal() {
+
+		// given
+		cache.isPermitted(fred, "private/a");
+		cache.isPermitted(fred, "private/b");
+		cache.isPermitted(fred, "private/c");
+		cache.isPermitted(mary, "private/a");
+		// when
+		cache.isPermitted(fred, "private/d");
+		// then fred's decisions were started afresh, mary's were kept
+		assertThat(cache.size()).isEqualTo(2);
+		cache.resetCounts();
+		cache.isPermitted(fred, "private/d");
+		cache.isPermitted(mary, "private/a");
+		cache.isPermitted(fred, "private/a");
+		assertThat(cache.getHits()).isEqualTo(2);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void principalsBounded() {
+
+		// given
+		Subject jane = mock(Subject.class);
+		when(jane.getPrincipal()).thenReturn("jane");
+		cache.isPermitted(fred, "private/a");
+		cache.isPermitted(mary, "private/a");
+		// when
+		cache.isPermitted(jane, "private/a");
+		// then
+		assertThat(cache.size()).isEqualTo(2);
+		cache.resetCounts();
+		cache.isPermitted(jane, "private/a");
+		assertThat(cache.getHits()).isEqualTo(1);
+	}
+
+	@Test
+	public void discardedWhenSitemapReloaded() {
+
+		// given
+		cache.isPermitted(fred, "private/a");
+		cache.isPermitted(mary, "private/a");
+		when(sitemapPro.get()).thenReturn(reloaded);
+		// when
+		cache.isPermitted(fred, "private/a");
+		// then the decision is made again, and mary's is discarded too
+		verify(fred, times(2)).isPermitted(any(Permission.class));
+		assertThat(cache.size()).isEqualTo(1);
+		// when
+		cache.isPermitted(fred, "private/a");
+		// then
+		verify(fred, times(2)).isPermitted(any(Permission.class));
+	}
+
+	@Test
+	public void decisionDuringInvalidationNotKept() {
+
+		// given
+		when(fred.isPermitted(privatePermission)).thenAnswer(new Answer<Boolean>() {
+
+			@Override
+			public Boolean answer(InvocationOnMock invocation) {
+				// fred logs out while the realm is being consulted
+				cache.invalidate("fred");
+				return true;
+			}
+		});
+		cache.isPermitted(mary, "private/a");
+		// when
+		cache.isPermitted(fred, "private/a");
+		// then
+		assertThat(cache.size()).isEqualTo(1);
+		cache.isPermitted(mary, "private/a");
+		assertThat(cache.getHits()).isEqualTo(1);
+	}
+
+}
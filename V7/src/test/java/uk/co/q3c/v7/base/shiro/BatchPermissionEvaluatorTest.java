@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.mgt.DefaultSecurityManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.subject.support.DelegatingSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import uk.co.q3c.v7.base.navigate.NavigationState;
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
+
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class BatchPermissionEvaluatorTest {
+
+	static class CountingRealm extends AuthorizingRealm {
+		int authorizations;
+
+		CountingRealm() {
+			super();
+			setCachingEnabled(false);
+		}
+
+		@Override
+		protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
+			authorizations++;
+			SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+			info.addStringPermission("uri:view:private:x:*");
+			info.addStringPermission("uri:view:other:deep");
+			return info;
+		}
+
+		@Override
+		protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
+			return null;
+		}
+	}
+
+	@Mock
+	Subject mockSubject;
+
+	Sitemap sitemap;
+
+	CountingRealm realm;
+
+	Subject subject;
+
+	BatchPermissionEvaluator evaluator;
+
+	URIPermissionFactory uriPermissionFactory = new URIPermissionFactory() {
+
+		@Override
+		public URIViewPermission createViewPermission(String uri) {
+			return new URIViewPermission(uri, false);
+		}
+
+		@Override
+		public URIViewPermission createViewPermission(NavigationState navigationState) {
+			return new URIViewPermission(navigationState);
+		}
+
+		@Override
+		public URIViewPermission createViewPermission(String uri, boolean appendWildcard) {
+			return new URIViewPermission(uri, appendWildcard);
+		}
+	};
+
+	@Before
+	public void setup() {
+		sitemap = new Sitemap();
+		sitemap.append("public/a");
+		sitemap.append("private/x/y");
+		sitemap.append("private/x/z");
+		sitemap.append("private/w/v");
+		sitemap.append("other/deep");
+		realm = new CountingRealm();
+		subject = new DelegatingSubject(new SimplePrincipalCollection("fred", "test"), true, null, null,
+				new DefaultSecurityManager(realm));
+		evaluator = new BatchPermissionEvaluator(uriPermissionFactory);
+	}
+
+	@Test
+	public void deniedAncestorPrunes() {
+
+		// given
+		// when
+		BitSet permitted = evaluator.permitted(subject, sitemap, sitemap.getAllNodes());
+		// then
+		assertThat(permitted.cardinality()).isEqualTo(2);
+		assertThat(permitted.get(node("public").getId())).isTrue();
+		assertThat(permitted.get(node("public/a").getId())).isTrue();
+		// other/deep is granted, but other is not
+		assertThat(permitted.get(node("other/deep").getId())).isFalse();
+		// only the roots were checked, in one call to the realm
+		assertThat(realm.authorizations).isEqualTo(1);
+	}
+
+	@Test
+	public void wildcardCovers() {
+
+		// given
+		// when
+		BitSet permitted = evaluator.permittedSubtree(subject, sitemap, node("private/x"));
+		// then
+		assertThat(permitted.cardinality()).isEqualTo(3);
+		assertThat(permitted.get(node("private/x").getId())).isTrue();
+		assertThat(permitted.get(node("private/x/y").getId())).isTrue();
+		assertThat(permitted.get(node("private/x/z").getId())).isTrue();
+		// the children were covered by the wildcard, so not checked
+		assertThat(realm.authorizations).isEqualTo(1);
+	}
+
+	@Test
+	public void noPrincipal() {
+
+		// given
+		subject = new DelegatingSubject(null, false, null, null, new DefaultSecurityManager(realm));
+		// when
+		BitSet permitted = evaluator.permittedSubtree(subject, sitemap, node("private/x"));
+		// then
+		assertThat(permitted.isEmpty()).isTrue();
+		assertThat(realm.authorizations).isEqualTo(0);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void otherSubject() {
+
+		// given
+		when(mockSubject.isPermitted(anyListOf(Permission.class))).thenReturn(new boolean[] { true, false },
+				new boolean[] { true });
+		// when
+		BitSet permitted = evaluator.permittedSubtree(mockSubject, sitemap, node("private/w"));
+		// then one call for each level
+		verify(mockSubject, times(2)).isPermitted(any(List.class));
+		assertThat(permitted.cardinality()).isEqualTo(2);
+		assertThat(permitted.get(node("private/w/v").getId())).isTrue();
+	}
+
+	private SitemapNode node(String uri) {
+		return sitemap.nodeFor(uri);
+	}
+}
@@ -14,11 +14,18 @@ package uk.co.q3c.v7.base.shiro;
 
 import static org.fest.assertions.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 
 import org.apache.shiro.authc.ExcessiveAttemptsException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -34,6 +41,11 @@ public class DefaultLoginAttemptLogTest {
 
 	String username = "anyone";
 
+	@After
+	public void teardown() {
+		DateTimeUtils.setCurrentMillisSystem();
+	}
+
 	@Test
 	public void recordUnsuccessful() {
 
@@ -101,4 +113,109 @@ public class DefaultLoginAttemptLogTest {
 
 	}
 
+	@Test
+	public void successfulAggregated() {
+
+		// given
+		UsernamePasswordToken token = new UsernamePasswordToken(username, "password");
+		DateTimeUtils.setCurrentMillisFixed(1000);
+		// when
+		for (int i = 0; i < 1000; i++) {
+			attemptLog.recordSuccessfulAttempt(token);
+		}
+		// then
+		assertThat(attemptLog.successfulAttempts(username)).isEqualTo(1000);
+		assertThat(attemptLog.dateOfLastSuccess(username).getMillis()).isEqualTo(1000);
+		assertThat(attemptLog.successfulAttempts("wiggly")).isEqualTo(0);
+		assertThat(attemptLog.dateOfLastSuccess("wiggly")).isNull();
+	}
+
+	@Test
+	public void failuresInSlidingWindow() {
+
+		// given
+		attemptLog.setMaximumAttempts(3);
+		attemptLog.setFailureWindow(1000);
+		UsernamePasswordToken token = new UsernamePasswordToken(username, "anything");
+		DateTimeUtils.setCurrentMillisFixed(10000);
+		attemptLog.recordFailedAttempt(token);
+		DateTimeUtils.setCurrentMillisFixed(10600);
+		attemptLog.recordFailedAttempt(token);
+		// when the first has left the window
+		DateTimeUtils.setCurrentMillisFixed(11000);
+		// then
+		assertThat(attemptLog.failedAttempts(username)).isEqualTo(1);
+		// when, so another is allowed
+		attemptLog.recordFailedAttempt(token);
+		// then
+		assertThat(attemptLog.failedAttempts(username)).isEqualTo(2);
+		// when
+		DateTimeUtils.setCurrentMillisFixed(12000);
+		// then
+		assertThat(attemptLog.failedAttempts(username)).isEqualTo(0);
+	}
+
+	@Test
+	public void idleEntriesExpire() {
+
+		// given
+		attemptLog.setIdleExpiry(10000);
+		attemptLog.setFailureWindow(1000);
+		DateTimeUtils.setCurrentMillisFixed(DateTimeUtils.currentTimeMillis());
+		long start = DateTimeUtils.currentTimeMillis();
+		attemptLog.recordSuccessfulAttempt(new UsernamePasswordToken("fred", "password"));
+		attemptLog.recordFailedAttempt(new UsernamePasswordToken("mary", "anything"));
+		assertThat(attemptLog.size()).isEqualTo(2);
+		// when
+		DateTimeUtils.setCurrentMillisFixed(start + 10000);
+		attemptLog.recordSuccessfulAttempt(new UsernamePasswordToken("jim", "password"));
+		// then
+		assertThat(attemptLog.size()).isEqualTo(1);
+		assertThat(attemptLog.successfulAttempts("fred")).isEqualTo(0);
+		assertThat(attemptLog.successfulAttempts("jim")).isEqualTo(1);
+	}
+
+	@Test
+	public void concurrentAttempts() throws InterruptedException {
+
+		// given
+		attemptLog.setMaximumAttempts(1000000);
+		final int threads = 8;
+		final int attempts = 2000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			workers.add(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < attempts; i++) {
+							String user = "user" + (i % 10);
+							attemptLog.recordSuccessfulAttempt(new UsernamePasswordToken(user, "password"));
+							attemptLog.recordFailedAttempt(new UsernamePasswordToken(user, "anything"));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		// when
+		start.countDown();
+		// then
+		assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+		for (int u = 0; u < 10; u++) {
+			assertThat(attemptLog.successfulAttempts("user" + u)).isEqualTo(threads * attempts / 10);
+			assertThat(attemptLog.failedAttempts("user" + u)).isEqualTo(threads * attempts / 10);
+		}
+	}
+
 }
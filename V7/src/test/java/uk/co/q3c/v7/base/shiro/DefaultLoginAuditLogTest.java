@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import static org.fest.assertions.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joda.time.DateTimeUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import uk.co.q3c.v7.base.config.V7Ini;
+import uk.co.q3c.v7.base.guice.ShutdownRegistry;
+import uk.co.q3c.v7.base.shiro.LoginAuditLog.Event;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.GuiceContext;
+
+@RunWith(MycilaJunitRunner.class)
+@GuiceContext({})
+public class DefaultLoginAuditLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	DefaultLoginAuditLog auditLog;
+
+	@After
+	public void teardown() {
+		DateTimeUtils.setCurrentMillisSystem();
+		if (auditLog != null) {
+			auditLog.close();
+		}
+	}
+
+	@Test
+	public void capacityRoundedUp() {
+
+		// given
+		// when
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 5);
+		// then
+		assertThat(auditLog.getCapacity()).isEqualTo(8);
+
+	}
+
+	@Test
+	public void drainWritesBatch() throws IOException {
+
+		// given
+		DateTimeUtils.setCurrentMillisFixed(0);
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		auditLog.publish(Event.Login_Failure, "fred");
+		auditLog.publish(Event.Login_Success, "fred");
+		// when
+		int taken = auditLog.drain();
+		// then
+		assertThat(taken).isEqualTo(2);
+		assertThat(auditLog.getWritten()).isEqualTo(2);
+		assertThat(lines(auditLog.getFile())).containsExactly("1970-01-01T00:00:00.000Z\tLogin_Failure\tfred",
+				"1970-01-01T00:00:00.000Z\tLogin_Success\tfred");
+
+	}
+
+	@Test
+	public void controlCharactersReplaced() throws IOException {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		auditLog.publish(Event.Logout, "fred\nforged\tline");
+		// when
+		auditLog.drain();
+		// then
+		List<String> lines = lines(auditLog.getFile());
+		assertThat(lines).hasSize(1);
+		assertThat(lines.get(0)).endsWith("\tLogout\tfred?forged?line");
+
+	}
+
+	@Test
+	public void fullBufferDropsWithoutBlocking() {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 4);
+		for (int i = 0; i < 4; i++) {
+			assertThat(auditLog.publish(Event.Login_Success, "user" + i)).isTrue();
+		}
+		// when
+		boolean accepted = auditLog.publish(Event.Login_Success, "user4");
+		// then
+		assertThat(accepted).isFalse();
+		assertThat(auditLog.getPublished()).isEqualTo(4);
+		assertThat(auditLog.getDropped()).isEqualTo(1);
+		// when
+		auditLog.drain();
+		// then slots reused
+		assertThat(auditLog.publish(Event.Login_Success, "user5")).isTrue();
+
+	}
+
+	@Test
+	public void fileRolledOver() throws IOException {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		auditLog.setMaxFileSize(100);
+		// when
+		for (int i = 0; i < 6; i++) {
+			auditLog.publish(Event.Login_Success, "user" + i);
+			auditLog.drain();
+		}
+		// then
+		File[] files = folder.getRoot().listFiles();
+		assertThat(files.length).isGreaterThan(1);
+		int count = 0;
+		for (File file : files) {
+			assertThat(file.length()).isLessThanOrEqualTo(100);
+			count += lines(file).size();
+		}
+		assertThat(count).isEqualTo(6);
+
+	}
+
+	@Test
+	public void fileSurvivesRestart() throws IOException {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		auditLog.publish(Event.Login_Success, "fred");
+		auditLog.close();
+		// when
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		auditLog.publish(Event.Logout, "fred");
+		auditLog.close();
+		// then
+		List<String> lines = lines(auditLog.getFile());
+		assertThat(lines).hasSize(2);
+		assertThat(lines.get(0)).endsWith("\tLogin_Success\tfred");
+		assertThat(lines.get(1)).endsWith("\tLogout\tfred");
+
+	}
+
+	@Test
+	public void closedRejects() {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 8);
+		// when
+		auditLog.close();
+		// then
+		assertThat(auditLog.publish(Event.Login_Success, "fred")).isFalse();
+		assertThat(auditLog.getDropped()).isEqualTo(1);
+
+	}
+
+	@Test
+	public void writerDrainsConcurrentPublishers() throws Exception {
+
+		// given
+		auditLog = new DefaultLoginAuditLog(folder.getRoot(), 1024);
+		auditLog.setFlushInterval(5);
+		auditLog.start();
+		final int threads = 4;
+		final int perThread = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final String username = "user" + t;
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < perThread; i++) {
+							while (!auditLog.publish(Event.Login_Failure, username)) {
+								Thread.yield();
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		// when
+		start.countDown();
+		assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+		auditLog.close();
+		// then
+		assertThat(auditLog.getPublished()).isEqualTo(threads * perThread);
+		assertThat(auditLog.getWritten()).isEqualTo(threads * perThread);
+		assertThat(lines(auditLog.getFile())).hasSize(threads * perThread);
+
+	}
+
+	@Test
+	public void closedOnShutdown() throws IOException {
+
+		// given
+		V7Ini ini = mock(V7Ini.class);
+		when(ini.optionAuditDirectory()).thenReturn(folder.getRoot());
+		ShutdownRegistry shutdownRegistry = new ShutdownRegistry();
+		auditLog = new DefaultLoginAuditLog(ini, shutdownRegistry);
+		auditLog.publish(Event.Login_Success, "fred");
+		// when
+		shutdownRegistry.shutdown();
+		// then
+		assertThat(shutdownRegistry.size()).isEqualTo(0);
+		assertThat(auditLog.getWritten()).isEqualTo(1);
+		assertThat(lines(auditLog.getFile())).hasSize(1);
+		assertThat(auditLog.publish(Event.Logout, "fred")).isFalse();
+
+	}
+
+	@Test
+	public void recordsAcceptedDuringCloseWritten() throws Exception {
+
+		for (int round = 0; round < 20; round++) {
+			// given
+			auditLog = new DefaultLoginAuditLog(new File(folder.getRoot(), "round" + round), 1024);
+			auditLog.setFlushInterval(1);
+			auditLog.start();
+			final int threads = 4;
+			final AtomicBoolean running = new AtomicBoolean(true);
+			final CountDownLatch done = new CountDownLatch(threads);
+			for (int t = 0; t < threads; t++) {
+				final String username = "user" + t;
+				new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							while (running.get()) {
+								auditLog.publish(Event.Login_Failure, username);
+							}
+						} finally {
+							done.countDown();
+						}
+					}
+				}).start();
+			}
+			while (auditLog.getPublished() == 0) {
+				Thread.yield();
+			}
+			// when
+			auditLog.close();
+			running.set(false);
+			assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+			// then every record accepted, including those accepted while closing, is written
+			assertThat(auditLog.getWritten()).isEqualTo(auditLog.getPublished());
+			assertThat(lines(auditLog.getFile())).hasSize((int) auditLog.getPublished());
+		}
+
+	}
+
+	private List<String> lines(File file) throws IOException {
+		return Files.readLines(file, Charsets.UTF_8);
+	}
+
+}
@@ -15,6 +15,8 @@ package uk.co.q3c.v7.base.shiro;
 import static org.fest.assertions.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import javax.inject.Provider;
+
 import org.apache.shiro.authc.AccountException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.ExcessiveAttemptsException;
@@ -31,6 +33,7 @@ import org.mockito.Mock;
 
 import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
 
+import com.google.inject.util.Providers;
 import com.mycila.testing.junit.MycilaJunitRunner;
 import com.mycila.testing.plugin.guice.GuiceContext;
 
@@ -46,6 +49,9 @@ public class DefaultRealmTest {
 
 	CredentialsMatcher matcher = new AlwaysPasswordCredentialsMatcher();
 
+	@Mock
+	LoginAuditLog auditLog;
+
 	@Mock
 	URIPermissionFactory permissionFactory;
 
@@ -55,7 +61,7 @@ public class DefaultRealmTest {
 	@Before
 	public void setup() {
 		sitemap = mock(Sitemap.class);
-		realm = new DefaultRealm(attemptLog, matcher, sitemap, permissionFactory);
+		realm = new DefaultRealm(attemptLog, auditLog, matcher, Providers.of(sitemap), permissionFactory);
 	}
 
 	@Test
@@ -79,6 +85,7 @@ public class DefaultRealmTest {
 
 		// then
 		assertThat(info).isNotNull();
+		verify(auditLog).publish(LoginAuditLog.Event.Login_Success, "fred");
 
 	}
 
@@ -91,6 +98,7 @@ public class DefaultRealmTest {
 		AuthenticationInfo info = realm.getAuthenticationInfo(token("fred", "rubbish"));
 		// then
 		assertThat(info).isNull();
+		verify(auditLog).publish(LoginAuditLog.Event.Login_Failure, "fred");
 
 	}
 
@@ -141,6 +149,78 @@ public class DefaultRealmTest {
 
 	}
 
+	@Test
+	public void uriPermissionsCompiled() {
+
+		// given
+		when(sitemap.getPrivateRoot()).thenReturn("private");
+		when(sitemap.getPublicRoot()).thenReturn("public");
+		when(permissionFactory.createViewPermission("public", true)).thenReturn(new URIViewPermission("public", true));
+		PrincipalCollection pc = new SimplePrincipalCollection("fred", realm.getName());
+		// when
+		AuthorizationInfo info = realm.getAuthorizationInfo(pc);
+		// then
+		assertThat(info.getStringPermissions()).isEmpty();
+		assertThat(info.getObjectPermissions()).hasSize(1);
+		assertThat(info.getObjectPermissions().iterator().next()).isInstanceOf(URIPermissionTrie.class);
+		assertThat(realm.isPermitted(pc, new URIViewPermission("private/a/b", false))).isTrue();
+		assertThat(realm.isPermitted(pc, new URIViewPermission("public", false))).isTrue();
+		assertThat(realm.isPermitted(pc, new URIViewPermission("other", false))).isFalse();
+		assertThat(realm.isPermitted(pc, "uri:view:private:c")).isTrue();
+	}
+
+	@Test
+	public void authorizationCompiledOncePerPrincipal() {
+
+		// given
+		when(sitemap.getPrivateRoot()).thenReturn("private");
+		when(sitemap.getPublicRoot()).thenReturn("public");
+		when(permissionFactory.createViewPermission("public", true)).thenReturn(new URIViewPermission("public", true));
+		PrincipalCollection pc = new SimplePrincipalCollection("fred", realm.getName());
+		// when
+		realm.isPermitted(pc, new URIViewPermission("private/a", false));
+		realm.isPermitted(pc, new URIViewPermission("private/b", false));
+		// then
+		verify(permissionFactory, times(1)).createViewPermission("public", true);
+		// when
+		realm.onLogout(pc);
+		realm.isPermitted(pc, new URIViewPermission("private/a", false));
+		// then
+		verify(permissionFactory, times(2)).createViewPermission("public", true);
+		// when
+		realm.getAuthenticationInfo(token("fred", onlyValidPassword));
+		realm.isPermitted(pc, new URIViewPermission("private/a", false));
+		// then
+		verify(permissionFactory, times(3)).createViewPermission("public", true);
+	}
+
+	@Test
+	public void authorizationDiscardedWhenSitemapReloaded() {
+
+		// given
+		final Sitemap[] current = { sitemap };
+		Sitemap reloaded = mock(Sitemap.class);
+		when(sitemap.getPrivateRoot()).thenReturn("private");
+		when(reloaded.getPrivateRoot()).thenReturn("secure");
+		when(sitemap.getPublicRoot()).thenReturn("public");
+		when(reloaded.getPublicRoot()).thenReturn("public");
+		when(permissionFactory.createViewPermission("public", true)).thenReturn(new URIViewPermission("public", true));
+		realm = new DefaultRealm(attemptLog, auditLog, matcher, new Provider<Sitemap>() {
+
+			@Override
+			public Sitemap get() {
+				return current[0];
+			}
+		}, permissionFactory);
+		PrincipalCollection pc = new SimplePrincipalCollection("fred", realm.getName());
+		assertThat(realm.isPermitted(pc, "uri:view:private:a")).isTrue();
+		// when
+		current[0] = reloaded;
+		// then
+		assertThat(realm.isPermitted(pc, "uri:view:private:a")).isFalse();
+		assertThat(realm.isPermitted(pc, "uri:view:secure:a")).isTrue();
+	}
+
 	private UsernamePasswordToken token(String username, String password) {
 		UsernamePasswordToken token = new UsernamePasswordToken(username, password);
 		return token;
@@ -106,6 +106,7 @@ public abstract class ShiroIntegrationTestBase extends AbstractShiroTest {
 			@Override
 			protected void configure() {
 				bind(LoginAttemptLog.class).to(DefaultLoginAttemptLog.class);
+				bind(LoginAuditLog.class).toInstance(mock(LoginAuditLog.class));
 				bind(CredentialsMatcher.class).to(AlwaysPasswordCredentialsMatcher.class);
 			}
 
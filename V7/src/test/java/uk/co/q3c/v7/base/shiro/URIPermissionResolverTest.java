@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import static org.fest.assertions.Assertions.*;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.junit.Test;
+
+public class URIPermissionResolverTest {
+
+	URIPermissionResolver resolver = new URIPermissionResolver();
+
+	@Test
+	public void uriPermission() {
+
+		// given
+		// when
+		Permission page = resolver.resolvePermission("uri:view:private:wiggly");
+		Permission branch = resolver.resolvePermission("URI:View:private:*");
+		Permission all = resolver.resolvePermission("uri:view:*");
+		// then
+		assertThat(page).isInstanceOf(URIViewPermission.class);
+		assertThat(page).isEqualTo(new URIViewPermission("private/wiggly", false));
+		assertThat(branch).isEqualTo(new URIViewPermission("private", true));
+		assertThat(all).isEqualTo(new WildcardPermission("uri:view:*"));
+		assertThat(((URIViewPermission) all).isSegmented()).isTrue();
+	}
+
+	@Test
+	public void otherPermission() {
+
+		// given
+		// when
+		Permission other = resolver.resolvePermission("printer:print");
+		Permission subparts = resolver.resolvePermission("uri:view:a,b");
+		Permission innerWildcard = resolver.resolvePermission("uri:view:*:b");
+		// then
+		assertThat(other.getClass()).isEqualTo(WildcardPermission.class);
+		assertThat(subparts.getClass()).isEqualTo(WildcardPermission.class);
+		assertThat(innerWildcard.getClass()).isEqualTo(WildcardPermission.class);
+		assertThat(innerWildcard.implies(resolver.resolvePermission("uri:view:a:b"))).isTrue();
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.shiro;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.junit.Test;
+
+public class URIPermissionTrieTest {
+
+	List<String> granted = Arrays.asList("uri:view:private:deptx:*", "uri:view:public", "uri:view:a:b:c",
+			"uri:view:a:b:c:*", "uri:view:Mixed:Case");
+
+	List<String> requested = Arrays.asList("uri:view:private:deptx:teamy", "uri:view:private:deptx",
+			"uri:view:private:depty", "uri:view:private", "uri:view:public", "uri:view:public:x:y",
+			"uri:view:publicx", "uri:view:a:b", "uri:view:a:b:c", "uri:view:a:b:c:d", "uri:view:a:b:*",
+			"uri:view:a:b:c:*", "uri:view:mixed:case", "uri:view", "uri:view:*", "uri:view:private:deptx:*");
+
+	URIPermissionResolver resolver = new URIPermissionResolver();
+
+	@Test
+	public void sameAsWildcardPermission() {
+
+		// given
+		URIPermissionTrie trie = new URIPermissionTrie();
+		for (String grant : granted) {
+			trie.add((URIViewPermission) resolver.resolvePermission(grant));
+		}
+		// when
+		// then
+		for (String request : requested) {
+			boolean expected = false;
+			for (String grant : granted) {
+				expected = expected || new WildcardPermission(grant).implies(new WildcardPermission(request));
+			}
+			assertThat(trie.implies(resolver.resolvePermission(request))).as(request).isEqualTo(expected);
+		}
+		assertThat(trie.size()).isEqualTo(granted.size());
+	}
+
+	@Test
+	public void everythingGranted() {
+
+		// given
+		URIPermissionTrie trie = new URIPermissionTrie();
+		// when
+		trie.add(URIViewPermission.allPages());
+		// then
+		assertThat(trie.implies(new URIViewPermission("any/page", false))).isTrue();
+		assertThat(trie.implies(new URIViewPermission("", false))).isTrue();
+	}
+
+	@Test
+	public void onlyURIPermissionsImplied() {
+
+		// given
+		URIPermissionTrie trie = new URIPermissionTrie();
+		trie.add(URIViewPermission.allPages());
+		// when
+		// then
+		assertThat(trie.implies(new WildcardPermission("uri:view:a"))).isFalse();
+		assertThat(trie.add(new URIViewPermission("a,b", false))).isFalse();
+		assertThat(trie.implies(new URIViewPermission("a,b", false))).isFalse();
+	}
+
+	@Test
+	public void compile() {
+
+		// given
+		SimpleAuthorizationInfo info = new SimpleAuthorizationInfo();
+		info.addRole("admin");
+		info.addStringPermission("uri:view:private:*");
+		info.addStringPermission("printer:print");
+		info.addObjectPermission(new URIViewPermission("public", true));
+		Permission other = new WildcardPermission("file:read");
+		info.addObjectPermission(other);
+		// when
+		AuthorizationInfo compiled = URIPermissionTrie.compile(info, resolver);
+		// then
+		assertThat(compiled.getRoles()).containsOnly("admin");
+		assertThat(compiled.getStringPermissions()).containsOnly("printer:print");
+		assertThat(compiled.getObjectPermissions()).hasSize(2);
+		assertThat(compiled.getObjectPermissions()).contains(other);
+		URIPermissionTrie trie = null;
+		for (Permission permission : compiled.getObjectPermissions()) {
+			if (permission instanceof URIPermissionTrie) {
+				trie = (URIPermissionTrie) permission;
+			}
+		}
+		assertThat(trie.size()).isEqualTo(2);
+		assertThat(trie.implies(new URIViewPermission("private/x", false))).isTrue();
+		assertThat(trie.implies(new URIViewPermission("public/y", false))).isTrue();
+	}
+}
@@ -15,11 +15,16 @@ package uk.co.q3c.v7.base.shiro;
 import static org.fest.assertions.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.apache.shiro.authz.permission.WildcardPermission;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 
+import uk.co.q3c.v7.base.navigate.NavigationState;
 import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
 
 import com.mycila.testing.junit.MycilaJunitRunner;
@@ -37,7 +42,7 @@ public class URIViewPermissionTest {
 
 		// given
 		String uri = "private/wiggly/id=1";
-		when(uriHandler.virtualPage()).thenReturn("private/wiggly");
+		when(uriHandler.navigationState(uri)).thenReturn(state(uri));
 
 		// when
 		URIViewPermission p = new URIViewPermission(uriHandler, uri);
@@ -53,7 +58,7 @@ public class URIViewPermissionTest {
 
 		// given
 		String uri = "private/wiggly/id=1";
-		when(uriHandler.virtualPage()).thenReturn("private/wiggly");
+		when(uriHandler.navigationState(uri)).thenReturn(state(uri));
 
 		// when
 		URIViewPermission p = new URIViewPermission(uriHandler, uri, true);
@@ -63,4 +68,80 @@ public class URIViewPermissionTest {
 
 	}
 
+	@Test
+	public void createFromNavigationState() {
+
+		// given
+		String uri = "private/wiggly/id=1";
+		// when
+		URIViewPermission p = new URIViewPermission(state(uri));
+		// then
+		assertThat(p).isEqualTo(new WildcardPermission("uri:view:private:wiggly"));
+		verifyZeroInteractions(uriHandler);
+	}
+
+	@Test
+	public void impliesSameAsWildcardPermission() {
+
+		// given
+		String[] pages = { "", "private", "private/deptx", "private/deptx/teamy", "private/depty", "Private/DeptX",
+				"public" };
+		// when
+		// then
+		for (String grant : pages) {
+			for (boolean grantWildcard : new boolean[] { false, true }) {
+				URIViewPermission granted = new URIViewPermission(grant, grantWildcard);
+				WildcardPermission grantedWildcard = wildcard(grant, grantWildcard);
+				for (String request : pages) {
+					for (boolean requestWildcard : new boolean[] { false, true }) {
+						URIViewPermission requested = new URIViewPermission(request, requestWildcard);
+						boolean expected = grantedWildcard.implies(wildcard(request, requestWildcard));
+						assertThat(granted.implies(requested)).as(grant + " " + request).isEqualTo(expected);
+						assertThat(grantedWildcard.implies(requested)).isEqualTo(expected);
+						assertThat(granted.implies(wildcard(request, requestWildcard))).isEqualTo(expected);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void equalsAndHashCodeSameAsWildcardPermission() {
+
+		// given
+		URIViewPermission p = new URIViewPermission("private/Wiggly", true);
+		WildcardPermission wp = new WildcardPermission("uri:view:private:wiggly:*");
+		// when
+		// then
+		assertThat(p.hashCode()).isEqualTo(wp.hashCode());
+		assertThat(p).isEqualTo(wp);
+		assertThat(p).isEqualTo(new URIViewPermission("private/wiggly", true));
+		assertThat(p).isNotEqualTo(new URIViewPermission("private/wiggly", false));
+		assertThat(p.toString()).isEqualTo(wp.toString());
+	}
+
+	@Test
+	public void notSegmented() {
+
+		// given
+		// when
+		URIViewPermission p = new URIViewPermission("private/a,b", false);
+		// then
+		assertThat(p.isSegmented()).isFalse();
+		assertThat(p).isEqualTo(new WildcardPermission("uri:view:private:a,b"));
+		assertThat(p.implies(new URIViewPermission("private/b", false))).isTrue();
+		assertThat(new URIViewPermission("private", true).implies(p)).isTrue();
+	}
+
+	private WildcardPermission wildcard(String page, boolean appendWildcard) {
+		String permission = "uri:view:" + page.replace("/", ":");
+		return new WildcardPermission(appendWildcard ? permission + ":*" : permission);
+	}
+
+	private NavigationState state(String uri) {
+		Map<String, String> parameters = new TreeMap<>();
+		parameters.put("id", "1");
+		return new NavigationState(uri, "private/wiggly", Arrays.asList("private", "wiggly"), parameters);
+	}
+
 }
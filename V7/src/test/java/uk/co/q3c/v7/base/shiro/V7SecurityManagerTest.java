@@ -58,6 +58,9 @@ public class V7SecurityManagerTest extends ShiroIntegrationTestBase {
 	@Mock
 	VaadinSession session;
 
+	@Mock
+	AuthorizationCache authorizationCache;
+
 	@Override
 	@Before
 	public void setupShiro() {
@@ -82,6 +85,26 @@ public class V7SecurityManagerTest extends ShiroIntegrationTestBase {
 
 	}
 
+	@Test
+	public void loginAndLogoutInvalidateAuthorization() {
+
+		// given
+		when(vsp.get()).thenReturn(session);
+		V7SecurityManager securityManager = (V7SecurityManager) SecurityUtils.getSecurityManager();
+		securityManager.setSessionProvider(vsp);
+		securityManager.setAuthorizationCache(authorizationCache);
+		UsernamePasswordToken token = new UsernamePasswordToken("xxx", "password");
+		// when
+		getSubject().login(token);
+		// then
+		verify(authorizationCache).invalidate("xxx");
+		// when
+		getSubject().logout();
+		// then
+		verify(authorizationCache, times(2)).invalidate("xxx");
+		securityManager.setAuthorizationCache(null);
+	}
+
 	protected ScopedUI createUI() {
 		UIKey uiKey = new UIKey(3);
 		CurrentInstance.set(UI.class, null);
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.base.view;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ViewIndexProcessorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File sourceDir;
+	private File outputDir;
+
+	@Before
+	public void setup() throws IOException {
+		sourceDir = folder.newFolder("src");
+		outputDir = folder.newFolder("classes");
+	}
+
+	@Test
+	public void index() throws IOException {
+
+		// given
+		File view = source("AView", "@IndexedView public class AView implements V7View {"
+				+ " public void enter(V7ViewChangeEvent event) {}"
+				+ " public com.vaadin.ui.Component getRootComponent() { return null; }"
+				+ " @IndexedView public static class Nested extends AView {} }");
+		File other = source("NotAView", "public class NotAView {}");
+		// when
+		boolean compiled = compile(view, other);
+		// then
+		assertThat(compiled).isTrue();
+		File index = new File(outputDir, ViewIndexProcessor.INDEX_RESOURCE);
+		assertThat(FileUtils.readLines(index)).containsOnly("p.AView", "p.AView$Nested");
+	}
+
+	@Test
+	public void incremental() throws IOException {
+
+		// given
+		File aView = source("AView", "@IndexedView public class AView extends BView {}");
+		File bView = source("BView", "@IndexedView public class BView implements V7View {"
+				+ " public void enter(V7ViewChangeEvent event) {}"
+				+ " public com.vaadin.ui.Component getRootComponent() { return null; } }");
+		compile(aView, bView);
+		File index = new File(outputDir, ViewIndexProcessor.INDEX_RESOURCE);
+		FileUtils.writeLines(index, Arrays.asList("p.AView", "p.BView", "p.DeletedView"));
+		File cView = source("CView", "@IndexedView public class CView extends BView {}");
+		// when
+		boolean compiled = compile(cView);
+		// then
+		assertThat(compiled).isTrue();
+		assertThat(FileUtils.readLines(index)).containsOnly("p.AView", "p.BView", "p.CView");
+	}
+
+	@Test
+	public void notAView() throws IOException {
+
+		// given
+		File source = source("NotAView", "@IndexedView public class NotAView {}");
+		// when
+		boolean compiled = compile(source);
+		// then
+		assertThat(compiled).isFalse();
+	}
+
+	@Test
+	public void abstractView() throws IOException {
+
+		// given
+		File source = source("AbstractView", "@IndexedView public abstract class AbstractView implements V7View {}");
+		// when
+		boolean compiled = compile(source);
+		// then
+		assertThat(compiled).isFalse();
+	}
+
+	private File source(String className, String body) throws IOException {
+		File file = new File(sourceDir, "p/" + className + ".java");
+		FileUtils.writeStringToFile(file, "package p; import uk.co.q3c.v7.base.view.*; " + body);
+		return file;
+	}
+
+	private boolean compile(File... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+			// the source path stands in for the classes of an earlier compile
+			List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-sourcepath",
+					sourceDir.getPath(), "-d", outputDir.getPath(), "-proc:only");
+			CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+					fileManager.getJavaFileObjects(sources));
+			task.setProcessors(Arrays.asList(new ViewIndexProcessor()));
+			return task.call();
+		}
+	}
+}
@@ -29,6 +29,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import uk.co.q3c.v7.base.guice.uiscope.UIKey;
 import uk.co.q3c.v7.base.guice.uiscope.UIScopeModule;
@@ -37,6 +39,7 @@ import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
 import uk.co.q3c.v7.base.navigate.V7Navigator;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
 import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
+import uk.co.q3c.v7.base.shiro.BatchPermissionEvaluator;
 import uk.co.q3c.v7.base.shiro.DefaultURIPermissionFactory;
 import uk.co.q3c.v7.base.shiro.LoginStatusHandler;
 import uk.co.q3c.v7.base.shiro.SubjectProvider;
@@ -50,6 +53,7 @@ import uk.co.q3c.v7.i18n.Translate;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Injector;
+import com.google.inject.util.Providers;
 import com.mycila.testing.junit.MycilaJunitRunner;
 import com.mycila.testing.plugin.guice.GuiceContext;
 import com.mycila.testing.plugin.guice.ModuleProvider;
@@ -80,6 +84,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 
 	DefaultURIPermissionFactory uriPermissionFactory;
 
+	BatchPermissionEvaluator permissionEvaluator;
+
 	@Mock
 	BasicUI ui;
 
@@ -99,11 +105,25 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		when(subjectPro.get()).thenReturn(subject);
 		when(subject.isPermitted(any(Permission.class))).thenReturn(true);
 		when(subject.isPermitted(anyString())).thenReturn(true);
+		when(subject.isPermitted(anyListOf(Permission.class))).thenAnswer(new Answer<boolean[]>() {
+
+			@Override
+			public boolean[] answer(InvocationOnMock invocation) throws Throwable {
+				@SuppressWarnings("unchecked")
+				List<Permission> permissions = (List<Permission>) invocation.getArguments()[0];
+				boolean[] results = new boolean[permissions.size()];
+				for (int i = 0; i < results.length; i++) {
+					results[i] = subject.isPermitted(permissions.get(i));
+				}
+				return results;
+			}
+		});
 		when(
 				userOption.getOptionAsInt(DefaultUserNavigationTree.class.getSimpleName(),
 						DefaultUserNavigationTree.maxLevelOpt, -1)).thenReturn(-1);
 		createUI();
 		uriPermissionFactory = injector.getInstance(DefaultURIPermissionFactory.class);
+		permissionEvaluator = new BatchPermissionEvaluator(uriPermissionFactory);
 	}
 
 	@Test
@@ -113,8 +133,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		currentLocale.setLocale(Locale.UK);
 		buildSitemap(0);
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.getItemIds().size()).isEqualTo(0);
 	}
@@ -127,8 +147,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		buildSitemap(1);
 
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.getItemIds().size()).isEqualTo(3);
 		assertThat(unt.getItemIds()).containsOnly(newNode1, newNode2, newNode3);
@@ -149,8 +169,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		buildSitemap(2);
 
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.getItemIds().size()).isEqualTo(6);
 		assertThat(unt.getItemIds()).containsOnly(newNode1, newNode2, newNode3, newNode4, newNode5, newNode6);
@@ -173,8 +193,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		currentLocale.setLocale(Locale.UK);
 		buildSitemap(2);
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.getMaxLevel()).isEqualTo(-1);
 		// when
@@ -201,8 +221,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		buildSitemap(1);
 
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 
 		// then
 		assertThat(unt.getItemCaption(newNode1)).isEqualTo("home");
@@ -215,8 +235,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		// given
 		buildSitemap(1);
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.isImmediate()).isTrue();
 
@@ -227,8 +247,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 
 		// given
 		buildSitemap(2);
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// when
 		unt.setValue(newNode2);
 		// then
@@ -243,8 +263,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		buildSitemap(1);
 
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 
 		// then
 		assertThat(unt.getItemCaption(newNode1)).isEqualTo("zu Hause");
@@ -267,8 +287,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		// represents the case where user not authenticated
 		when(subject.isPermitted(publicPage)).thenReturn(false);
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.containsId(newNode1)).isTrue();
 		assertThat(unt.containsId(newNode2)).isFalse(); // logout
@@ -286,8 +306,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 		// given
 		buildSitemap(3);
 		// when
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// then
 		assertThat(unt.getItemIds().size()).isEqualTo(1);
 
@@ -302,8 +322,8 @@ public class UserNavigationTreeTest extends TestWithSitemap {
 
 		// given
 		buildSitemap(4);
-		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(sitemap, navigator, subjectPro,
-				uriPermissionFactory, userOption, sitemapUriConverter, loginStatusHandler, translate);
+		DefaultUserNavigationTree unt = new DefaultUserNavigationTree(Providers.of(sitemap), navigator, subjectPro,
+				permissionEvaluator, userOption, sitemapUriConverter, loginStatusHandler, translate, currentLocale);
 		// when
 
 		// sorted is false by default, should be insertion order
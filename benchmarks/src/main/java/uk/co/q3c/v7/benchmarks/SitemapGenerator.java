@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import uk.co.q3c.v7.base.navigate.sitemap.TextReaderSitemapProvider;
+
+/**
+ * Writes a synthetic sitemap source, in the format read by {@link TextReaderSitemapProvider}, with a given number of
+ * pages. The pages form a tree under the private root, with each page having up to {@link #FANOUT} children, so that
+ * depth grows with the log of the size as it would in a real site. Every page uses a view and label key from V7
+ * itself, so the generated map has no errors.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+public class SitemapGenerator {
+
+	public static final int FANOUT = 10;
+
+	/**
+	 * Writes a sitemap of {@code pages} pages (plus the private root and standard pages) to a temporary file
+	 * 
+	 * @param pages
+	 * @return
+	 * @throws IOException
+	 */
+	public static File generate(int pages) throws IOException {
+		File file = File.createTempFile("sitemap-" + pages + "-", ".properties");
+		file.deleteOnExit();
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+			writer.write("[viewPackages]\n");
+			writer.write("uk.co.q3c.v7.base.view\n\n");
+			writer.write("[options]\n");
+			writer.write("labelKeys=uk.co.q3c.v7.i18n.LabelKey\n");
+			writer.write("appendView=true\n\n");
+			writer.write("[redirects]\n");
+			writer.write(": public\n\n");
+			writer.write("[map]\n");
+			writer.write("-private\n");
+			// pages are numbered breadth first, so the children of page i start at page FANOUT*(i+1)
+			for (int root = 0; (root < FANOUT) && (root < pages); root++) {
+				writePage(writer, root, 2, pages);
+			}
+			writer.write("\n[standardPageMapping]\n");
+		}
+		return file;
+	}
+
+	private static void writePage(BufferedWriter writer, int page, int indent, int pages) throws IOException {
+		for (int i = 0; i < indent; i++) {
+			writer.write('-');
+		}
+		writer.write("page");
+		writer.write(Integer.toString(page));
+		writer.write(" : DefaultPublicHome ~ Cancel\n");
+		int first = FANOUT * (page + 1);
+		for (int child = first; (child < first + FANOUT) && (child < pages); child++) {
+			writePage(writer, child, indent + 1, pages);
+		}
+	}
+}
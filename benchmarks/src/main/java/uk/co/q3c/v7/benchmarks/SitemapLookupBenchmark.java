@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.q3c.v7.base.navigate.StrictURIFragmentHandler;
+import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapNode;
+import uk.co.q3c.v7.base.navigate.sitemap.SitemapURIConverter;
+import uk.co.q3c.v7.base.navigate.sitemap.TextReaderSitemapProvider;
+import uk.co.q3c.v7.i18n.I18NModule;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures the lookups made on a loaded {@link Sitemap} during navigation, at different sizes. Each invocation uses the
+ * next of a fixed, randomly chosen set of pages, so that the results are not distorted by always using the same page
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class SitemapLookupBenchmark {
+
+	private static final int SAMPLES = 1024;
+
+	@Param({ "1000", "10000", "100000" })
+	public int pages;
+
+	private Sitemap sitemap;
+	private SitemapURIConverter converter;
+	private SitemapNode[] nodes;
+	private String[] uris;
+	private List<List<String>> segments;
+	private SitemapNode[] subtreeRoots;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		Injector injector = Guice.createInjector(new I18NModule());
+		TextReaderSitemapProvider provider = injector.getInstance(TextReaderSitemapProvider.class);
+		provider.parse(SitemapGenerator.generate(pages));
+		sitemap = provider.getSitemap();
+		converter = injector.createChildInjector(new AbstractModule() {
+
+			@Override
+			protected void configure() {
+				bind(Sitemap.class).toInstance(sitemap);
+				bind(URIFragmentHandler.class).to(StrictURIFragmentHandler.class);
+			}
+		}).getInstance(SitemapURIConverter.class);
+
+		List<String> allUris = sitemap.uris();
+		Collections.shuffle(allUris, new Random(42));
+		int count = Math.min(SAMPLES, allUris.size());
+		nodes = new SitemapNode[count];
+		uris = new String[count];
+		segments = new ArrayList<>();
+		subtreeRoots = new SitemapNode[count];
+		for (int i = 0; i < count; i++) {
+			uris[i] = allUris.get(i);
+			nodes[i] = sitemap.nodeFor(uris[i]);
+			segments.add(Arrays.asList(uris[i].split("/")));
+			// the parent gives a subtree of a realistic size, rather than a leaf or the whole map
+			SitemapNode parent = sitemap.getParent(nodes[i]);
+			subtreeRoots[i] = (parent == null) ? nodes[i] : parent;
+		}
+	}
+
+	private int next() {
+		next = (next + 1) % nodes.length;
+		return next;
+	}
+
+	@Benchmark
+	public String uri() {
+		return sitemap.uri(nodes[next()]);
+	}
+
+	@Benchmark
+	public List<SitemapNode> nodeChainForSegments() {
+		return sitemap.nodeChainForSegments(segments.get(next()), false);
+	}
+
+	@Benchmark
+	public boolean pageIsPublic() {
+		return converter.pageIsPublic(uris[next()]);
+	}
+
+	@Benchmark
+	public List<SitemapNode> getSubtreeNodes() {
+		return sitemap.getSubtreeNodes(subtreeRoots[next()]);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.q3c.v7.base.navigate.sitemap.Sitemap;
+import uk.co.q3c.v7.base.navigate.sitemap.TextReaderSitemapProvider;
+import uk.co.q3c.v7.i18n.I18NModule;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+/**
+ * Measures loading a sitemap from its text source with {@link TextReaderSitemapProvider}, at different sizes
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class SitemapParseBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int pages;
+
+	private File source;
+	private Injector injector;
+
+	@Setup
+	public void setup() throws IOException {
+		source = SitemapGenerator.generate(pages);
+		injector = Guice.createInjector(new I18NModule());
+	}
+
+	@Benchmark
+	public Sitemap parse() {
+		// a new provider for each load, as the application would have
+		TextReaderSitemapProvider provider = injector.getInstance(TextReaderSitemapProvider.class);
+		provider.parse(source);
+		return provider.getSitemap();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 David Sowerby
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package uk.co.q3c.v7.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.q3c.v7.base.navigate.NavigationState;
+import uk.co.q3c.v7.base.navigate.ScanningURIFragmentHandler;
+import uk.co.q3c.v7.base.navigate.StrictURIFragmentHandler;
+import uk.co.q3c.v7.base.navigate.URIFragmentHandler;
+
+import com.google.inject.Guice;
+
+/**
+ * Compares the {@link URIFragmentHandler} implementations decoding a mix of fragments, with and without parameters,
+ * as they are decoded during navigation. Run with -prof gc to compare the allocation rates as well.
+ * 
+ * @author David Sowerby 18 Oct 2013
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class URIFragmentHandlerBenchmark {
+
+	private static final String[] FRAGMENTS = { "", "public/home", "!private/deptx/teamy/current projects",
+			"private/transfers/id=23", "!finance/report/risk/id=1223/year=2012/", "a=b/year=1970",
+			"private/deptx/teamy/current projects/sort=date/page=3/size=50/filter=open" };
+
+	@Param({ "strict", "scanning" })
+	public String handlerType;
+
+	private URIFragmentHandler handler;
+	private int next;
+
+	@Setup
+	public void setup() {
+		Class<? extends URIFragmentHandler> handlerClass = handlerType.equals("strict") ? StrictURIFragmentHandler.class
+				: ScanningURIFragmentHandler.class;
+		handler = Guice.createInjector().getInstance(handlerClass);
+	}
+
+	private String nextFragment() {
+		next = (next + 1) % FRAGMENTS.length;
+		return FRAGMENTS[next];
+	}
+
+	@Benchmark
+	public String setFragment() {
+		return handler.setFragment(nextFragment()).virtualPage();
+	}
+
+	@Benchmark
+	public String[] getPathSegments() {
+		return handler.setFragment(nextFragment()).getPathSegments();
+	}
+
+	@Benchmark
+	public String parameterValue() {
+		return handler.setFragment(nextFragment()).parameterValue("id");
+	}
+
+	@Benchmark
+	public NavigationState navigationState() {
+		return handler.navigationState(nextFragment());
+	}
+}